@@ -0,0 +1,67 @@
+package game2048.bench;
+
+import game2048.*;
+import java.util.Random;
+/***********************************************************************
+ * BenchBoards class: Builds the fixed boards the benchmarks start from.
+ * Every board comes from a seed derived from its size and density, so
+ * each run of every version of the game measures the same positions.
+ **********************************************************************/
+final class BenchBoards {
+    /** Base seed of all boards. */
+    static final long SEED = 2048;
+    /** Winning value large enough that no benchmark board is won. */
+    static final int WINNING_VALUE = 1 << 30;
+    /** Tiles are 1 to 2^(TILE_EXPONENTS - 1). */
+    private static final int TILE_EXPONENTS = 10;
+
+    private BenchBoards() {
+    }
+
+    /*******************************************************************
+     * Build a square board with about the given fraction of its cells
+     * filled. The board is chosen so every SlideDirection changes it,
+     * which keeps slide and undo from measuring a move that does
+     * nothing.
+     *
+     * @param size the number of rows and columns
+     * @param density the chance of each cell holding a tile
+     * @return the tile values, 0 for an empty cell
+     ******************************************************************/
+    static int[][] board(int size, double density) {
+        Random gen = new Random(SEED + 31L * size +
+                Double.doubleToLongBits(density));
+        Game2048 check = game(size);
+        while(true) {
+            int[][] values = new int[size][size];
+            for(int i = 0; i < size; i++)
+                for(int j = 0; j < size; j++)
+                    if(gen.nextDouble() < density)
+                        values[i][j] = 1 << gen.nextInt(TILE_EXPONENTS);
+
+            check.setValues(values);
+            boolean allMove = true;
+            for(SlideDirection dir : SlideDirection.values()) {
+                if(check.slide(dir))
+                    check.undo();
+                else
+                    allMove = false;
+            }
+            if(allMove)
+                return values;
+        }
+    }
+
+    /*******************************************************************
+     * Create an empty game for a square board, with its random tiles
+     * seeded too.
+     *
+     * @param size the number of rows and columns
+     * @return the game
+     ******************************************************************/
+    static Game2048 game(int size) {
+        Game2048 game = new Game2048(SEED);
+        game.resizeBoard(size, size, WINNING_VALUE);
+        return game;
+    }
+}
@@ -0,0 +1,116 @@
+package game2048.bench;
+
+import game2048.*;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/***********************************************************************
+ * GameBenchmark class: JMH benchmarks of the Game2048 hot paths on
+ * 4x4 to 64x64 boards that are sparse, half full or nearly full.
+ *
+ * Moves change the board, so the benchmarks that move first put the
+ * starting board back with setValues. The restore benchmark measures
+ * that step alone; subtract it from slide and placeRandomValue to get
+ * their own cost. undo is measured as a slide followed by its undo,
+ * which leaves the board as it was; subtract slideLeft minus restore.
+ *
+ * Run with the allocation rate next to ns/op:
+ *   java -jar jmh/target/benchmarks.jar -prof gc
+ * or run main, which adds the gc profiler itself.
+ **********************************************************************/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+    /** Number of rows and columns. */
+    @Param({"4", "8", "16", "64"})
+    public int size;
+    /** Chance of each cell holding a tile. */
+    @Param({"0.1", "0.5", "0.9"})
+    public double density;
+
+    /** The starting board. */
+    private int[][] start;
+    /** The game measured. */
+    private Game2048 game;
+
+    /*******************************************************************
+     * Build the seeded starting board of this size and density.
+     *
+     * @return none
+     ******************************************************************/
+    @Setup(Level.Trial)
+    public void setUp() {
+        start = BenchBoards.board(size, density);
+        game = BenchBoards.game(size);
+        game.setValues(start);
+    }
+
+    @Benchmark
+    public Game2048 restore() {
+        game.setValues(start);
+        return game;
+    }
+
+    @Benchmark
+    public boolean slideLeft() {
+        game.setValues(start);
+        return game.slide(SlideDirection.LEFT);
+    }
+
+    @Benchmark
+    public boolean slideRight() {
+        game.setValues(start);
+        return game.slide(SlideDirection.RIGHT);
+    }
+
+    @Benchmark
+    public boolean slideUp() {
+        game.setValues(start);
+        return game.slide(SlideDirection.UP);
+    }
+
+    @Benchmark
+    public boolean slideDown() {
+        game.setValues(start);
+        return game.slide(SlideDirection.DOWN);
+    }
+
+    @Benchmark
+    public Cell placeRandomValue() {
+        game.setValues(start);
+        return game.placeRandomValue();
+    }
+
+    @Benchmark
+    public int undo() {
+        game.slide(SlideDirection.LEFT);
+        game.undo();
+        return game.getUndoDepth();
+    }
+
+    @Benchmark
+    public ArrayList<Cell> getNonEmptyTiles() {
+        return game.getNonEmptyTiles();
+    }
+
+    @Benchmark
+    public GameStatus updateStatus() {
+        game.updateStatus();
+        return game.getStatus();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GameBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,606 @@
+package game2048;
+
+import java.util.*;
+import java.util.random.RandomGenerator;
+/***********************************************************************
+ * BitBoard2048 class: A NumberSlider for the standard 4x4 board that
+ * packs the whole board into one long. Each cell takes 4 bits and holds
+ * the tile exponent plus one (0 is an empty cell, 1 is the value 1,
+ * 2 is the value 2, 3 is the value 4, ...), so the largest tile that
+ * fits is 2^14. Cell (row, col) is stored at bit 16*row + 4*col.
+ *
+ * Tiles stop at MAX_TILE: two 2^14 tiles do not merge, where Game2048
+ * would make 2^15. Winning values are at most MAX_TILE, so this only
+ * matters to a game played on well past its win. Otherwise a 4x4 game
+ * follows Game2048's rules move for move, except that a seeded game
+ * puts its random tiles in other cells.
+ *
+ * Slides are done with precomputed tables indexed by one 16 bit row,
+ * which makes a move a handful of table lookups instead of a board scan.
+ * Boards that are not 4x4 (or winning values that do not fit in 4 bits)
+ * are handed to a regular Game2048 so this class can be used anywhere
+ * a Game2048 is.
+ **********************************************************************/
+public class BitBoard2048 implements NumberSlider {
+    /** The only board dimension handled by the packed board. */
+    public static final int SIZE = 4;
+    /** The largest tile value that fits in a 4 bit cell. */
+    public static final int MAX_TILE = 1 << 14;
+    /** Mask of the low bit of every cell. */
+    private static final long LOW_BITS = 0x1111111111111111L;
+
+    /** Result of sliding a row left, indexed by the row. */
+    private static final char[] ROW_LEFT = new char[65536];
+    /** Result of sliding a row right, indexed by the row. */
+    private static final char[] ROW_RIGHT = new char[65536];
+    /** Result of sliding a column up, indexed by the transposed column
+     * and already spread out into column 0 of the board. */
+    private static final long[] COL_UP = new long[65536];
+    /** Result of sliding a column down, same layout as COL_UP. */
+    private static final long[] COL_DOWN = new long[65536];
+    /** Points scored by sliding a row, indexed by the row. A line
+     * merges the same pairs of equal tiles whichever way it slides, so
+     * one table serves every direction. */
+    private static final char[] ROW_SCORE = new char[65536];
+
+    static {
+        int[] line = new int[SIZE];
+        for(int row = 0; row < 65536; row++) {
+            for(int i = 0; i < SIZE; i++)
+                line[i] = (row >>> (4 * i)) & 0xF;
+
+            ROW_SCORE[row] = (char)mergeLeft(line);
+
+            int result = 0;
+            for(int i = 0; i < SIZE; i++)
+                result |= line[i] << (4 * i);
+
+            int revRow = reverseRow(row);
+            int revResult = reverseRow(result);
+            ROW_LEFT[row] = (char)result;
+            ROW_RIGHT[revRow] = (char)revResult;
+            COL_UP[row] = unpackColumn(result);
+            COL_DOWN[revRow] = unpackColumn(revResult);
+        }
+    }
+
+    /** The packed board. */
+    private long board;
+    /** The winning game value. */
+    private int winningValue;
+    /** The cell code (exponent plus one) of the winning value. */
+    private int winningCode;
+    /** Regular game logic used when the board is not 4x4. */
+    private Game2048 fallback;
+    /** This object is used to generate random values; shared with the
+     * fallback game. */
+    private final RandomGenerator gen;
+    /** Enumerated variable to keep track of game status. */
+    private GameStatus status = GameStatus.IN_PROGRESS;
+    /** Previous boards to allow undo; one long per move. */
+    private long[] history = new long[64];
+    /** Score before each move in history, parallel to history. */
+    private long[] historyScore = new long[64];
+    /** Number of boards stored in history. */
+    private int historySize;
+    /** Sum of the values of every tile made by a merge. */
+    private long score;
+    /** Largest cell code on the board. */
+    private int maxCode;
+
+    /******************************************************************
+     * Create a 4x4 game with a winning value of 2048.
+     *****************************************************************/
+    public BitBoard2048() {
+        this(new SplittableRandom());
+    }
+
+    /******************************************************************
+     * Create a 4x4 game with a winning value of 2048 whose random tiles
+     * follow a seed.
+     *
+     * @param seed seed of the random tile sequence
+     *****************************************************************/
+    public BitBoard2048(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    /******************************************************************
+     * Create a 4x4 game with a winning value of 2048 that draws its
+     * random tiles from a given generator.
+     *
+     * @param gen source of the random tile positions and values, used
+     * by this game only
+     * @throws IllegalArgumentException when gen is null
+     *****************************************************************/
+    public BitBoard2048(RandomGenerator gen) {
+        if(gen == null)
+            throw new IllegalArgumentException();
+        this.gen = gen;
+        resizeBoard(SIZE, SIZE, 2048);
+    }
+
+    /******************************************************************
+     * Reset the game logic to handle a board of a given dimension.
+     * Only 4x4 boards use the packed board; any other size is played
+     * by a regular Game2048.
+     *
+     * @param height the number of rows in the board
+     * @param width the number of columns in the board
+     * @param winningValue the value that must appear on the board to
+     * win the game
+     * @return none
+     * @throws IllegalArgumentException when the winning value is not
+     * power of two or negative
+     * @Override
+     *****************************************************************/
+    public void resizeBoard(int height, int width, int winningValue) {
+        if( height > 1 && width > 1 && winningValue > 0 &&
+                (winningValue & (winningValue - 1)) == 0 ) {
+            if(height == SIZE && width == SIZE && winningValue <= MAX_TILE) {
+                fallback = null;
+                this.winningValue = winningValue;
+                winningCode = encode(winningValue);
+                board = 0;
+                historySize = 0;
+                score = 0;
+                maxCode = 0;
+                status = GameStatus.IN_PROGRESS;
+            }
+            else {
+                if(fallback == null)
+                    fallback = new Game2048(gen);
+                fallback.resizeBoard(height, width, winningValue);
+            }
+        }
+        else
+            throw new IllegalArgumentException();
+    }
+
+    /*****************************************************************
+     * Remove all numbered tiles from the board and place
+     * TWO non-zero values at random location
+     *
+     * @return none
+     * @Override
+     ****************************************************************/
+    public void reset() {
+        if(fallback != null) {
+            fallback.reset();
+            return;
+        }
+        board = 0;
+        historySize = 0;
+        score = 0;
+        maxCode = 0;
+        placeRandomValue();
+        placeRandomValue();
+        status = GameStatus.IN_PROGRESS;
+    }
+
+    /*****************************************************************
+     * Set the game board to the desired values given in the 2D array.
+     *
+     * @param ref the tile values to copy, zero for an empty cell
+     * @return none
+     * @throws IllegalArgumentException when ref has more rows or
+     * columns than the board, or a value is not a power of two or is
+     * larger than MAX_TILE
+     * @Override
+     ****************************************************************/
+    public void setValues(int[][] ref) {
+        if(fallback != null) {
+            fallback.setValues(ref);
+            return;
+        }
+        if(ref.length > SIZE)
+            throw new IllegalArgumentException("more than " + SIZE + " rows");
+        for(int[] row : ref)
+            if(row.length > SIZE)
+                throw new IllegalArgumentException("more than " + SIZE
+                        + " columns");
+        for(int i = 0; i < ref.length; i++)
+            for(int j = 0; j < ref[i].length; j++) {
+                int shift = 16 * i + 4 * j;
+                board = (board & ~(0xFL << shift)) |
+                        ((long)encode(ref[i][j]) << shift);
+            }
+        // moves made before cannot be undone on the new board
+        historySize = 0;
+        score = 0; // no merge made the new board
+        maxCode = maxCode(board);
+        updateStatus();
+    }
+
+    /****************************************************************
+     * Insert one random tile into an empty spot on the board.
+     *
+     * @return a Cell object with its row, column, and value attributes
+     *  initialized properly
+     * @Override
+     ***************************************************************/
+    public Cell placeRandomValue() {
+        if(fallback != null)
+            return fallback.placeRandomValue();
+
+        long empty = emptyCells(board);
+        int count = Long.bitCount(empty);
+        if(count == 0) {
+            status = GameStatus.USER_LOST;
+            return new Cell();
+        }
+
+        // drop the lowest empty cells until the chosen one is lowest
+        for(int skip = gen.nextInt(count); skip > 0; skip--)
+            empty &= empty - 1;
+        int shift = Long.numberOfTrailingZeros(empty);
+        int code = gen.nextInt(4) + 1; // 1, 2, 4 or 8
+        board |= (long)code << shift;
+        maxCode = Math.max(maxCode, code);
+
+        return new Cell(shift / 16, (shift % 16) / 4, decode(code));
+    }
+
+    /*****************************************************************
+     * Slide all the tiles in the board in the requested direction. A
+     * pair of MAX_TILE tiles does not merge.
+     *
+     * @param dir move direction of the tiles
+     * @return true when the board changes
+     * @Override
+     ****************************************************************/
+    public boolean slide(SlideDirection dir) {
+        if(fallback != null)
+            return fallback.slide(dir);
+
+        long after = move(board, dir);
+        if(after == board) {
+            updateStatus();
+            return false;
+        }
+
+        if(historySize == history.length) {
+            history = Arrays.copyOf(history, 2 * historySize);
+            historyScore = Arrays.copyOf(historyScore, 2 * historySize);
+        }
+        historyScore[historySize] = score;
+        history[historySize++] = board;
+        score += moveScore(board, dir);
+        board = after;
+        // a merge makes a tile at most one code above the largest
+        if(hasTile(board, maxCode + 1))
+            maxCode++;
+        placeRandomValue();
+        updateStatus();
+        return true;
+    }
+
+    /**********************************************************************
+     * This method finds all the non-empty cells and stores them in an
+     * ArrayList.
+     *
+     * @return an ArrayList of Cells. Each cell holds the (row,column) and
+     * value of a tile
+     * @Override
+     *********************************************************************/
+    public ArrayList<Cell> getNonEmptyTiles() {
+        if(fallback != null)
+            return fallback.getNonEmptyTiles();
+
+        ArrayList<Cell> nonEmpty = new ArrayList<Cell>(SIZE * SIZE);
+        for(int i = 0; i < SIZE; i++)
+            for(int j = 0; j < SIZE; j++) {
+                int code = (int)(board >>> (16 * i + 4 * j)) & 0xF;
+                if(code != 0)
+                    nonEmpty.add(new Cell(i, j, decode(code)));
+            }
+        return nonEmpty;
+    }
+
+    /*******************************************************************
+     * Return the current state of the game
+     *
+     * @return one of the possible values of GameStatus enum
+     * @Override
+     ******************************************************************/
+    public GameStatus getStatus() {
+        if(fallback != null)
+            return fallback.getStatus();
+        return status;
+    }
+
+    /*******************************************************************
+     * This method determines the current game status based on the
+     * board.
+     *
+     * @return none
+     ******************************************************************/
+    public void updateStatus() {
+        if(fallback != null) {
+            fallback.updateStatus();
+            return;
+        }
+        // on a full board a left (up) move changes the board exactly when
+        // some row (column) has two equal neighbours
+        if( emptyCells(board) == 0 &&
+                move(board, SlideDirection.LEFT) == board &&
+                move(board, SlideDirection.UP) == board )
+            status = GameStatus.USER_LOST;
+        else if( hasTile(board, winningCode) )
+            status = GameStatus.USER_WON;
+        else
+            status = GameStatus.IN_PROGRESS;
+    }
+
+    /*******************************************************************
+     * Undo the most recent action, i.e. restore the board to its previous
+     * state.
+     *
+     * @throws IllegalStateException when undo is not possible
+     * @Override
+     ******************************************************************/
+    public void undo() {
+        if(fallback != null) {
+            fallback.undo();
+            return;
+        }
+        if(historySize == 0)
+            throw new IllegalStateException();
+        board = history[--historySize];
+        score = historyScore[historySize];
+        maxCode = maxCode(board);
+    }
+
+    /*******************************************************************
+     * Return the score: the sum of the values of all the tiles made by
+     * merging since the last reset.
+     *
+     * @return the score
+     * @Override
+     ******************************************************************/
+    public long getScore() {
+        return fallback != null ? fallback.getScore() : score;
+    }
+
+    /*******************************************************************
+     * Return the largest tile value on the board.
+     *
+     * @return the value, 0 for an empty board
+     * @Override
+     ******************************************************************/
+    public int getMaxTile() {
+        if(fallback != null)
+            return fallback.getMaxTile();
+        return maxCode == 0 ? 0 : decode(maxCode);
+    }
+
+    /*******************************************************************
+     * A method used to get the number of rows.
+     *
+     * @return rows the number of rows
+     ******************************************************************/
+    public int getRows() {
+        return fallback != null ? fallback.getRows() : SIZE;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of columns.
+     *
+     * @return cols the number of columns
+     ******************************************************************/
+    public int getCols() {
+        return fallback != null ? fallback.getCols() : SIZE;
+    }
+
+    /*******************************************************************
+     * A method used to get the winning value for the game.
+     *
+     * @return winningValue must be base 2 number
+     ******************************************************************/
+    public int getWinningValue() {
+        return fallback != null ? fallback.getWinningValue() : winningValue;
+    }
+
+    /*******************************************************************
+     * Return the packed board. Only meaningful for a 4x4 game.
+     *
+     * @return the board, 4 bits per cell
+     ******************************************************************/
+    public long getBoard() {
+        return board;
+    }
+
+    /*******************************************************************
+     * Slide a packed board without changing any game state. No new tile
+     * is added.
+     *
+     * @param board the packed board
+     * @param dir move direction of the tiles
+     * @return the packed board after the slide
+     ******************************************************************/
+    public static long move(long board, SlideDirection dir) {
+        long result = 0;
+        switch(dir) {
+            case LEFT:
+                for(int i = 0; i < SIZE; i++)
+                    result |= (long)ROW_LEFT[(int)(board >>> (16 * i)) & 0xFFFF]
+                            << (16 * i);
+                break;
+            case RIGHT:
+                for(int i = 0; i < SIZE; i++)
+                    result |= (long)ROW_RIGHT[(int)(board >>> (16 * i)) & 0xFFFF]
+                            << (16 * i);
+                break;
+            case UP:
+                board = transpose(board);
+                for(int j = 0; j < SIZE; j++)
+                    result |= COL_UP[(int)(board >>> (16 * j)) & 0xFFFF]
+                            << (4 * j);
+                break;
+            case DOWN:
+                board = transpose(board);
+                for(int j = 0; j < SIZE; j++)
+                    result |= COL_DOWN[(int)(board >>> (16 * j)) & 0xFFFF]
+                            << (4 * j);
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+        return result;
+    }
+
+    /*******************************************************************
+     * Find the points a slide of a packed board scores: the sum of the
+     * values of the tiles its merges make.
+     *
+     * @param board the packed board
+     * @param dir move direction of the tiles
+     * @return the points
+     ******************************************************************/
+    public static int moveScore(long board, SlideDirection dir) {
+        if(dir == SlideDirection.UP || dir == SlideDirection.DOWN)
+            board = transpose(board);
+        else if(dir != SlideDirection.LEFT && dir != SlideDirection.RIGHT)
+            throw new IllegalArgumentException();
+        int points = 0;
+        for(int i = 0; i < SIZE; i++)
+            points += ROW_SCORE[(int)(board >>> (16 * i)) & 0xFFFF];
+        return points;
+    }
+
+    /*******************************************************************
+     * Find the largest cell code of a packed board.
+     *
+     * @param board the packed board
+     * @return the code, 0 for an empty board
+     ******************************************************************/
+    private static int maxCode(long board) {
+        int max = 0;
+        for(int shift = 0; shift < 64; shift += 4)
+            max = Math.max(max, (int)(board >>> shift) & 0xF);
+        return max;
+    }
+
+    /*******************************************************************
+     * Find the empty cells of a packed board.
+     *
+     * @param board the packed board
+     * @return a mask with the low bit of every empty cell set
+     ******************************************************************/
+    public static long emptyCells(long board) {
+        board |= board >>> 2;
+        board |= board >>> 1;
+        return ~board & LOW_BITS;
+    }
+
+    /*******************************************************************
+     * Swap rows and columns of a packed board.
+     *
+     * @param x the packed board
+     * @return the transposed board
+     ******************************************************************/
+    public static long transpose(long x) {
+        long a1 = x & 0xF0F00F0FF0F00F0FL;
+        long a2 = x & 0x0000F0F00000F0F0L;
+        long a3 = x & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /*******************************************************************
+     * Determines if a board holds a tile of at least the given code.
+     *
+     * @param board the packed board
+     * @param code cell code to look for
+     * @return boolean
+     ******************************************************************/
+    private static boolean hasTile(long board, int code) {
+        for(int shift = 0; shift < 64; shift += 4)
+            if(((board >>> shift) & 0xF) >= code)
+                return true;
+        return false;
+    }
+
+    /*******************************************************************
+     * Slide and merge one line of cell codes towards index 0. A pair of
+     * 2^14 tiles is left alone since the sum does not fit in 4 bits.
+     *
+     * @param line cell codes of the line
+     * @return the sum of the values of the merged tiles
+     ******************************************************************/
+    private static int mergeLeft(int[] line) {
+        int points = 0;
+        int write = 0;
+        int pending = 0; // tile waiting for a possible merge partner
+        for(int i = 0; i < line.length; i++) {
+            int code = line[i];
+            if(code == 0)
+                continue;
+            line[i] = 0;
+            if(code == pending && code < 0xF) {
+                line[write++] = code + 1;
+                points += decode(code + 1);
+                pending = 0;
+            }
+            else {
+                if(pending != 0)
+                    line[write++] = pending;
+                pending = code;
+            }
+        }
+        if(pending != 0)
+            line[write] = pending;
+        return points;
+    }
+
+    /*******************************************************************
+     * Reverse the order of the four cells of a row.
+     *
+     * @param row 16 bit row
+     * @return the reversed row
+     ******************************************************************/
+    private static int reverseRow(int row) {
+        return ((row >>> 12) & 0xF) | ((row >>> 4) & 0xF0) |
+                ((row << 4) & 0xF00) | ((row << 12) & 0xF000);
+    }
+
+    /*******************************************************************
+     * Spread a 16 bit row out into column 0 of a packed board.
+     *
+     * @param row 16 bit row
+     * @return a board with the row's cells in column 0
+     ******************************************************************/
+    private static long unpackColumn(int row) {
+        long r = row;
+        return (r & 0xFL) | ((r & 0xF0L) << 12) |
+                ((r & 0xF00L) << 24) | ((r & 0xF000L) << 36);
+    }
+
+    /*******************************************************************
+     * Convert a tile value to its cell code.
+     *
+     * @param value zero or a power of two up to MAX_TILE
+     * @return the cell code
+     * @throws IllegalArgumentException when the value does not fit
+     ******************************************************************/
+    private static int encode(int value) {
+        if(value == 0)
+            return 0;
+        if(value < 0 || value > MAX_TILE || (value & (value - 1)) != 0)
+            throw new IllegalArgumentException();
+        return Integer.numberOfTrailingZeros(value) + 1;
+    }
+
+    /*******************************************************************
+     * Convert a cell code to its tile value.
+     *
+     * @param code non zero cell code
+     * @return the tile value
+     ******************************************************************/
+    private static int decode(int code) {
+        return 1 << (code - 1);
+    }
+}
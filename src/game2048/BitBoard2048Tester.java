@@ -0,0 +1,205 @@
+package game2048;
+
+import org.junit.*;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class BitBoard2048Tester {
+    private final static int REPEAT_COUNT = 200;
+    private final static int MOVE_COUNT = 40;
+    private final static int GAME_GOAL = 2048;
+    private final static int SIZE = BitBoard2048.SIZE;
+    private static Random gen;
+    private BitBoard2048 bits;
+    private Game2048 game;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        long seed = gen.nextLong();
+        bits = new BitBoard2048(seed);
+        game = new Game2048(seed);
+        /* a winning value the board may pass, or one it cannot reach */
+        int goal = gen.nextBoolean() ? GAME_GOAL : BitBoard2048.MAX_TILE;
+        bits.resizeBoard(SIZE, SIZE, goal);
+        game.resizeBoard(SIZE, SIZE, goal);
+    }
+
+    /* The random tiles of the two games land in different cells, so
+       before each move the regular game is given the packed board, and
+       afterwards the boards must agree but for the one new tile. */
+    @Test(timeout = 10000)
+    public void movesMatchGame2048()
+    {
+        SlideDirection[] dirs = SlideDirection.values();
+        MoveResult result = new MoveResult();
+        for (int n = 0; n < REPEAT_COUNT; n++) {
+            int[][] start = randomBoard(11);
+            bits.setValues(start);
+            game.setValues(start);
+            assertBoardEquals(start, bits);
+            assertEquals(game.getStatus(), bits.getStatus());
+            assertEquals(0, bits.getScore());
+            assertEquals(maxValue(start), bits.getMaxTile());
+            try {
+                bits.undo();
+                fail("setValues leaves nothing to undo");
+            }
+            catch (IllegalStateException ex) {
+                /* expected */
+            }
+
+            List<int[][]> boards = new ArrayList<int[][]>();
+            List<Long> scores = new ArrayList<Long>();
+            /* stop short of tiles that merge on one board only */
+            for (int m = 0; m < MOVE_COUNT
+                    && maxValue(values(bits)) < BitBoard2048.MAX_TILE; m++) {
+                int[][] before = values(bits);
+                long packed = bits.getBoard(), score = bits.getScore();
+                SlideDirection d = dirs[gen.nextInt(dirs.length)];
+                game.setValues(before);
+                boolean moved = game.slide(d, result);
+                assertEquals(d + " on " + Arrays.deepToString(before), moved,
+                        bits.slide(d));
+                int[][] after = values(bits);
+                int[][] expected = values(game);
+                /* the regular game started the move with no points */
+                assertEquals(game.getScore(), bits.getScore() - score);
+                assertEquals(BitBoard2048.moveScore(packed, d),
+                        bits.getScore() - score);
+                assertEquals(maxValue(after), bits.getMaxTile());
+                if (moved) {
+                    boards.add(before);
+                    scores.add(score);
+                    /* without its new tile the regular board is the packed
+                       board less one new tile */
+                    int spawn = result.getSpawnCell();
+                    expected[spawn / SIZE][spawn % SIZE] = 0;
+                    int added = 0;
+                    for (int i = 0; i < SIZE; i++)
+                        for (int j = 0; j < SIZE; j++)
+                            if (after[i][j] != expected[i][j]) {
+                                assertEquals(0, expected[i][j]);
+                                assertTrue(after[i][j] == 1 || after[i][j] == 2
+                                        || after[i][j] == 4 || after[i][j] == 8);
+                                added++;
+                            }
+                    assertEquals("one new tile", 1, added);
+                }
+                else
+                    assertBoardEquals(before, bits);
+
+                /* the status follows the board the move left */
+                game.setValues(after);
+                assertEquals(game.getStatus(), bits.getStatus());
+            }
+
+            for (int k = boards.size() - 1; k >= 0; k--) {
+                bits.undo();
+                assertBoardEquals(boards.get(k), bits);
+                assertEquals((long)scores.get(k), bits.getScore());
+                assertEquals(maxValue(boards.get(k)), bits.getMaxTile());
+            }
+            try {
+                bits.undo();
+                fail("undo past the first board");
+            }
+            catch (IllegalStateException ex) {
+                /* expected */
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void resetAndRandomTilesMatchTheRules()
+    {
+        for (int n = 0; n < REPEAT_COUNT; n++) {
+            bits.reset();
+            game.reset();
+            assertEquals(2, bits.getNonEmptyTiles().size());
+            assertEquals(game.getNonEmptyTiles().size(),
+                    bits.getNonEmptyTiles().size());
+            assertEquals(GameStatus.IN_PROGRESS, bits.getStatus());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void otherSizesArePlayedByGame2048()
+    {
+        int rows = gen.nextInt(6) + 2, cols = gen.nextInt(6) + 2;
+        if (rows == SIZE && cols == SIZE)
+            cols++;
+        bits.resizeBoard(rows, cols, GAME_GOAL);
+        bits.reset();
+        assertEquals(rows, bits.getRows());
+        assertEquals(cols, bits.getCols());
+        assertEquals(2, bits.getNonEmptyTiles().size());
+        /* and 4x4 goes back to the packed board */
+        bits.resizeBoard(SIZE, SIZE, GAME_GOAL);
+        bits.reset();
+        assertEquals(SIZE, bits.getRows());
+        assertEquals(2, Long.bitCount(~BitBoard2048.emptyCells(bits.getBoard())
+                & 0x1111111111111111L));
+    }
+
+    @Test(timeout = 5000)
+    public void largestTilesDoNotMerge()
+    {
+        int top = BitBoard2048.MAX_TILE;
+        int[][] start = new int[SIZE][SIZE];
+        start[0][0] = start[0][1] = top;
+        start[1][0] = start[1][1] = top / 2;
+        bits.setValues(start);
+        game.setValues(start);
+        assertTrue(bits.slide(SlideDirection.LEFT));
+        assertTrue(game.slide(SlideDirection.LEFT));
+        int[][] after = values(bits);
+        assertEquals(top, after[0][0]);
+        assertEquals(top, after[0][1]);
+        assertEquals(top, after[1][0]);
+        assertEquals(top, bits.getScore());
+        assertEquals(top, bits.getMaxTile());
+        /* the regular game has no limit */
+        assertEquals(2 * top, values(game)[0][0]);
+        assertEquals(3 * top, game.getScore());
+        assertEquals(2 * top, game.getMaxTile());
+    }
+
+    private int[][] randomBoard(int maxExponent)
+    {
+        int[][] board = new int[SIZE][SIZE];
+        for (int i = 0; i < SIZE; i++)
+            for (int j = 0; j < SIZE; j++)
+                if (gen.nextInt(3) != 0)
+                    board[i][j] = 1 << gen.nextInt(maxExponent + 1);
+        return board;
+    }
+
+    private static int[][] values(NumberSlider slider)
+    {
+        int[][] board = new int[SIZE][SIZE];
+        for (Cell c : slider.getNonEmptyTiles())
+            board[c.getRow()][c.getColumn()] = c.getValue();
+        return board;
+    }
+
+    private static int maxValue(int[][] board)
+    {
+        int max = 0;
+        for (int[] row : board)
+            for (int v : row)
+                max = Math.max(max, v);
+        return max;
+    }
+
+    private static void assertBoardEquals(int[][] expected, NumberSlider slider)
+    {
+        assertEquals(Arrays.deepToString(expected),
+                Arrays.deepToString(values(slider)));
+    }
+}
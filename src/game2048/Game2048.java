@@ -1,6 +1,9 @@
 package game2048;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+import game2048.metrics.GameMetrics;
 /***********************************************************************
  * Game2048 class: This class implements the NumberSlider interface.
  * Additional methods were added to help test the methods and to
@@ -16,16 +19,83 @@ public class Game2048 implements NumberSlider {
     private int rows, cols;
     /** The winning game value. */
     private int winningValue;
-    /** The winning game value. */
-    private int[][] board;
-    /** This object is used to generate random values. */
-    private static Random gen = new Random();
+    /** The game board, one cell per byte in row-major order. Each cell
+     * holds the tile exponent plus one: 0 is an empty cell, 1 is the
+     * value 1, 2 is the value 2, 3 is the value 4, ... */
+    private byte[] board;
+    /** This object is used to generate random values. Each game has
+     * its own, so games on different threads never share one. */
+    private final RandomGenerator gen;
     /** Enumerated variable to keep track of game status. */
     private GameStatus status = GameStatus.IN_PROGRESS;
-    /** A list of all the non-empty tiles on the board */
-    private ArrayList<Cell> nonEmpty;
-    /** Stack to store all the states of the board to allow undo */
-    private Stack<ArrayList<Cell>> st = new Stack<ArrayList<Cell>>();
+    /** Every board index, non-empty tiles first and empty cells after,
+     * each part in no particular order. */
+    private int[] cellOrder;
+    /** Number of non-empty tiles on the board, which is also where the
+     * empty cells start in cellOrder */
+    private int tileCount;
+    /** Position of each board index within cellOrder */
+    private int[] cellSlot;
+    /** The cells changed by each move, to allow undo */
+    private UndoLog history = new UndoLog();
+    /** Receives the tile moves of the slide in progress, or null */
+    private MoveResult recording;
+    /** Sum of the values of every tile made by a merge since the last
+     * reset, less the moves undone */
+    private long score;
+    /** Number of tiles with each cell code, index 0 unused */
+    private int[] codeCounts = new int[MAX_CODE + 1];
+    /** Largest cell code on the board, 0 when the board is empty */
+    private int maxCode;
+    /** Number of pairs of side by side (or one above the other) tiles
+     * with the same value; a full board can move exactly when this is
+     * not zero */
+    private int equalPairs;
+    /** Column of each board index, to find the row ends without a
+     * division */
+    private int[] cellCol;
+    /** Receives counts and times of the public methods, or null */
+    private GameMetrics metrics;
+    /** Calls counted so far, to pick the ones that are timed */
+    private int metricsCalls;
+    /** Running count of status checks, for sampling their times */
+    private int statusCalls;
+    /** Undo depth and bytes last added to the metrics gauges */
+    private int reportedDepth;
+    private long reportedBytes;
+    /** Largest cell code an int tile value can have */
+    private static final int MAX_CODE = 32;
+
+    /******************************************************************
+     * Create a game with an unpredictable random tile sequence.
+     *****************************************************************/
+    public Game2048() {
+        this(new SplittableRandom());
+    }
+
+    /******************************************************************
+     * Create a game whose random tiles follow a seed: two games with
+     * the same seed and the same moves place the same tiles.
+     *
+     * @param seed seed of the random tile sequence
+     *****************************************************************/
+    public Game2048(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    /******************************************************************
+     * Create a game that draws its random tiles from a given generator.
+     * The generator is used by this game only and need not be thread
+     * safe.
+     *
+     * @param gen source of the random tile positions and values
+     * @throws IllegalArgumentException when gen is null
+     *****************************************************************/
+    public Game2048(RandomGenerator gen) {
+        if(gen == null)
+            throw new IllegalArgumentException();
+        this.gen = gen;
+    }
 
     /******************************************************************
      * Reset the game logic to handle a board of a given dimension
@@ -50,8 +120,17 @@ public class Game2048 implements NumberSlider {
             cols = width;
             this.winningValue = winningValue;
 
-            // create a blank 2D array (all zeros) for board
-            board = new int[rows][cols];
+            // create a blank board (all zeros)
+            board = new byte[rows * cols];
+            cellOrder = new int[rows * cols];
+            cellSlot = new int[rows * cols];
+            cellCol = new int[rows * cols];
+            for(int k = 0; k < cellCol.length; k++)
+                cellCol[k] = k % cols;
+            clearTiles();
+            history.clear();
+            reportHistory();
+            score = 0;
             status = GameStatus.IN_PROGRESS;
         }
         else
@@ -68,7 +147,11 @@ public class Game2048 implements NumberSlider {
     public void reset() {
         // number of values to start with randomly on new game
         int nValues = 2;
-        board = new int[rows][cols]; // all zeros again
+        board = new byte[rows * cols]; // all zeros again
+        clearTiles();
+        history.clear();
+        reportHistory();
+        score = 0;
 
         // place 2 nonzero values at 2 random locations
         for(int i = 0; i < nValues; i++)
@@ -88,18 +171,30 @@ public class Game2048 implements NumberSlider {
      *
      * @param ref
      * @return none
+     * @throws IllegalArgumentException when ref has more rows or
+     * columns than the board, or a value is not zero or a power of two
      * @Override
      ****************************************************************/
     public void setValues(int[][] ref) {
-        // include check for equal size arrays?
+        // a longer row would run into the next one, so check every row
+        // before the board changes
+        if(ref.length > rows)
+            throw new IllegalArgumentException("more than " + rows + " rows");
+        for(int[] row : ref)
+            if(row.length > cols)
+                throw new IllegalArgumentException("more than " + cols
+                        + " columns");
+        // moves made before cannot be undone on the new board
+        history.clear();
+        reportHistory();
+        score = 0; // no merge made the new board
         // copy ref array into board array
         for(int i = 0; i < ref.length; i++)
             for(int j = 0; j < ref[i].length; j++)
-                board[i][j] = ref[i][j];
+                setCell(i * cols + j, encode(ref[i][j]));
 
-        getNonEmptyTiles();
         // update game status
-        updateStatus();
+        updateStatusTimed();
     }
 
     /****************************************************************
@@ -111,30 +206,56 @@ public class Game2048 implements NumberSlider {
      * @Override
      ***************************************************************/
     public Cell placeRandomValue() {
-        int tempR, tempC; // used to find empty spot
+        if(metrics == null)
+            return placeValue();
+        long start = metrics.start(++metricsCalls);
+        boolean placed = !isFullBoard();
+        Cell c = placeValue();
+        metrics.recordPlaceRandomValue(start, placed);
+        return c;
+    }
 
-        // find an empty spot on the board (make own method?)
-        // check for full board (game over, infinite loop)
-        // -this is a game over condition
+    /****************************************************************
+     * Insert one random tile into an empty spot on the board, the work
+     * of placeRandomValue.
+     *
+     * @return the new cell, or a blank cell when the board is full
+     ***************************************************************/
+    private Cell placeValue() {
+        int k; // board index of the empty spot
+        int value;
+
+        // check for full board: this is a game over condition
         if( isFullBoard() ) {
             status = GameStatus.USER_LOST;
             // return a blank cell (as must)
             return new Cell();
         }
         else {
-            do {
-                tempR = Game2048.gen.nextInt(rows);
-                tempC = Game2048.gen.nextInt(cols);
-            }while(board[tempR][tempC] != 0);
-
-            // place cell on the found empty spot
-            board[tempR][tempC] = genBase2();
+            k = spawnTile();
+            value = decode(board[k]);
 
             // return the new cell generated
-            return new Cell(tempR, tempC, genBase2());
+            return new Cell(k / cols, k % cols, value);
         }
     }
 
+    /*******************************************************************
+     * Place a random tile in a random empty cell, as part of the
+     * current move.
+     *
+     * @return board index of the new tile
+     ******************************************************************/
+    private int spawnTile() {
+        // pick one of the empty cells, which follow the tiles; move
+        // journals replay this order (MoveJournal.SPAWN_GAME2048)
+        int k = cellOrder[tileCount + gen.nextInt(board.length - tileCount)];
+
+        // place cell on the found empty spot
+        setCell(k, encode(genBase2()));
+        return k;
+    }
+
     /*******************************************************************
      * This method determines if the board is full. When the board is
      * full before a piece would otherwise be added, it is a game over.
@@ -143,8 +264,7 @@ public class Game2048 implements NumberSlider {
      ******************************************************************/
     private boolean isFullBoard() {
         // test game over: add this where needed to account for end of game
-        getNonEmptyTiles(); // find all non-empty tiles
-        if( nonEmpty.size() == (rows * cols) ) {
+        if( tileCount == board.length ) {
             return true;
         }
         return false;
@@ -156,26 +276,46 @@ public class Game2048 implements NumberSlider {
      * @return boolean
      ******************************************************************/
     private boolean isWin() {
-        getNonEmptyTiles(); // find all non-empty tiles
-        // Go through each non-empty cell to check for winning value
-        for(Cell c : nonEmpty) {
-            // shouldn't be possible to have greater
-            if(c.value >= winningValue) {
-                // update win status here?
-                //status = GameStatus.USER_WON;
-                return true;
-            }
-        }
-        return false;
+        // the largest tile is kept up to date as tiles change
+        return maxCode > 0 && decode(maxCode) >= winningValue;
     }
 
     /*******************************************************************
      * This method determines the current game status based on the 2D
-     * board.
+     * board. It takes constant time; slide calls it after every move,
+     * so it is only needed after changing the winning value.
      *
      * @return none
      ******************************************************************/
     public void updateStatus() {
+        updateStatusTimed();
+    }
+
+    /*******************************************************************
+     * Set the game status from the board and report it to the metrics
+     * as an updateStatus call. Slide and setValues check the status
+     * this way too, so the metrics count every check, not just the
+     * direct calls. Checks keep a count of their own, so a slide and
+     * the check inside it can both be timed.
+     *
+     * @return none
+     ******************************************************************/
+    private void updateStatusTimed() {
+        if(metrics == null) {
+            checkStatus();
+            return;
+        }
+        long start = metrics.start(++statusCalls);
+        checkStatus();
+        metrics.recordUpdateStatus(start);
+    }
+
+    /*******************************************************************
+     * Set the game status from the board, the work of updateStatus.
+     *
+     * @return none
+     ******************************************************************/
+    private void checkStatus() {
         if( isFullBoard() && !movePossible() )
             status = GameStatus.USER_LOST;
         else if( isWin() )
@@ -185,36 +325,13 @@ public class Game2048 implements NumberSlider {
     }
 
     /*******************************************************************
-     * This method determines if a move if possible.
+     * This method determines if a move if possible: the board has an
+     * empty cell or two equal tiles next to each other.
      *
      * @return boolean
      ******************************************************************/
     private boolean movePossible() {
-        // check if space available
-        getNonEmptyTiles(); // find all non-empty tiles
-        if( nonEmpty.size() == (rows * cols) ) {
-            // check if 2 adjacent cells have the same value if full
-            for(int i = 0; i < rows; i++)
-                for(int j = 0; j < cols; j++) {
-                    if(i < rows - 1 && j < cols - 1) {
-                        if(board[i][j] == board[i][j + 1] ||
-                                board[i][j] == board[i + 1][j]) {
-                            //status = GameStatus.IN_PROGRESS;
-                            return true;
-                        }
-                    }
-                    else if(i == rows - 1 && j < cols - 1) {
-                        if(board[i][j] == board[i][j + 1]) {
-                            //status = GameStatus.IN_PROGRESS;
-                            return true;
-                        }
-                    }
-                }
-            status = GameStatus.USER_LOST;
-            return false;
-        }
-        status = GameStatus.IN_PROGRESS; // put here?
-        return true;
+        return tileCount < board.length || equalPairs > 0;
     }
 
     /*****************************************************************
@@ -225,289 +342,425 @@ public class Game2048 implements NumberSlider {
      * @Override
      ****************************************************************/
     public boolean slide(SlideDirection dir) {
-        // Store current state of the board to see if changed after
-        // slide.
-        int[][] temp = new int[rows][cols];
-        for(int i = 0; i < rows; i++)
-            for(int j = 0; j < cols; j++)
-                temp[i][j] = board[i][j];
-
-        // Store prior to updating game board
-        st.push(getNonEmptyTiles());
-
-        // check slide direction
-        if(dir == SlideDirection.LEFT || dir == SlideDirection.RIGHT) {
-            slideHorizontal(dir);
-        }
-        else if(dir == SlideDirection.UP ||
-                dir == SlideDirection.DOWN) {
-            slideVertical(dir);
-        }
-        else
-            throw new IllegalArgumentException();
-
-        // check if won game after slide
-        if( isWin() )
-            status = GameStatus.USER_WON;
-
-        // determine if board changed: return true and place a new
-        // random cell if it has
-        for(int i = 0; i < rows; i++)
-            for(int j = 0; j < cols; j++)
-                if(temp[i][j] != board[i][j]) {
-                    // add a random cell to board after sliding
-                    // -check board for status first, after?
-                    placeRandomValue();
-                    return true;
-                }
+        return slide(dir, null);
+    }
 
-        // if no movement made, remove latest state (a repeat)
-        st.pop();
-        return false;
+    /*****************************************************************
+     * Slide all the tiles in the board in the requested direction and
+     * report what moved, merged and spawned.
+     *
+     * @param dir move direction of the tiles
+     * @param result cleared and filled in with the tile moves, merges
+     * and new tile; null to record nothing
+     * @return true when the board changes
+     ****************************************************************/
+    public boolean slide(SlideDirection dir, MoveResult result) {
+        if(metrics == null)
+            return slideBoard(dir, result);
+        long start = metrics.start(++metricsCalls);
+        boolean moved = slideBoard(dir, result);
+        metrics.recordSlide(start, moved);
+        reportHistory();
+        return moved;
     }
 
-    /*******************************************************************
-     * This method makes a horizontal move on the game board (left or
-     * right).
+    /*****************************************************************
+     * Slide the tiles and place the new tile, the work of slide.
      *
-     * @param dir left or right
-     * @return none
-     ******************************************************************/
-    private void slideHorizontal(SlideDirection dir) {
-        // used to store one row at a time temporarily
-        int[] array = new int[cols];
-        ArrayList<Cell> oneRow = new ArrayList<Cell>();
-        int start; // used in row scanning process
-        // used to go left/right in scan process
-        // -1 for right to left; +1 for right
-        int factor;
-        // Used to slide elements in temp array
-        //  0 for left; 1 for right
-        int place;
-        // used to align cells after sliding
-        boolean complete = false;
+     * @param dir move direction of the tiles
+     * @param result receives the tile moves, or null
+     * @return true when the board changes
+     ****************************************************************/
+    private boolean slideBoard(SlideDirection dir, MoveResult result) {
         boolean moved = false;
-        int index, i, j;
+        long scoreBefore = score;
+        recording = result;
+        if(result != null)
+            result.clear(dir);
+
+        // Record the cells the move changes to allow undo
+        history.beginFrame();
 
-        // find direction to guide slide logic
+        // slide each row (column) towards the side of the move; the
+        // first cell of each line is on that side
         if(dir == SlideDirection.LEFT) {
-            factor = 1;
-            place = 0;
-            start = 0;
+            for(int i = 0; i < rows; i++)
+                moved |= slideLine(i * cols, 1, cols);
         }
         else if(dir == SlideDirection.RIGHT) {
-            factor = -1;
-            place = 1;
-            start = cols - 1; // last cell of row
+            for(int i = 0; i < rows; i++)
+                moved |= slideLine(i * cols + cols - 1, -1, cols);
         }
-        else
+        else if(dir == SlideDirection.UP) {
+            for(int j = 0; j < cols; j++)
+                moved |= slideLine(j, cols, rows);
+        }
+        else if(dir == SlideDirection.DOWN) {
+            for(int j = 0; j < cols; j++)
+                moved |= slideLine((rows - 1) * cols + j, -cols, rows);
+        }
+        else {
+            recording = null;
             throw new IllegalArgumentException();
+        }
 
-        // store one row at a time to find final result before writing
-        // to the board: only nonzero values
-        getNonEmptyTiles(); // update board for ArrayList
-        for(i = 0; i < rows; i++) { // go though each row
-            // store non-zero for each row
-            for(Cell c : nonEmpty) {
-                if(c.row == i) {
-                    oneRow.add(c);
-                }
-            }
+        // place a new random cell if the board changed, otherwise
+        // remove latest state (a repeat); a tile that moved left an
+        // empty cell
+        if(moved) {
+            history.setLastFrameScore(score - scoreBefore);
+            int k = spawnTile();
+            history.endFrame();
+            if(result != null)
+                result.setSpawn(k, board[k]);
+        }
+        else
+            history.popFrame();
+        if(result != null)
+            result.setMoved(moved);
+        recording = null;
 
-            // leave row unchanged on board if empty
-            if(oneRow.isEmpty()) {
-                continue; // analyze next row
-            }
+        // check if won or lost game after slide
+        updateStatusTimed();
+        return moved;
+    }
 
-            // use single row array list to create array of elements
-            // with all valued cells next to each other
-            // -aligned to left or right side
-            index = start;
-            for(Cell c : oneRow) { //
-                array[index - place*(oneRow.size() - 1)] = c.value;
-                index += 1; // update scan placement
-                //System.out.print(c.value + " "); //test
-            }
-            //System.out.println("\n"); //test
-
-            //System.out.print("array: "); //test
-            //printArray(array); //test
-
-            // reset loop start index variable
-            index = start;
-
-            // Combine all first, then fill all gaps once done (two loops)
-            // -ternary operator used for loop condition
-            for(j = start;
-                start == 0 ? j < cols - 1 : j > 0;
-                j += factor) {
-                if(array[j] != 0 && array[j] == array[j + factor]) {
-                    array[j] *= 2; // double value (combined two cells)
-                    array[j + factor] = 0; // clear slid over value
+    /*******************************************************************
+     * This method slides and merges one row or column of the board in
+     * a single pass, in place. Tiles are read from the first cell of
+     * the line on; each one either merges with the tile waiting before
+     * it or is written to the next free cell.
+     *
+     * @param start board index of the first cell, on the side the tiles
+     * move towards
+     * @param step board index distance from one cell of the line to the
+     * next
+     * @param length number of cells in the line
+     * @return true when any tile in the line moved or merged
+     ******************************************************************/
+    private boolean slideLine(int start, int step, int length) {
+        int end = start + step * length;
+        int write = start; // next cell to be filled
+        int pending = 0; // last tile read, may still merge
+        int pendingFrom = 0; // where the pending tile came from
+        boolean moved = false;
+
+        for(int k = start; k != end; k += step) {
+            int code = board[k];
+            if(code == 0)
+                continue;
+            if(code == pending) {
+                // combine two cells: one exponent higher
+                setCell(k, (byte)0);
+                moveTile(pendingFrom, write);
+                setCell(write, (byte)(code + 1));
+                score += 1L << code; // the value of the new tile
+                if(recording != null) {
+                    recording.addMove(k, write);
+                    recording.addMerge(write, (byte)(code + 1));
                 }
+                write += step;
+                pending = 0;
+                moved = true;
             }
-            // remove all zero gaps
-            // start at cell "cols - 2" for right, 1 for left
-            while(!complete) {
-                for(j = factor + place*start;
-                    start == 0 ? j < cols : j >= 0;
-                    j += factor) {
-                    if(array[j] != 0 && array[j - factor] == 0) {
-                        array[j - factor] = array[j];
-                        array[j] = 0;
-                        moved = true;
-                    }
+            else {
+                if(pending != 0) {
+                    moved |= moveTile(pendingFrom, write);
+                    write += step;
                 }
-                if(!moved)
-                    complete = true;
-
-                moved = false; // reset for next loop
-            }
-            complete = false; // reset for next loop
-
-            // assign to board (done for this row)
-            for(j = 0; j < cols; j++) {
-                board[i][j] = array[j];
+                pending = code;
+                pendingFrom = k;
             }
+        }
+        if(pending != 0)
+            moved |= moveTile(pendingFrom, write);
+        return moved;
+    }
 
-            // clear list and set values to initial for next iteration
-            oneRow.clear(); // clear nonzero element storing ArrayList
-            array = new int[cols]; // reset to all zeros
-        } // go to next row
-        getNonEmptyTiles(); // update the board Cell objects
+    /*******************************************************************
+     * Write a cell code to the board as part of the current move: the
+     * old code is kept for undo.
+     *
+     * @param k board index of the cell
+     * @param code the new cell code, 0 to empty the cell
+     * @return none
+     ******************************************************************/
+    private void setCell(int k, byte code) {
+        history.record(k, board[k]);
+        putCell(k, code);
     }
 
     /*******************************************************************
-     * This method makes a vertical move on the game board (up or
-     * down).
+     * Write a cell code to the board and keep the tile and empty cell
+     * index up to date.
      *
-     * @param dir up or down
+     * @param k board index of the cell
+     * @param code the new cell code, 0 to empty the cell
      * @return none
      ******************************************************************/
-    private void slideVertical(SlideDirection dir) {
-        // used to store one col at a time temporarily
-        int[] array = new int[rows];
-        ArrayList<Cell> oneCol = new ArrayList<Cell>();
-        int start; // used in row scanning process
-        // used to go left/right in scan process
-        // -1 for right to left; +1 for right
-        int factor;
-        // Used to slide elements in temp array
-        //  0 for left; 1 for right
-        int place;
-        // used to align cells after sliding
-        boolean complete = false;
-        boolean moved = false;
-        int index, i, j;
+    private void putCell(int k, byte code) {
+        if(board[k] == 0 && code != 0)
+            swapCells(k, cellOrder[tileCount++]); // first empty cell
+        else if(board[k] != 0 && code == 0)
+            removeTile(k);
+        countCell(k, code);
+        board[k] = code;
+    }
 
-        // find direction to guide slide logic
-        if(dir == SlideDirection.UP) {
-            factor = 1;
-            place = 0;
-            start = 0;
+    /*******************************************************************
+     * Update the tile counts, the largest tile and the equal pair count
+     * for a cell about to change. Called before the board is written.
+     *
+     * @param k board index of the cell
+     * @param code the new cell code, 0 to empty the cell
+     * @return none
+     ******************************************************************/
+    private void countCell(int k, int code) {
+        int old = board[k];
+        if(old == code)
+            return;
+        if(old != 0) {
+            equalPairs -= equalNeighbours(k, old);
+            codeCounts[old]--;
+            // the largest tile may be gone: step down to the next one
+            while(maxCode > 0 && codeCounts[maxCode] == 0)
+                maxCode--;
         }
-        else if(dir == SlideDirection.DOWN) {
-            factor = -1;
-            place = 1;
-            start = rows - 1; // last cell of row
+        if(code != 0) {
+            equalPairs += equalNeighbours(k, code);
+            codeCounts[code]++;
+            maxCode = Math.max(maxCode, code);
         }
-        else
-            throw new IllegalArgumentException();
-
-        // store one row at a time to find final result before writing
-        // to the board: only nonzero values
-        getNonEmptyTiles(); // update board for ArrayList
-        for(i = 0; i < cols; i++) { // go though each row
-            // store non-zero for each col
-            for(Cell c : nonEmpty) {
-                if(c.column == i) {
-                    oneCol.add(c);
-                }
-            }
-
-            // leave row unchanged on board if empty
-            if(oneCol.isEmpty()) {
-                continue; // analyze next column
-            }
-
-            // use single row array list to create array of elements
-            // with all valued cells next to each other
-            index = start;
-            for(Cell c : oneCol) { //
-                array[index - place*(oneCol.size() - 1)] = c.value;
-                index += 1; // update scan placement
-                //System.out.print(c.value + " "); //test
-            }
+    }
 
-            index = start;
+    /*******************************************************************
+     * Count the neighbours of a cell, left, right, above and below,
+     * that hold a given tile.
+     *
+     * @param k board index of the cell
+     * @param code cell code of a tile, not 0
+     * @return the number of neighbours holding code, 0 to 4
+     ******************************************************************/
+    private int equalNeighbours(int k, int code) {
+        int j = cellCol[k];
+        int n = 0;
+        if(j > 0 && board[k - 1] == code)
+            n++;
+        if(j < cols - 1 && board[k + 1] == code)
+            n++;
+        if(k >= cols && board[k - cols] == code)
+            n++;
+        if(k + cols < board.length && board[k + cols] == code)
+            n++;
+        return n;
+    }
 
-            for(j = start;
-                start == 0 ? j < rows - 1 : j > 0;
-                j += factor) {
-                if(array[j] != 0 && array[j] == array[j + factor]) {
-                    array[j] *= 2; // double value (combined two cells)
-                    array[j + factor] = 0; // clear slid over value
-                }
-            }
-            // remove all zero gaps
-            while(!complete) {
-                for(j = factor + place*start;
-                    start == 0 ? j < rows : j >= 0;
-                    j += factor) {
-                    if(array[j] != 0 && array[j - factor] == 0) {
-                        array[j - factor] = array[j];
-                        array[j] = 0;
-                        moved = true;
-                    }
-                }
-                if(!moved)
-                    complete = true;
+    /*******************************************************************
+     * Mark a board index empty in the cell index by swapping it with the
+     * last tile. The board itself is not changed.
+     *
+     * @param k board index of the tile
+     * @return none
+     ******************************************************************/
+    private void removeTile(int k) {
+        swapCells(k, cellOrder[--tileCount]);
+    }
 
-                moved = false; // reset for next loop
-            }
-            complete = false; // reset for next loop
+    /*******************************************************************
+     * Move a tile to an empty cell as part of the current move, keeping
+     * the old codes of both cells for undo.
+     *
+     * @param from board index the tile came from
+     * @param to board index the tile moved to
+     * @return true when the tile changed cells
+     ******************************************************************/
+    private boolean moveTile(int from, int to) {
+        if(from == to)
+            return false;
+        if(recording != null)
+            recording.addMove(from, to);
+        byte code = board[from];
+        history.record(to, board[to]);
+        history.record(from, code);
+        countCell(from, 0);
+        board[from] = 0;
+        countCell(to, code);
+        board[to] = code;
+        swapCells(from, to);
+        return true;
+    }
 
-            // assign to board (done for this row)
-            for(j = 0; j < rows; j++) {
-                board[j][i] = array[j];
-            }
+    /*******************************************************************
+     * Swap the positions of two board indices in cellOrder.
+     *
+     * @param a board index
+     * @param b board index
+     * @return none
+     ******************************************************************/
+    private void swapCells(int a, int b) {
+        int slotA = cellSlot[a];
+        int slotB = cellSlot[b];
+        cellOrder[slotA] = b;
+        cellSlot[b] = slotA;
+        cellOrder[slotB] = a;
+        cellSlot[a] = slotB;
+    }
 
-            // clear list and set values to initial for next iteration
-            oneCol.clear(); // clear nonzero element storing ArrayList
-            array = new int[rows]; // reset to all zeros
-        } // go to next row
-        getNonEmptyTiles(); // update the board Cell objects
+    /*******************************************************************
+     * Mark every cell empty in the cell index and the tile counts, to
+     * match a blank board.
+     *
+     * @return none
+     ******************************************************************/
+    private void clearTiles() {
+        tileCount = 0;
+        Arrays.fill(codeCounts, 0);
+        maxCode = 0;
+        equalPairs = 0;
+        for(int k = 0; k < cellOrder.length; k++) {
+            cellOrder[k] = k;
+            cellSlot[k] = k;
+        }
     }
 
     /**********************************************************************
-     * This method finds all the non-empty cells and stores them in an
-     * ArrayList.
+     * This method lists all the non-empty cells in a new ArrayList, in
+     * no particular order. The list is built from the cell index, not
+     * from a board scan, and is not changed by later moves.
      *
      * @return an ArrayList of Cells. Each cell holds the (row,column) and
      * value of a tile
      * @Override
      *********************************************************************/
     public ArrayList<Cell> getNonEmptyTiles() {
-        // create a new ArrayList to store nonempty cells
-        nonEmpty = new ArrayList<Cell>();
-
-        // search through 2D array to find non-empty cells
-        // store each non-empty cell in the ArrayList
-        for(int i = 0; i < rows; i++) {
-            for(int j = 0; j < cols; j++) {
-                // create a cell for each non-empty location on board
-                // to store within the ArrayList
-                if(board[i][j] != 0) {
-                    // assign the row, col of non-empty cell in cell object
-                    //c = new Cell(i, j, board[i][j]);
-                    // add this cell to the list
-                    nonEmpty.add(new Cell(i, j, board[i][j]));
-                }
-            }
+        ArrayList<Cell> nonEmpty = new ArrayList<Cell>(tileCount);
+        for(int t = 0; t < tileCount; t++) {
+            int k = cellOrder[t];
+            nonEmpty.add(new Cell(k / cols, k % cols, decode(board[k])));
         }
         return nonEmpty;
     }
 
+    /*******************************************************************
+     * A method used to get the number of non-empty tiles on the board.
+     *
+     * @return the number of tiles
+     ******************************************************************/
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /*******************************************************************
+     * A method used to get a copy of the board as cell codes, one byte
+     * per cell in row-major order: 0 for an empty cell, log2(value) + 1
+     * for a tile.
+     *
+     * @return a new array of rows * cols cell codes
+     ******************************************************************/
+    public byte[] getCellCodes() {
+        return board.clone();
+    }
+
+    /*******************************************************************
+     * A method used to get the cell code of one cell, e.g. of a cell
+     * named in a MoveResult.
+     *
+     * @param k board index, row * columns + column
+     * @return the cell code: 0 when empty, else log2 of the value + 1
+     * @throws ArrayIndexOutOfBoundsException when k is off the board
+     ******************************************************************/
+    public byte getCellCode(int k) {
+        return board[k];
+    }
+
+    /*******************************************************************
+     * Copy the board as cell codes into an existing array, the same
+     * layout as getCellCodes but without a new array per call.
+     *
+     * @param dst receives rows * cols cell codes from index 0
+     * @return none
+     * @throws IndexOutOfBoundsException when dst is too short
+     ******************************************************************/
+    public void copyCellCodes(byte[] dst) {
+        System.arraycopy(board, 0, dst, 0, board.length);
+    }
+
+    /*******************************************************************
+     * The board itself, for SnapshotCodec. Not a copy: callers must not
+     * change it.
+     *
+     * @return the cell codes in row-major order
+     ******************************************************************/
+    byte[] cells() {
+        return board;
+    }
+
+    /*******************************************************************
+     * The largest cell code on the board, for SnapshotCodec.
+     *
+     * @return the code, 0 for an empty board
+     ******************************************************************/
+    int largestCode() {
+        return maxCode;
+    }
+
+    /*******************************************************************
+     * The undo history itself, for SnapshotCodec.
+     *
+     * @return the undo log
+     ******************************************************************/
+    UndoLog undoLog() {
+        return history;
+    }
+
+    /*******************************************************************
+     * Empty the board and the undo history without placing any tile,
+     * keeping the dimensions and arrays, for SnapshotCodec.
+     *
+     * @return none
+     ******************************************************************/
+    void clearBoard() {
+        Arrays.fill(board, (byte)0);
+        clearTiles();
+        history.clear();
+        reportHistory();
+        score = 0;
+        status = GameStatus.IN_PROGRESS;
+    }
+
+    /*******************************************************************
+     * Write a cell code outside of any move, for SnapshotCodec.
+     *
+     * @param k board index of the cell
+     * @param code the cell code
+     * @return none
+     ******************************************************************/
+    void loadCell(int k, byte code) {
+        putCell(k, code);
+    }
+
+    /*******************************************************************
+     * Set the score as saved, for SnapshotCodec.
+     *
+     * @param score the score
+     * @return none
+     ******************************************************************/
+    void loadScore(long score) {
+        this.score = score;
+    }
+
+    /*******************************************************************
+     * Set the game status as saved, for SnapshotCodec.
+     *
+     * @param status the status
+     * @return none
+     ******************************************************************/
+    void loadStatus(GameStatus status) {
+        this.status = status;
+        // the codec has refilled the undo log by now
+        reportHistory();
+    }
+
     /*******************************************************************
      * A method used to get the number of rows.
      *
@@ -555,33 +808,172 @@ public class Game2048 implements NumberSlider {
         return status;
     }
 
+    /*******************************************************************
+     * Return the score: the sum of the values of all the tiles made by
+     * merging since the last reset. It is kept up to date as tiles
+     * merge, and undo takes off the points of the move undone.
+     *
+     * @return the score
+     * @Override
+     ******************************************************************/
+    public long getScore() {
+        return score;
+    }
+
+    /*******************************************************************
+     * Return the largest tile value on the board. It is kept up to date
+     * as cells change.
+     *
+     * @return the value, 0 for an empty board
+     * @Override
+     ******************************************************************/
+    public int getMaxTile() {
+        return maxCode == 0 ? 0 : decode(maxCode);
+    }
+
     /*******************************************************************
      * Undo the most recent action, i.e. restore the board to its previous
      * state. Calling this method multiple times will ultimately restore
      * the game to the very first initial state of the board holding two
      * random values. Further attempt to undo beyond this state will throw
-     * an IllegalStateException.
+     * an IllegalStateException. When an undo limit is set, only the
+     * most recent moves within the limit can be undone.
      *
      * @throws IllegalStateException when undo is not possible
      * @Override
      ******************************************************************/
     public void undo() {
-        // remove top board state from stack and assign to board
-        // add error check for empty stack
-        if(!st.empty()) {
-            // return 2d array object from top of stack, assign to board
-            nonEmpty = st.pop();
-            board = new int[rows][cols]; // clear old board first
-            if(!nonEmpty.isEmpty()) {
-                for(Cell c : nonEmpty) {
-                    board[c.row][c.column] = c.value;
-                }
-            }
+        if(metrics == null) {
+            undoMove();
+            return;
+        }
+        long start = metrics.start(++metricsCalls);
+        boolean undone = history.depth() > 0;
+        try {
+            undoMove();
+        }
+        finally {
+            metrics.recordUndo(start, undone);
+            reportHistory();
+        }
+    }
+
+    /*******************************************************************
+     * Restore the board to before the last move, the work of undo.
+     *
+     * @return none
+     * @throws IllegalStateException when undo is not possible
+     ******************************************************************/
+    private void undoMove() {
+        // add error check for empty history
+        if(history.depth() > 0) {
+            // write back the old codes of the last move, newest first
+            int first = history.lastFrameStart();
+            for(int e = history.end() - 1; e >= first; e--)
+                putCell(history.cell(e), history.code(e));
+            score -= history.lastFrameScore();
+            history.popFrame();
         }
         else
             throw new IllegalStateException();
     }
 
+    /*******************************************************************
+     * Limit how many moves can be undone. The oldest moves are
+     * forgotten once the limit is reached.
+     *
+     * @param maxMoves the number of moves kept, 0 for no limit
+     * @return none
+     * @throws IllegalArgumentException when maxMoves is negative
+     ******************************************************************/
+    public void setUndoLimit(int maxMoves) {
+        history.setMaxFrames(maxMoves);
+        reportHistory();
+    }
+
+    /*******************************************************************
+     * Limit the memory used by the undo history. The oldest moves are
+     * forgotten once the limit is passed, but the last move is always
+     * kept, however small the limit.
+     *
+     * @param maxBytes approximate number of bytes kept, 0 for no limit
+     * @return none
+     * @throws IllegalArgumentException when maxBytes is negative
+     ******************************************************************/
+    public void setUndoByteLimit(long maxBytes) {
+        if(maxBytes < 0)
+            throw new IllegalArgumentException();
+        // a limit below one cell must not round down to no limit
+        long entries = maxBytes / UndoLog.BYTES_PER_ENTRY;
+        if(maxBytes > 0 && entries == 0)
+            entries = 1;
+        history.setMaxEntries((int)Math.min(Integer.MAX_VALUE, entries));
+        reportHistory();
+    }
+
+    /*******************************************************************
+     * A method used to get the number of moves that can be undone.
+     *
+     * @return the undo depth
+     ******************************************************************/
+    public int getUndoDepth() {
+        return history.depth();
+    }
+
+    /*******************************************************************
+     * Report the counts and times of slide, placeRandomValue, undo and
+     * updateStatus, and the size of the undo history, to a GameMetrics.
+     * The status checks slide and setValues make count as updateStatus
+     * calls. Only one call in the metrics' sample interval is timed.
+     *
+     * @param metrics the metrics, or null to stop reporting
+     * @return none
+     ******************************************************************/
+    public void setMetrics(GameMetrics metrics) {
+        if(this.metrics != null) {
+            // take this game's share out of the old gauges
+            this.metrics.addHistory(-reportedDepth, -reportedBytes);
+            this.metrics.addGames(-1);
+        }
+        this.metrics = metrics;
+        // a random first call, so short games are timed as often as long
+        metricsCalls = ThreadLocalRandom.current().nextInt();
+        statusCalls = ThreadLocalRandom.current().nextInt();
+        reportedDepth = 0;
+        reportedBytes = 0;
+        if(metrics != null) {
+            metrics.addGames(1);
+            reportHistory();
+        }
+    }
+
+    /*******************************************************************
+     * A method used to get the metrics this game reports to.
+     *
+     * @return the metrics, or null when none
+     ******************************************************************/
+    public GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*******************************************************************
+     * Add the change in undo depth and bytes since the last report to
+     * the metrics gauges.
+     *
+     * @return none
+     ******************************************************************/
+    private void reportHistory() {
+        if(metrics == null)
+            return;
+        int depth = history.depth();
+        long bytes = history.estimatedBytes();
+        if(depth != reportedDepth || bytes != reportedBytes) {
+            metrics.addHistory(depth - reportedDepth, bytes - reportedBytes);
+            reportedDepth = depth;
+            reportedBytes = bytes;
+        }
+    }
+
     /*******************************************************************
      * Determines if a number is base 2. Based on code
      * found: http://www.skorks.com/2010/10/write-a-function-to-
@@ -594,6 +986,31 @@ public class Game2048 implements NumberSlider {
         return (number != 0 && (number & (number - 1)) == 0);
     }
 
+    /*******************************************************************
+     * Convert a tile value to the exponent code stored on the board.
+     *
+     * @param value zero or a power of two
+     * @return the cell code: 0 for empty, log2(value) + 1 otherwise
+     * @throws IllegalArgumentException when value is not a power of two
+     ******************************************************************/
+    private static byte encode(int value) {
+        if(value == 0)
+            return 0;
+        if(value < 0 || (value & (value - 1)) != 0)
+            throw new IllegalArgumentException();
+        return (byte)(Integer.numberOfTrailingZeros(value) + 1);
+    }
+
+    /*******************************************************************
+     * Convert a cell code stored on the board back to a tile value.
+     *
+     * @param code the cell code
+     * @return the tile value, 0 for an empty cell
+     ******************************************************************/
+    private static int decode(int code) {
+        return code == 0 ? 0 : 1 << (code - 1);
+    }
+
     /*******************************************************************
      * A method used to test the Game2048 class by printing the current
      * state of the board.
@@ -603,7 +1020,7 @@ public class Game2048 implements NumberSlider {
     private void printBoard() {
         for(int i = 0; i < rows; i++) {
             for(int j = 0; j < cols; j++)
-                System.out.print(board[i][j] + "\t");
+                System.out.print(decode(board[i * cols + j]) + "\t");
             System.out.println();
         }
         System.out.println("\n");
@@ -628,7 +1045,7 @@ public class Game2048 implements NumberSlider {
      * @return number: An integer of base 2 from 1 to 8
      ******************************************************************/
     private int genBase2() {
-        return (int)Math.pow(2, Game2048.gen.nextInt(4));
+        return 1 << gen.nextInt(4);
     }
 
     /*******************************************************************
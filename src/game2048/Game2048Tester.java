@@ -2,6 +2,7 @@ package game2048;
 
 import org.junit.*;
 import java.util.*;
+import game2048.metrics.GameMetrics;
 import static org.junit.Assert.*;
 
 public class Game2048Tester {
@@ -70,6 +71,38 @@ public class Game2048Tester {
         assertFalse("setValues() is not implemented correctly", zeroList.equals(oneList));
     }
 
+    @Test(timeout = 5000)
+    public void setValuesShouldRejectOversizedArrays()
+    {
+        int[][] start = new int[NROWS][NCOLS];
+        start[0][0] = 2;
+        gameLogic.setValues(start);
+        int[][][] wrong = {
+                new int[NROWS + 1][NCOLS],
+                new int[NROWS][NCOLS + 1],
+                new int[NROWS][]
+        };
+        for (int i = 0; i < NROWS; i++)
+            wrong[2][i] = new int[i == NROWS - 1 ? NCOLS + 1 : NCOLS];
+        for (int[][] ref : wrong) {
+            ref[0][1] = 4;
+            try {
+                gameLogic.setValues(ref);
+                fail("a " + ref.length + " row array on a " + NROWS + "x"
+                        + NCOLS + " board");
+            }
+            catch (IllegalArgumentException ex) {
+                /* expected */
+            }
+            /* and the board is left as it was */
+            List<Cell> tiles = gameLogic.getNonEmptyTiles();
+            assertEquals(1, tiles.size());
+            assertEquals(2, tiles.get(0).getValue());
+        }
+        /* a smaller array is still fine */
+        gameLogic.setValues(new int[NROWS - 1][NCOLS - 1]);
+    }
+
     @Test(timeout = 5000)
     public void resizeShouldHandleBoardsOfAnySize()
     {
@@ -551,6 +584,20 @@ public class Game2048Tester {
 
     }
 
+    @Test(timeout = 5000)
+    public void fullBoardWithEqualTilesOnlyInLastColumnCanMove()
+    {
+        gameLogic.resizeBoard(3, 3, GAME_GOAL);
+        gameLogic.setValues(new int[][] {
+                {2, 4, 8},
+                {4, 8, 2},
+                {2, 4, 2}});
+        assertEquals("Equal tiles one above the other in the last column can merge",
+                GameStatus.IN_PROGRESS,
+                gameLogic.getStatus());
+        assertTrue(gameLogic.slide(SlideDirection.UP));
+    }
+
     @Test(timeout = 1000)
     public void testWinningValue()
     {
@@ -566,6 +613,216 @@ public class Game2048Tester {
         assertEquals(GameStatus.USER_WON, gameLogic.getStatus());
     }
 
+    @Test(timeout = 5000)
+    public void moveResultRebuildsTheBoardAfterTheSlide()
+    {
+        Game2048 game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        game.reset();
+        MoveResult result = new MoveResult();
+        SlideDirection[] dirs = SlideDirection.values();
+        for (int n = 0; n < REPEAT_COUNT && game.getStatus() == GameStatus.IN_PROGRESS; n++) {
+            byte[] before = game.getCellCodes();
+            SlideDirection dir = dirs[gen.nextInt(dirs.length)];
+            boolean moved = game.slide(dir, result);
+            assertEquals(moved, result.isMoved());
+            assertEquals(dir, result.getDirection());
+
+            /* replay the reported moves, merges and spawn on the old board */
+            for (int i = 0; i < result.getMoveCount(); i++) {
+                before[result.getTo(i)] = before[result.getFrom(i)];
+                before[result.getFrom(i)] = 0;
+            }
+            for (int i = 0; i < result.getMergeCount(); i++)
+                before[result.getMergeCell(i)] = (byte)(Integer
+                        .numberOfTrailingZeros(result.getMergeValue(i)) + 1);
+            if (moved) {
+                assertTrue(result.getSpawnCell() >= 0);
+                before[result.getSpawnCell()] = (byte)(Integer
+                        .numberOfTrailingZeros(result.getSpawnValue()) + 1);
+            }
+            else
+                assertEquals(-1, result.getSpawnCell());
+            assertArrayEquals("result does not rebuild the board",
+                    game.getCellCodes(), before);
+        }
+    }
+
+    @Test
+    public void scoreAddsMergedValuesAndUndoTakesThemOff()
+    {
+        int[][] board = new int[NROWS][NCOLS];
+        board[0][0] = 2;
+        board[0][1] = 2;
+        board[0][2] = 4;
+        board[1][0] = 4;
+        board[1][1] = 4;
+        gameLogic.setValues(board);
+        assertEquals(0, gameLogic.getScore());
+        assertEquals(4, gameLogic.getMaxTile());
+
+        /* 2+2 and 4+4 merge: 4 + 8 points */
+        assertTrue(gameLogic.slide(SlideDirection.LEFT));
+        assertEquals(12, gameLogic.getScore());
+        assertEquals(8, gameLogic.getMaxTile());
+
+        gameLogic.undo();
+        assertEquals(0, gameLogic.getScore());
+        assertEquals(4, gameLogic.getMaxTile());
+    }
+
+    @Test(timeout = 5000)
+    public void scoreIsTheSumOfEveryMerge()
+    {
+        Game2048 game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        game.reset();
+        MoveResult result = new MoveResult();
+        SlideDirection[] dirs = SlideDirection.values();
+        long expected = 0;
+        int moves = 0;
+        for (int n = 0; n < REPEAT_COUNT && game.getStatus() == GameStatus.IN_PROGRESS; n++) {
+            if (game.slide(dirs[gen.nextInt(dirs.length)], result))
+                moves++;
+            for (int i = 0; i < result.getMergeCount(); i++)
+                expected += result.getMergeValue(i);
+            assertEquals(expected, game.getScore());
+            int max = 0;
+            for (Cell c : game.getNonEmptyTiles())
+                max = Math.max(max, c.value);
+            assertEquals(max, game.getMaxTile());
+        }
+        for (int n = 0; n < moves; n++)
+            game.undo();
+        assertEquals(0, game.getScore());
+    }
+
+    @Test(timeout = 5000)
+    public void metricsCountCallsAndFollowTheUndoDepth()
+    {
+        GameMetrics metrics = new GameMetrics();
+        metrics.setSampleInterval(1);
+        Game2048 game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        game.setMetrics(metrics);
+        game.reset();
+        assertEquals(1, metrics.getGames());
+        assertEquals(2, metrics.getPlaceRandomValue().getCalls());
+
+        SlideDirection[] dirs = SlideDirection.values();
+        int slides = 0, moves = 0;
+        for (; slides < 50 && game.getStatus() == GameStatus.IN_PROGRESS; slides++)
+            if (game.slide(dirs[gen.nextInt(dirs.length)]))
+                moves++;
+        assertEquals(slides, metrics.getSlide().getCalls());
+        assertEquals(slides - moves, metrics.getSlide().getFailures());
+        assertEquals(slides, metrics.getSlide().getTimed());
+        /* every slide checks the status, moved or not */
+        assertEquals(slides, metrics.getUpdateStatus().getCalls());
+        assertEquals(slides, metrics.getUpdateStatus().getTimed());
+        assertEquals(game.getUndoDepth(), metrics.getUndoDepth());
+
+        while (game.getUndoDepth() > 0)
+            game.undo();
+        try {
+            game.undo();
+            fail("undo past the first board");
+        }
+        catch (IllegalStateException ex) {
+        }
+        assertEquals(moves + 1, metrics.getUndo().getCalls());
+        assertEquals(1, metrics.getUndo().getFailures());
+        assertEquals(0, metrics.getUndoDepth());
+
+        game.setValues(new int[NROWS][NCOLS]);
+        game.updateStatus();
+        assertEquals(slides + 2, metrics.getUpdateStatus().getCalls());
+
+        game.slide(SlideDirection.LEFT);
+        game.setMetrics(null);
+        assertEquals(0, metrics.getGames());
+        assertEquals(0, metrics.getUndoDepth());
+        assertEquals(0, metrics.getUndoBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void undoLimitKeepsTheNewestMoves()
+    {
+        int limit = gen.nextInt(5) + 1;
+        Game2048 game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        game.setUndoLimit(limit);
+        game.reset();
+        List<byte[]> boards = playMoves(game, 30);
+        assertEquals(Math.min(boards.size(), limit), game.getUndoDepth());
+        undoAll(game, boards);
+    }
+
+    @Test(timeout = 5000)
+    public void undoByteLimitKeepsAtLeastOneMove()
+    {
+        Game2048 game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        /* less than one cell's worth still keeps the last move */
+        game.setUndoByteLimit(gen.nextInt(UndoLog.BYTES_PER_ENTRY - 1) + 1);
+        game.reset();
+        List<byte[]> boards = playMoves(game, 30);
+        assertEquals(Math.min(boards.size(), 1), game.getUndoDepth());
+        undoAll(game, boards);
+
+        /* room for two moves at most, as a move records at least three
+           cells */
+        game.setUndoByteLimit(UndoLog.BYTES_PER_ENTRY * 8);
+        game.reset();
+        boards = playMoves(game, 30);
+        assertTrue(game.getUndoDepth() >= Math.min(boards.size(), 1));
+        assertTrue(game.getUndoDepth() <= 2);
+        undoAll(game, boards);
+
+        try {
+            game.setUndoByteLimit(-1);
+            fail("a negative limit should be rejected");
+        }
+        catch (IllegalArgumentException ex) {
+        }
+        try {
+            game.setUndoLimit(-1);
+            fail("a negative limit should be rejected");
+        }
+        catch (IllegalArgumentException ex) {
+        }
+    }
+
+    /* slide at random and return the board before each move */
+    private List<byte[]> playMoves(Game2048 game, int slides)
+    {
+        SlideDirection[] dirs = SlideDirection.values();
+        List<byte[]> boards = new ArrayList<byte[]>();
+        for (int n = 0; n < slides && game.getStatus() == GameStatus.IN_PROGRESS; n++) {
+            byte[] before = game.getCellCodes();
+            if (game.slide(dirs[gen.nextInt(dirs.length)]))
+                boards.add(before);
+        }
+        return boards;
+    }
+
+    /* undo every kept move, which must be the newest ones, then one more */
+    private void undoAll(Game2048 game, List<byte[]> boards)
+    {
+        int depth = game.getUndoDepth();
+        for (int k = boards.size() - 1; k >= boards.size() - depth; k--) {
+            game.undo();
+            assertArrayEquals(boards.get(k), game.getCellCodes());
+        }
+        assertEquals(0, game.getUndoDepth());
+        try {
+            game.undo();
+            fail("undo past the undo limit");
+        }
+        catch (IllegalStateException ex) {
+        }
+    }
+
     /* use DOT (.) for empty cells, be sure to limit the letters to a-f
      * because the highest power of two use in the test is 32 */
 
@@ -0,0 +1,197 @@
+package game2048;
+
+import java.util.Arrays;
+/***********************************************************************
+ * MoveResult class: What one Game2048.slide did to the board: every
+ * tile that changed cells, with where it came from and went to, every
+ * cell where two tiles merged, and the cell of the new random tile.
+ * Cells are board indices, row * columns + column.
+ *
+ * A result is meant to be passed to slide again and again: its buffers
+ * are primitive arrays that only grow, so once they have reached the
+ * board size a move allocates nothing. Applying the moves in order to
+ * the board before the slide, then setting each merge cell to its
+ * merged code and the spawn cell to the spawned code, gives the board
+ * after the slide.
+ **********************************************************************/
+public final class MoveResult {
+    /** Direction of the slide. */
+    private SlideDirection direction;
+    /** True when the slide changed the board. */
+    private boolean moved;
+    /** Source and destination of each tile that changed cells. */
+    private int[] from = new int[16], to = new int[16];
+    private int moveCount;
+    /** Cell and new code of each merge. */
+    private int[] mergeCell = new int[8];
+    private byte[] mergeCode = new byte[8];
+    private int mergeCount;
+    /** Cell and code of the new tile, -1 and 0 for none. */
+    private int spawnCell = -1;
+    private byte spawnCode;
+
+    /*******************************************************************
+     * Forget the last move before recording a new one.
+     *
+     * @param direction direction of the new move
+     * @return none
+     ******************************************************************/
+    void clear(SlideDirection direction) {
+        this.direction = direction;
+        moved = false;
+        moveCount = 0;
+        mergeCount = 0;
+        spawnCell = -1;
+        spawnCode = 0;
+    }
+
+    /*******************************************************************
+     * Record a tile changing cells.
+     *
+     * @param src board index it came from
+     * @param dst board index it went to
+     * @return none
+     ******************************************************************/
+    void addMove(int src, int dst) {
+        if(moveCount == from.length) {
+            from = Arrays.copyOf(from, 2 * moveCount);
+            to = Arrays.copyOf(to, 2 * moveCount);
+        }
+        from[moveCount] = src;
+        to[moveCount++] = dst;
+    }
+
+    /*******************************************************************
+     * Record two tiles merging.
+     *
+     * @param cell board index of the merged tile
+     * @param code cell code of the merged tile
+     * @return none
+     ******************************************************************/
+    void addMerge(int cell, byte code) {
+        if(mergeCount == mergeCell.length) {
+            mergeCell = Arrays.copyOf(mergeCell, 2 * mergeCount);
+            mergeCode = Arrays.copyOf(mergeCode, 2 * mergeCount);
+        }
+        mergeCell[mergeCount] = cell;
+        mergeCode[mergeCount++] = code;
+    }
+
+    /*******************************************************************
+     * Record the new random tile.
+     *
+     * @param cell board index of the tile
+     * @param code cell code of the tile
+     * @return none
+     ******************************************************************/
+    void setSpawn(int cell, byte code) {
+        spawnCell = cell;
+        spawnCode = code;
+    }
+
+    /*******************************************************************
+     * Record whether the board changed.
+     *
+     * @param moved true when the board changed
+     * @return none
+     ******************************************************************/
+    void setMoved(boolean moved) {
+        this.moved = moved;
+    }
+
+    /*******************************************************************
+     * A method used to get the direction of the slide.
+     *
+     * @return the direction, null before the first slide
+     ******************************************************************/
+    public SlideDirection getDirection() {
+        return direction;
+    }
+
+    /*******************************************************************
+     * A method used to check if the slide changed the board.
+     *
+     * @return true when the board changed, the value slide returned
+     ******************************************************************/
+    public boolean isMoved() {
+        return moved;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of tiles that changed cells,
+     * including tiles that moved into a merge. A tile that merged
+     * without moving is not counted.
+     *
+     * @return the number of tile moves
+     ******************************************************************/
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /*******************************************************************
+     * A method used to get where a tile came from.
+     *
+     * @param i the move, 0 to getMoveCount() - 1
+     * @return the board index
+     ******************************************************************/
+    public int getFrom(int i) {
+        return from[i];
+    }
+
+    /*******************************************************************
+     * A method used to get where a tile went to.
+     *
+     * @param i the move, 0 to getMoveCount() - 1
+     * @return the board index
+     ******************************************************************/
+    public int getTo(int i) {
+        return to[i];
+    }
+
+    /*******************************************************************
+     * A method used to get the number of merges.
+     *
+     * @return the number of cells where two tiles merged
+     ******************************************************************/
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    /*******************************************************************
+     * A method used to get where two tiles merged.
+     *
+     * @param i the merge, 0 to getMergeCount() - 1
+     * @return the board index
+     ******************************************************************/
+    public int getMergeCell(int i) {
+        return mergeCell[i];
+    }
+
+    /*******************************************************************
+     * A method used to get the value of a merged tile.
+     *
+     * @param i the merge, 0 to getMergeCount() - 1
+     * @return the tile value
+     ******************************************************************/
+    public int getMergeValue(int i) {
+        return 1 << (mergeCode[i] - 1);
+    }
+
+    /*******************************************************************
+     * A method used to get where the new random tile was placed.
+     *
+     * @return the board index, -1 when no tile was placed
+     ******************************************************************/
+    public int getSpawnCell() {
+        return spawnCell;
+    }
+
+    /*******************************************************************
+     * A method used to get the value of the new random tile.
+     *
+     * @return the tile value, 0 when no tile was placed
+     ******************************************************************/
+    public int getSpawnValue() {
+        return spawnCode == 0 ? 0 : 1 << (spawnCode - 1);
+    }
+}
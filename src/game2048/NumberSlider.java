@@ -28,7 +28,8 @@ public interface NumberSlider {
      * provided array to your own internal array. Do not just assign the
      * entire array object to your internal array object. Otherwise, your
      * internal array may get corrupted by the array used in the JUnit
-     * test file. This method is mainly used by the JUnit tester.
+     * test file. This method is mainly used by the JUnit tester. Moves
+     * made before it cannot be undone.
      * @param ref
      */
     void setValues(final int[][] ref);
@@ -44,7 +45,10 @@ public interface NumberSlider {
     Cell placeRandomValue();
 
     /**
-     * Slide all the tiles in the board in the requested direction
+     * Slide all the tiles in the board in the requested direction.
+     * An implementation may hold tiles up to a largest value only
+     * (BitBoard2048.MAX_TILE for BitBoard2048); two tiles of that value
+     * then stay apart instead of merging. Game2048 has no such limit.
      * @param dir move direction of the tiles
      *
      * @return true when the board changes
@@ -64,6 +68,21 @@ public interface NumberSlider {
      */
     GameStatus getStatus();
 
+    /**
+     * Return the score: the sum of the values of all the tiles made by
+     * merging since the last reset. Undo takes off the points of the
+     * move undone. Reading it takes constant time.
+     * @return the score
+     */
+    long getScore();
+
+    /**
+     * Return the largest tile value on the board. Reading it takes
+     * constant time.
+     * @return the value, 0 for an empty board
+     */
+    int getMaxTile();
+
     /**
      * Undo the most recent action, i.e. restore the board to its previous
      * state. Calling this method multiple times will ultimately restore
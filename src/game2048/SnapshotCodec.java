@@ -0,0 +1,214 @@
+package game2048;
+
+import java.nio.ByteBuffer;
+/***********************************************************************
+ * SnapshotCodec class: Saves a Game2048 to a ByteBuffer and loads it
+ * back, with or without its undo history. The state is copied straight
+ * between the game's arrays and the buffer, so a snapshot of a game
+ * costs no objects beyond the buffer itself.
+ *
+ * Format (big-endian), version 1:
+ *   magic:i32 version:u8 flags:u8 rows:u16 cols:u16 winningValue:i32
+ *   status:u8 (GameStatus ordinal)
+ *   board: rows * cols cell codes in row-major order, two per byte
+ *     (low nibble first) when flag PACKED is set, else one per byte
+ *   score:i64 when flag SCORE is set; it is set whenever the score is
+ *     not 0, and a missing score is 0
+ *   undo history when flag HISTORY is set: frame count:i32, entry
+ *     count:i32, the entry count of each frame oldest first (each
+ *     followed by the points of its move:i64 when flag SCORE is set),
+ *     then each entry as board index (u16, or i32 when the board has
+ *     more than 65536 cells) and old cell code:u8
+ *
+ * Readers reject versions newer than their own and unknown flags, so
+ * later versions can add fields behind a new version number or flag.
+ * The random tile generator is not saved; a loaded game keeps its own.
+ **********************************************************************/
+public final class SnapshotCodec {
+    /** First four bytes of every snapshot: "2048" in ASCII. */
+    public static final int MAGIC = 0x32303438;
+    /** Format version written by this class. */
+    public static final int VERSION = 1;
+
+    /** Flag: the undo history follows the board. */
+    private static final int HISTORY = 1;
+    /** Flag: the board is stored two cells per byte. */
+    private static final int PACKED = 2;
+    /** Flag: the score follows the board. */
+    private static final int SCORE = 4;
+    /** Bytes before the board. */
+    private static final int HEADER_SIZE = 15;
+    /** Largest number of rows or columns that can be saved. */
+    private static final int MAX_SIDE = 0xFFFF;
+    /** Boards with more cells store undo indices in 4 bytes. */
+    private static final int NARROW_CELLS = 1 << 16;
+
+    private SnapshotCodec() {
+    }
+
+    /*******************************************************************
+     * Find the number of bytes a snapshot of a game takes.
+     *
+     * @param game the game
+     * @param withHistory true to include the undo history
+     * @return the snapshot size in bytes
+     ******************************************************************/
+    public static int encodedSize(Game2048 game, boolean withHistory) {
+        byte[] board = game.cells();
+        int size = HEADER_SIZE + (packable(game) ? (board.length + 1) / 2 :
+                board.length);
+        boolean scored = game.getScore() != 0;
+        if(scored)
+            size += 8;
+        if(withHistory)
+            size += game.undoLog().encodedSize(board.length > NARROW_CELLS,
+                    scored);
+        return size;
+    }
+
+    /*******************************************************************
+     * Write a snapshot of a game at the buffer's position.
+     *
+     * @param game the game, not changed
+     * @param dst receives the snapshot; needs encodedSize bytes left
+     * @param withHistory true to include the undo history
+     * @return none
+     * @throws java.nio.BufferOverflowException when dst is too small
+     * @throws IllegalArgumentException when the board has more than
+     * 65535 rows or columns
+     ******************************************************************/
+    public static void write(Game2048 game, ByteBuffer dst,
+                             boolean withHistory) {
+        byte[] board = game.cells();
+        if(game.getRows() > MAX_SIDE || game.getCols() > MAX_SIDE)
+            throw new IllegalArgumentException();
+        boolean packed = packable(game);
+        // a game with no points scored has none in its history either
+        boolean scored = game.getScore() != 0;
+
+        dst.putInt(MAGIC)
+                .put((byte)VERSION)
+                .put((byte)((withHistory ? HISTORY : 0) | (packed ? PACKED : 0)
+                        | (scored ? SCORE : 0)))
+                .putShort((short)game.getRows())
+                .putShort((short)game.getCols())
+                .putInt(game.getWinningValue())
+                .put((byte)game.getStatus().ordinal());
+
+        if(packed) {
+            for(int k = 0; k < board.length; k += 2) {
+                int high = k + 1 < board.length ? board[k + 1] : 0;
+                dst.put((byte)(board[k] | high << 4));
+            }
+        }
+        else
+            dst.put(board);
+
+        if(scored)
+            dst.putLong(game.getScore());
+        if(withHistory)
+            game.undoLog().write(dst, board.length > NARROW_CELLS, scored);
+    }
+
+    /*******************************************************************
+     * Read a snapshot into a new game.
+     *
+     * @param src holds the snapshot at its position
+     * @return the game
+     * @throws IllegalArgumentException when src does not hold a valid
+     * snapshot
+     ******************************************************************/
+    public static Game2048 read(ByteBuffer src) {
+        Game2048 game = new Game2048();
+        read(src, game);
+        return game;
+    }
+
+    /*******************************************************************
+     * Read a snapshot into an existing game, replacing its board,
+     * status, score, winning value and undo history. A game of the same size
+     * keeps its arrays, so restoring many snapshots into one game
+     * allocates nothing. Without a saved history the game's history is
+     * emptied.
+     *
+     * @param src holds the snapshot at its position
+     * @param game receives the state
+     * @return none
+     * @throws IllegalArgumentException when src does not hold a valid
+     * snapshot; the game is then in an unspecified state
+     ******************************************************************/
+    public static void read(ByteBuffer src, Game2048 game) {
+        try {
+            if(src.getInt() != MAGIC)
+                throw new IllegalArgumentException("not a game snapshot");
+            int version = src.get() & 0xFF;
+            if(version < 1 || version > VERSION)
+                throw new IllegalArgumentException("unknown snapshot version "
+                        + version);
+            int flags = src.get() & 0xFF;
+            if((flags & ~(HISTORY | PACKED | SCORE)) != 0)
+                throw new IllegalArgumentException("unknown snapshot flags");
+            int rows = src.getShort() & 0xFFFF;
+            int cols = src.getShort() & 0xFFFF;
+            int winningValue = src.getInt();
+            int status = src.get() & 0xFF;
+            if(status >= GameStatus.values().length)
+                throw new IllegalArgumentException("bad game status");
+            if(winningValue <= 0 || (winningValue & (winningValue - 1)) != 0)
+                throw new IllegalArgumentException("bad winning value");
+            // the board must be in the buffer: check before allocating
+            long cells = (long)rows * cols;
+            if(rows < 2 || cols < 2 || cells > 2L * src.remaining())
+                throw new IllegalArgumentException("bad board size");
+
+            if(rows == game.getRows() && cols == game.getCols()) {
+                game.clearBoard();
+                game.setWinningValue(winningValue);
+            }
+            else
+                game.resizeBoard(rows, cols, winningValue);
+
+            int n = (int)cells;
+            if((flags & PACKED) != 0) {
+                for(int k = 0; k < n; k += 2) {
+                    int b = src.get();
+                    game.loadCell(k, (byte)(b & 0xF));
+                    if(k + 1 < n)
+                        game.loadCell(k + 1, (byte)((b >> 4) & 0xF));
+                }
+            }
+            else {
+                for(int k = 0; k < n; k++) {
+                    byte code = src.get();
+                    if(code < 0 || code > 31)
+                        throw new IllegalArgumentException("bad cell code");
+                    game.loadCell(k, code);
+                }
+            }
+
+            boolean scored = (flags & SCORE) != 0;
+            if(scored) {
+                long score = src.getLong();
+                if(score < 0)
+                    throw new IllegalArgumentException("bad score");
+                game.loadScore(score);
+            }
+            if((flags & HISTORY) != 0)
+                game.undoLog().read(src, n > NARROW_CELLS, n, scored);
+            game.loadStatus(GameStatus.values()[status]);
+        }
+        catch(java.nio.BufferUnderflowException ex) {
+            throw new IllegalArgumentException("truncated snapshot", ex);
+        }
+    }
+
+    /*******************************************************************
+     * Check if every cell code of a board fits in 4 bits.
+     *
+     * @param game the game
+     * @return true when the board can be stored two cells per byte
+     ******************************************************************/
+    private static boolean packable(Game2048 game) {
+        return game.largestCode() < 16;
+    }
+}
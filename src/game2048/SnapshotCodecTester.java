@@ -0,0 +1,190 @@
+package game2048;
+
+import org.junit.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class SnapshotCodecTester {
+    private final static int GAME_GOAL = 2048;
+    private static Random gen;
+    private int NROWS, NCOLS;
+    private Game2048 game;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(8) + 3; /* 3-10 */
+        NCOLS = gen.nextInt(8) + 3;
+        game = new Game2048(gen.nextLong());
+        game.resizeBoard(NROWS, NCOLS, GAME_GOAL);
+    }
+
+    @Test(timeout = 5000)
+    public void roundTripKeepsBoardStatusAndSize()
+    {
+        game.setValues(randomBoard(1 << 10));
+        playRandomMoves(20);
+        Game2048 copy = SnapshotCodec.read(snapshot(game, false));
+        assertGamesEqual(game, copy);
+        assertEquals("no history was saved", 0, copy.getUndoDepth());
+    }
+
+    @Test(timeout = 5000)
+    public void roundTripOfLargeTilesIsNotPacked()
+    {
+        /* tiles above 2^14 need more than 4 bits per cell */
+        game.resizeBoard(NROWS, NCOLS, 1 << 30);
+        int[][] board = randomBoard(1 << 20);
+        board[0][0] = 1 << 20;
+        game.setValues(board);
+        ByteBuffer buf = snapshot(game, false);
+        assertEquals(15 + NROWS * NCOLS, buf.remaining());
+        assertGamesEqual(game, SnapshotCodec.read(buf));
+    }
+
+    @Test(timeout = 5000)
+    public void smallTilesArePackedTwoPerByte()
+    {
+        game.resizeBoard(4, 4, GAME_GOAL);
+        game.setValues(new int[][] {
+                {2, 4, 8, 16},
+                {0, 0, 0, 0},
+                {1, 0, 0, 1024},
+                {0, 0, 0, 0}});
+        ByteBuffer buf = snapshot(game, false);
+        assertEquals("4x4 board in 8 bytes after the header", 15 + 8,
+                buf.remaining());
+        assertGamesEqual(game, SnapshotCodec.read(buf));
+    }
+
+    @Test(timeout = 5000)
+    public void roundTripWithHistoryUndoesTheSameMoves()
+    {
+        game.reset();
+        int moves = playRandomMoves(30);
+        Game2048 copy = new Game2048();
+        SnapshotCodec.read(snapshot(game, true), copy);
+        assertGamesEqual(game, copy);
+        assertEquals(moves, copy.getUndoDepth());
+        for (int k = 0; k < moves; k++) {
+            game.undo();
+            copy.undo();
+            assertArrayEquals("boards differ after undo", game.getCellCodes(),
+                    copy.getCellCodes());
+            assertEquals("scores differ after undo", game.getScore(),
+                    copy.getScore());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void readIntoGameOfSameSizeReplacesEverything()
+    {
+        game.reset();
+        playRandomMoves(10);
+        ByteBuffer buf = snapshot(game, true);
+
+        Game2048 target = new Game2048();
+        target.resizeBoard(NROWS, NCOLS, 16);
+        target.setValues(randomBoard(8));
+        SnapshotCodec.read(buf, target);
+        assertGamesEqual(game, target);
+        assertEquals(game.getUndoDepth(), target.getUndoDepth());
+    }
+
+    @Test(timeout = 5000)
+    public void encodedSizeMatchesBytesWritten()
+    {
+        game.reset();
+        playRandomMoves(gen.nextInt(40));
+        for (boolean history : new boolean[] {false, true}) {
+            ByteBuffer buf = ByteBuffer.allocate(
+                    SnapshotCodec.encodedSize(game, history));
+            SnapshotCodec.write(game, buf, history);
+            assertFalse("buffer should be exactly full", buf.hasRemaining());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void readRejectsOtherData()
+    {
+        game.reset();
+        ByteBuffer buf = snapshot(game, true);
+
+        ByteBuffer badMagic = copyOf(buf);
+        badMagic.put(0, (byte)'x');
+        assertRejected("bad magic", badMagic);
+
+        ByteBuffer newer = copyOf(buf);
+        newer.put(4, (byte)(SnapshotCodec.VERSION + 1));
+        assertRejected("newer version", newer);
+
+        ByteBuffer truncated = copyOf(buf);
+        truncated.limit(truncated.limit() - 1);
+        assertRejected("truncated", truncated);
+    }
+
+    private int[][] randomBoard(int maxValue)
+    {
+        int[][] board = new int[NROWS][NCOLS];
+        for (int r = 0; r < NROWS; r++)
+            for (int c = 0; c < NCOLS; c++)
+                if (gen.nextBoolean())
+                    board[r][c] = 1 << gen.nextInt(
+                            Integer.numberOfTrailingZeros(maxValue) + 1);
+        return board;
+    }
+
+    private int playRandomMoves(int count)
+    {
+        SlideDirection[] dirs = SlideDirection.values();
+        int moved = 0;
+        for (int k = 0; k < count; k++)
+            if (game.slide(dirs[gen.nextInt(dirs.length)]))
+                moved++;
+        return moved;
+    }
+
+    private static ByteBuffer snapshot(Game2048 g, boolean history)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(SnapshotCodec.encodedSize(g, history));
+        SnapshotCodec.write(g, buf, history);
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer buf)
+    {
+        ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+        copy.put(buf.duplicate()).flip();
+        return copy;
+    }
+
+    private static void assertGamesEqual(Game2048 expected, Game2048 actual)
+    {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getCols(), actual.getCols());
+        assertEquals(expected.getWinningValue(), actual.getWinningValue());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertArrayEquals("boards differ", expected.getCellCodes(),
+                actual.getCellCodes());
+        assertEquals(expected.getTileCount(), actual.getTileCount());
+        assertEquals(expected.getScore(), actual.getScore());
+    }
+
+    private static void assertRejected(String what, ByteBuffer buf)
+    {
+        try {
+            SnapshotCodec.read(buf);
+            fail(what + " snapshot should be rejected");
+        }
+        catch (IllegalArgumentException ex) {
+            /* expected */
+        }
+    }
+}
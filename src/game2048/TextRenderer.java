@@ -0,0 +1,257 @@
+package game2048;
+
+import java.io.*;
+import java.util.Arrays;
+/***********************************************************************
+ * TextRenderer class: Draws a NumberSlider board as text. Each frame is
+ * formatted straight into one reusable byte buffer and written to the
+ * stream in a single call, instead of one formatted write per cell.
+ *
+ * In plain mode every frame is the whole board, a row per line, each
+ * cell right-aligned with a dot for an empty cell. In ANSI mode the
+ * first frame clears the screen and draws the board at the top; later
+ * frames move the cursor to each cell that changed and redraw only
+ * those, then clear everything below the board so prompts printed after
+ * a frame do not pile up.
+ **********************************************************************/
+public class TextRenderer {
+    /** ANSI control sequence introducer. */
+    private static final byte ESC = 27;
+
+    /** Where frames are written. */
+    private final OutputStream out;
+    /** True to redraw only changed cells with ANSI cursor moves. */
+    private final boolean ansi;
+    /** Board size. */
+    private int rows, cols;
+    /** Characters per cell, including the space before the number. */
+    private int width;
+    /** Cell codes of the frame being drawn and of the last frame drawn. */
+    private byte[] codes, shown;
+    /** True when the next frame must be drawn in full. */
+    private boolean redraw = true;
+    /** The frame being formatted. */
+    private byte[] buf = new byte[256];
+    private int len;
+
+    /*******************************************************************
+     * Create a renderer.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param cellWidth the least number of digits each cell has room for
+     * @param out where frames are written
+     * @param ansi true to redraw only the cells that changed
+     ******************************************************************/
+    public TextRenderer(int rows, int cols, int cellWidth, OutputStream out,
+                        boolean ansi) {
+        this.out = out;
+        this.ansi = ansi;
+        this.width = cellWidth + 1;
+        resize(rows, cols);
+    }
+
+    /*******************************************************************
+     * Set the board size; the next frame is drawn in full.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return none
+     ******************************************************************/
+    public void resize(int rows, int cols) {
+        if(rows < 1 || cols < 1)
+            throw new IllegalArgumentException();
+        this.rows = rows;
+        this.cols = cols;
+        codes = new byte[rows * cols];
+        shown = new byte[rows * cols];
+        redraw = true;
+    }
+
+    /*******************************************************************
+     * Draw the next frame in full even in ANSI mode, e.g. after other
+     * output has scrolled the screen.
+     *
+     * @return none
+     ******************************************************************/
+    public void invalidate() {
+        redraw = true;
+    }
+
+    /*******************************************************************
+     * Draw a game's board with one write to the stream.
+     *
+     * @param game the game, sized to this renderer's board
+     * @return none
+     * @throws UncheckedIOException when the stream cannot be written
+     ******************************************************************/
+    public void render(NumberSlider game) {
+        readCodes(game);
+
+        // widen the cells when a value no longer fits
+        int maxCode = 0;
+        for(byte code : codes)
+            maxCode = Math.max(maxCode, code);
+        int digits = maxCode == 0 ? 1 : digits(1 << (maxCode - 1));
+        if(digits + 1 > width) {
+            width = digits + 1;
+            redraw = true;
+        }
+
+        len = 0;
+        if(!ansi)
+            formatBoard();
+        else if(redraw) {
+            put(ESC); put('['); put('2'); put('J');
+            moveTo(0, 0);
+            formatBoard();
+        }
+        else {
+            for(int k = 0; k < codes.length; k++) {
+                if(codes[k] != shown[k]) {
+                    moveTo(k / cols, (k % cols) * width);
+                    formatCell(codes[k]);
+                }
+            }
+            moveTo(rows, 0);
+        }
+        if(ansi) {
+            // erase the old prompt and anything else below the board
+            put(ESC); put('['); put('J');
+        }
+        redraw = false;
+        System.arraycopy(codes, 0, shown, 0, codes.length);
+
+        try {
+            out.write(buf, 0, len);
+            out.flush();
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*******************************************************************
+     * Fill codes from the game, straight from the board of a Game2048
+     * and from the non-empty tiles of any other game.
+     *
+     * @param game the game
+     * @return none
+     ******************************************************************/
+    private void readCodes(NumberSlider game) {
+        if(game instanceof Game2048) {
+            Game2048 g = (Game2048)game;
+            if(g.getRows() != rows || g.getCols() != cols)
+                resize(g.getRows(), g.getCols());
+            g.copyCellCodes(codes);
+            return;
+        }
+        Arrays.fill(codes, (byte)0);
+        for(Cell c : game.getNonEmptyTiles())
+            codes[c.row * cols + c.column] =
+                    (byte)(Integer.numberOfTrailingZeros(c.value) + 1);
+    }
+
+    /*******************************************************************
+     * Format every row of the board, each ending in a newline.
+     *
+     * @return none
+     ******************************************************************/
+    private void formatBoard() {
+        for(int r = 0; r < rows; r++) {
+            for(int c = 0; c < cols; c++)
+                formatCell(codes[r * cols + c]);
+            put('\n');
+        }
+    }
+
+    /*******************************************************************
+     * Format one cell right-aligned in width characters: the tile
+     * value, or a dot when empty.
+     *
+     * @param code the cell code
+     * @return none
+     ******************************************************************/
+    private void formatCell(int code) {
+        ensure(width);
+        int end = len + width;
+        int k = end;
+        if(code == 0)
+            buf[--k] = '.';
+        else {
+            for(int v = 1 << (code - 1); v > 0; v /= 10)
+                buf[--k] = (byte)('0' + v % 10);
+        }
+        while(k > len)
+            buf[--k] = ' ';
+        len = end;
+    }
+
+    /*******************************************************************
+     * Add an ANSI cursor move to a zero-based screen position.
+     *
+     * @param line the line
+     * @param column the column
+     * @return none
+     ******************************************************************/
+    private void moveTo(int line, int column) {
+        put(ESC);
+        put('[');
+        putInt(line + 1);
+        put(';');
+        putInt(column + 1);
+        put('H');
+    }
+
+    /*******************************************************************
+     * Add a non-negative number in decimal.
+     *
+     * @param v the number
+     * @return none
+     ******************************************************************/
+    private void putInt(int v) {
+        int n = digits(v);
+        ensure(n);
+        for(int k = len + n - 1; k >= len; k--, v /= 10)
+            buf[k] = (byte)('0' + v % 10);
+        len += n;
+    }
+
+    /*******************************************************************
+     * Add one byte.
+     *
+     * @param b the byte
+     * @return none
+     ******************************************************************/
+    private void put(int b) {
+        ensure(1);
+        buf[len++] = (byte)b;
+    }
+
+    /*******************************************************************
+     * Grow the buffer so n more bytes fit. The buffer is kept, so after
+     * the first frames no frame allocates.
+     *
+     * @param n the number of bytes
+     * @return none
+     ******************************************************************/
+    private void ensure(int n) {
+        if(len + n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, len + n));
+    }
+
+    /*******************************************************************
+     * Count the decimal digits of a positive number.
+     *
+     * @param v the number
+     * @return the number of digits
+     ******************************************************************/
+    private static int digits(int v) {
+        int n = 1;
+        while(v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+}
@@ -1,17 +1,32 @@
 package game2048;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Scanner;
 
 public class TextUI {
     private NumberSlider game;
-    private int[][] grid;
+    private TextRenderer renderer;
     private static int CELL_WIDTH = 3;
-    private static String NUM_FORMAT, BLANK_FORMAT;
+    /* bytes of a move script read at a time */
+    private static final int SCRIPT_BUFFER = 1 << 16;
     private Scanner inp;
 
     public TextUI() {
-        game = new Game2048();
+        this(false);
+    }
+
+    /* ansi: redraw only the cells that changed, with ANSI cursor moves */
+    public TextUI(boolean ansi) {
+        this(ansi, new Game2048(), 4, 4, 64);
+    }
+
+    public TextUI(boolean ansi, NumberSlider game, int rows, int cols,
+                  int winningValue) {
+        this.game = game;
 
         if (game == null) {
             System.err.println ("*---------------------------------------------*");
@@ -20,35 +35,14 @@ public class TextUI {
             System.exit(0xE0);
         }
         // set board size and winning value here -> set low win score to test full game length
-        game.resizeBoard(4, 4, 64);
-        grid = new int[4][4];
-
-        /* Set the string to %4d */
-        NUM_FORMAT = String.format("%%%dd", CELL_WIDTH + 1);
-
-        /* Set the string to %4s, but without using String.format() */
-        BLANK_FORMAT = "%" + (CELL_WIDTH + 1) + "s";
+        game.resizeBoard(rows, cols, winningValue);
+        /* each frame is formatted into one buffer and written at once */
+        renderer = new TextRenderer(rows, cols, CELL_WIDTH, System.out, ansi);
         inp = new Scanner(System.in);
     }
 
     private void renderBoard() {
-        /* reset all the 2D array elements to ZERO */
-        for (int k = 0; k < grid.length; k++)
-            for (int m = 0; m < grid[k].length; m++)
-                grid[k][m] = 0;
-        /* fill in the 2D array using information for non-empty tiles */
-        for (Cell c : game.getNonEmptyTiles())
-            grid[c.row][c.column] = c.value;
-
-        /* Print the 2D array using dots and numbers */
-        for (int k = 0; k < grid.length; k++) {
-            for (int m = 0; m < grid[k].length; m++)
-                if (grid[k][m] == 0)
-                    System.out.printf (BLANK_FORMAT, ".");
-                else
-                    System.out.printf (NUM_FORMAT, grid[k][m]);
-            System.out.println();
-        }
+        renderer.render(game);
     }
 
     public void playLoop() {
@@ -88,7 +82,8 @@ public class TextUI {
             }
             if (game.getStatus() != GameStatus.IN_PROGRESS)
                 break;
-            System.out.print ("Slide direction (W, A, S, D), [U]ndo or [Q]uit? ");
+            System.out.print ("Score " + game.getScore() +
+                    ". Slide direction (W, A, S, D), [U]ndo or [Q]uit? ");
             resp = inp.next().trim().toUpperCase();
         }
 
@@ -105,8 +100,129 @@ public class TextUI {
         }
     }
 
-    public static void main(String[] arg) {
-        TextUI t = new TextUI();
-        t.playLoop();
+    /*
+     * Non-interactive mode: apply the moves of a script back to back,
+     * without rendering or prompting. The script is read through a
+     * fixed buffer, so it can be any length. Each character is one
+     * command, upper or lower case:
+     *   W A S D  slide up, left, down, right
+     *   U        undo (ignored when there is nothing to undo)
+     *   P        print the board
+     *   N        end the game and start a new one
+     *   Q        stop reading
+     * Anything else, such as white space, is skipped. When a game is
+     * won or lost, or ended with N, a summary line is printed and the
+     * next move starts a new game. After the script the board is
+     * printed along with a summary of the last game and of the run.
+     */
+    public void playScript(ReadableByteChannel in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCRIPT_BUFFER);
+        byte[] script = buf.array();
+        long start = System.nanoTime();
+        long games = 0, totalMoves = 0;
+        int moves = 0;
+        boolean started = false, quit = false;
+
+        while (!quit && in.read(buf) >= 0) {
+            int n = buf.position();
+            for (int k = 0; k < n && !quit; k++) {
+                SlideDirection dir = null;
+                switch (script[k]) {
+                    case 'W': case 'w': dir = SlideDirection.UP; break;
+                    case 'A': case 'a': dir = SlideDirection.LEFT; break;
+                    case 'S': case 's': dir = SlideDirection.DOWN; break;
+                    case 'D': case 'd': dir = SlideDirection.RIGHT; break;
+                    case 'U': case 'u':
+                        try {
+                            game.undo();
+                        } catch (IllegalStateException exp) {
+                            /* nothing to undo */
+                        }
+                        break;
+                    case 'P': case 'p':
+                        if (started)
+                            renderBoard();
+                        break;
+                    case 'N': case 'n':
+                        if (started) {
+                            printSummary(++games, moves);
+                            started = false;
+                        }
+                        break;
+                    case 'Q': case 'q':
+                        quit = true;
+                        break;
+                }
+                if (dir == null)
+                    continue;
+
+                if (!started) {
+                    game.reset();
+                    started = true;
+                    moves = 0;
+                }
+                game.slide(dir);
+                moves++;
+                totalMoves++;
+                if (game.getStatus() != GameStatus.IN_PROGRESS) {
+                    printSummary(++games, moves);
+                    started = false;
+                }
+            }
+            buf.clear();
+        }
+
+        if (started) {
+            renderBoard();
+            printSummary(++games, moves);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d moves in %.2f s, %.0f moves/s%n",
+                games, totalMoves, seconds, totalMoves / seconds);
+    }
+
+    private void printSummary(long number, int moves) {
+        System.out.printf("game %d %s moves %d score %d max tile %d%n",
+                number, game.getStatus(), moves, game.getScore(),
+                game.getMaxTile());
+    }
+
+    /*
+     * Usage: TextUI [--ansi]
+     *    or: TextUI --batch [--script FILE] [--rows R] [--cols C]
+     *          [--win W] [--seed S]
+     * Batch mode reads a move script (see playScript) from the file,
+     * or from standard input when no file is given.
+     */
+    public static void main(String[] arg) throws IOException {
+        boolean ansi = false, batch = false;
+        String script = null;
+        int rows = 4, cols = 4, win = 64;
+        long seed = System.nanoTime();
+        for (int i = 0; i < arg.length; i++) {
+            switch (arg[i]) {
+                case "--ansi": ansi = true; break;
+                case "--batch": batch = true; break;
+                case "--script": script = arg[++i]; batch = true; break;
+                case "--rows": rows = Integer.parseInt(arg[++i]); break;
+                case "--cols": cols = Integer.parseInt(arg[++i]); break;
+                case "--win": win = Integer.parseInt(arg[++i]); break;
+                case "--seed": seed = Long.parseLong(arg[++i]); break;
+                default:
+                    System.err.println("unknown option " + arg[i]);
+                    System.exit(2);
+            }
+        }
+
+        TextUI t = new TextUI(ansi, new Game2048(seed), rows, cols, win);
+        if (!batch) {
+            t.playLoop();
+            return;
+        }
+        try (ReadableByteChannel in = script == null ?
+                new FileInputStream(FileDescriptor.in).getChannel() :
+                Files.newByteChannel(Paths.get(script))) {
+            t.playScript(in);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,344 @@
+package game2048;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+/***********************************************************************
+ * UndoLog class: The undo history of a Game2048, stored as deltas.
+ * Each move is a frame holding only the cells the move wrote, as a
+ * board index and the cell code it had before the write. Undoing a move
+ * writes the old codes back in reverse order.
+ *
+ * Each frame also keeps the points its move scored, so undo can take
+ * them off the score again.
+ *
+ * Frames are kept in primitive arrays. An optional limit on the number
+ * of moves and on the number of stored cells drops the oldest frames
+ * once exceeded.
+ **********************************************************************/
+class UndoLog {
+    /** Estimated bytes per stored cell: an int index and a byte code. */
+    static final int BYTES_PER_ENTRY = 5;
+
+    /** Board index of every stored cell, oldest first. */
+    private int[] cells = new int[64];
+    /** Cell code before the write, parallel to cells. */
+    private byte[] codes = new byte[64];
+    /** Number of used entries in cells and codes. */
+    private int entryCount;
+    /** Index of the first entry of every frame, oldest first. */
+    private int[] frameStart = new int[16];
+    /** Points scored by the move of every frame, parallel to frameStart. */
+    private long[] frameScore = new long[16];
+    /** Number of used entries in frameStart. */
+    private int frameCount;
+    /** First frame still kept; older ones were dropped by a limit. */
+    private int firstFrame;
+    /** Most moves kept, 0 for no limit. */
+    private int maxFrames;
+    /** Most cells kept over all moves, 0 for no limit. */
+    private int maxEntries;
+
+    /*******************************************************************
+     * Set the most moves kept. Older moves are dropped when a new move
+     * ends.
+     *
+     * @param maxFrames the number of moves, 0 for no limit
+     * @return none
+     ******************************************************************/
+    void setMaxFrames(int maxFrames) {
+        if(maxFrames < 0)
+            throw new IllegalArgumentException();
+        this.maxFrames = maxFrames;
+    }
+
+    /*******************************************************************
+     * Set the most cells kept over all moves. Older moves are dropped
+     * when a new move ends.
+     *
+     * @param maxEntries the number of cells, 0 for no limit
+     * @return none
+     ******************************************************************/
+    void setMaxEntries(int maxEntries) {
+        if(maxEntries < 0)
+            throw new IllegalArgumentException();
+        this.maxEntries = maxEntries;
+    }
+
+    /*******************************************************************
+     * Drop all moves.
+     *
+     * @return none
+     ******************************************************************/
+    void clear() {
+        entryCount = 0;
+        frameCount = 0;
+        firstFrame = 0;
+    }
+
+    /*******************************************************************
+     * The number of moves that can be undone.
+     *
+     * @return the number of frames kept
+     ******************************************************************/
+    int depth() {
+        return frameCount - firstFrame;
+    }
+
+    /*******************************************************************
+     * The number of cells stored over all moves kept.
+     *
+     * @return the number of entries kept
+     ******************************************************************/
+    int size() {
+        return depth() == 0 ? 0 : entryCount - frameStart[firstFrame];
+    }
+
+    /*******************************************************************
+     * Estimate the heap held by the log, including unused capacity.
+     *
+     * @return estimated size in bytes
+     ******************************************************************/
+    long estimatedBytes() {
+        return (long)cells.length * BYTES_PER_ENTRY + 12L * frameStart.length;
+    }
+
+    /*******************************************************************
+     * Start the frame of a new move. Nothing is dropped yet: the move
+     * may change nothing and be popped again.
+     *
+     * @return none
+     ******************************************************************/
+    void beginFrame() {
+        if(depth() == 0)
+            clear();
+        else if(firstFrame > 0 && firstFrame >= depth())
+            compact();
+
+        if(frameCount == frameStart.length) {
+            frameStart = Arrays.copyOf(frameStart, 2 * frameCount);
+            frameScore = Arrays.copyOf(frameScore, 2 * frameCount);
+        }
+        frameScore[frameCount] = 0;
+        frameStart[frameCount++] = entryCount;
+    }
+
+    /*******************************************************************
+     * Finish the frame of a move that changed the board. Frames beyond
+     * the limits are dropped, oldest first; the newest is always kept,
+     * even when it alone holds more cells than the limit.
+     *
+     * @return none
+     ******************************************************************/
+    void endFrame() {
+        while(depth() > 1 &&
+                ((maxFrames > 0 && depth() > maxFrames) ||
+                 (maxEntries > 0 && size() > maxEntries)))
+            firstFrame++;
+    }
+
+    /*******************************************************************
+     * Store the code a cell had before a write, as part of the newest
+     * move. Nothing is stored when there is no move to add it to.
+     *
+     * @param cell board index of the cell
+     * @param code the cell code before the write
+     * @return none
+     ******************************************************************/
+    void record(int cell, byte code) {
+        if(frameCount == 0)
+            return;
+        if(entryCount == cells.length) {
+            cells = Arrays.copyOf(cells, 2 * entryCount);
+            codes = Arrays.copyOf(codes, 2 * entryCount);
+        }
+        cells[entryCount] = cell;
+        codes[entryCount++] = code;
+    }
+
+    /*******************************************************************
+     * Set the points scored by the newest move.
+     *
+     * @param points the sum of the tiles its merges made
+     * @return none
+     ******************************************************************/
+    void setLastFrameScore(long points) {
+        if(frameCount > 0)
+            frameScore[frameCount - 1] = points;
+    }
+
+    /*******************************************************************
+     * The points scored by the newest move.
+     *
+     * @return the points
+     ******************************************************************/
+    long lastFrameScore() {
+        return frameScore[frameCount - 1];
+    }
+
+    /*******************************************************************
+     * Index of the first entry of the newest move. Entries from here to
+     * end() - 1 are undone from the last to the first.
+     *
+     * @return entry index
+     ******************************************************************/
+    int lastFrameStart() {
+        return frameStart[frameCount - 1];
+    }
+
+    /*******************************************************************
+     * Index one past the newest entry.
+     *
+     * @return entry index
+     ******************************************************************/
+    int end() {
+        return entryCount;
+    }
+
+    /*******************************************************************
+     * Board index of a stored cell.
+     *
+     * @param entry entry index
+     * @return board index
+     ******************************************************************/
+    int cell(int entry) {
+        return cells[entry];
+    }
+
+    /*******************************************************************
+     * Code of a stored cell before its write.
+     *
+     * @param entry entry index
+     * @return cell code
+     ******************************************************************/
+    byte code(int entry) {
+        return codes[entry];
+    }
+
+    /*******************************************************************
+     * Remove the newest move and its entries.
+     *
+     * @return none
+     ******************************************************************/
+    void popFrame() {
+        entryCount = frameStart[--frameCount];
+        if(frameCount == firstFrame)
+            clear();
+    }
+
+    /*******************************************************************
+     * The number of bytes write will use.
+     *
+     * @param wideCells true when board indices need 4 bytes, not 2
+     * @param withScores true to include the points of each move
+     * @return the encoded size in bytes
+     ******************************************************************/
+    int encodedSize(boolean wideCells, boolean withScores) {
+        return 8 + (withScores ? 12 : 4) * depth() + size() * (wideCells ? 5 : 3);
+    }
+
+    /*******************************************************************
+     * Write the moves kept: the frame count, the entry count, the entry
+     * count of each frame oldest first, each followed by its points when
+     * withScores is set, then each entry as its board index (2 or 4
+     * bytes) and old cell code.
+     *
+     * @param dst receives the moves at its position
+     * @param wideCells true when board indices need 4 bytes, not 2
+     * @param withScores true to include the points of each move
+     * @return none
+     ******************************************************************/
+    void write(ByteBuffer dst, boolean wideCells, boolean withScores) {
+        int frames = depth();
+        dst.putInt(frames).putInt(size());
+        for(int f = firstFrame; f < frameCount; f++) {
+            int next = f + 1 < frameCount ? frameStart[f + 1] : entryCount;
+            dst.putInt(next - frameStart[f]);
+            if(withScores)
+                dst.putLong(frameScore[f]);
+        }
+        int first = frames == 0 ? entryCount : frameStart[firstFrame];
+        for(int e = first; e < entryCount; e++) {
+            if(wideCells)
+                dst.putInt(cells[e]);
+            else
+                dst.putShort((short)cells[e]);
+            dst.put(codes[e]);
+        }
+    }
+
+    /*******************************************************************
+     * Replace the moves kept with those written by write. The limits
+     * are not changed and apply from the next move on.
+     *
+     * @param src holds the moves at its position
+     * @param wideCells true when board indices take 4 bytes, not 2
+     * @param boardSize number of cells of the board, to check indices
+     * @param withScores true when the points of each move were written;
+     * otherwise every move is taken to have scored none
+     * @return none
+     * @throws IllegalArgumentException when the moves are not valid
+     ******************************************************************/
+    void read(ByteBuffer src, boolean wideCells, int boardSize,
+              boolean withScores) {
+        clear();
+        int frames = src.getInt();
+        int entries = src.getInt();
+        // check the counts against the bytes left before allocating
+        if(frames < 0 || entries < 0 || (long)frames * (withScores ? 12 : 4) +
+                (long)entries * (wideCells ? 5 : 3) > src.remaining())
+            throw new IllegalArgumentException("bad undo history");
+        if(frameStart.length < frames) {
+            frameStart = new int[frames];
+            frameScore = new long[frames];
+        }
+        if(cells.length < entries) {
+            cells = new int[entries];
+            codes = new byte[entries];
+        }
+
+        int start = 0;
+        for(int f = 0; f < frames; f++) {
+            frameStart[f] = start;
+            int length = src.getInt();
+            if(length < 0 || length > entries - start)
+                throw new IllegalArgumentException("bad undo history");
+            start += length;
+            frameScore[f] = withScores ? src.getLong() : 0;
+            if(frameScore[f] < 0)
+                throw new IllegalArgumentException("bad undo history");
+        }
+        if(start != entries)
+            throw new IllegalArgumentException("bad undo history");
+        for(int e = 0; e < entries; e++) {
+            int cell = wideCells ? src.getInt() : src.getShort() & 0xFFFF;
+            if(cell < 0 || cell >= boardSize)
+                throw new IllegalArgumentException("bad undo history");
+            byte code = src.get();
+            if(code < 0 || code > 31) // codes of int tile values
+                throw new IllegalArgumentException("bad undo history");
+            cells[e] = cell;
+            codes[e] = code;
+        }
+        frameCount = frames;
+        entryCount = entries;
+    }
+
+    /*******************************************************************
+     * Move the kept frames and entries to the front of their arrays.
+     *
+     * @return none
+     ******************************************************************/
+    private void compact() {
+        int base = frameStart[firstFrame];
+        int frames = depth();
+        System.arraycopy(cells, base, cells, 0, entryCount - base);
+        System.arraycopy(codes, base, codes, 0, entryCount - base);
+        for(int f = 0; f < frames; f++) {
+            frameStart[f] = frameStart[firstFrame + f] - base;
+            frameScore[f] = frameScore[firstFrame + f];
+        }
+        entryCount -= base;
+        frameCount = frames;
+        firstFrame = 0;
+    }
+}
@@ -0,0 +1,312 @@
+package game2048.ai;
+
+import game2048.*;
+/***********************************************************************
+ * BoardSymmetry class: Maps boards that are rotations or mirror images
+ * of each other to one canonical key, so caches and corpus counts can
+ * treat them as one state.
+ *
+ * A symmetry is a number from 0 to 7. Bit 2 swaps rows and columns,
+ * then bit 0 mirrors the columns and bit 1 mirrors the rows, so 0 is
+ * the identity and 3 turns the board half way round. Symmetries 4 to 7
+ * swap rows and columns, which only keeps the board's shape when it is
+ * square; other boards have the first four only. A move on a board
+ * slides the same tiles as the move map gives on the transformed board.
+ *
+ * The canonical key of a board is the least Boards.key over its
+ * symmetric boards. 4x4 boards with codes below 16 are transformed as
+ * packed longs with a few shifts and masks; other boards go through
+ * precomputed cell permutations into a scratch array, so an instance
+ * is not thread safe.
+ **********************************************************************/
+public final class BoardSymmetry {
+    /** Number of symmetries of a square board. */
+    public static final int SQUARE_COUNT = 8;
+    /** Number of symmetries of a board that is not square. */
+    public static final int RECT_COUNT = 4;
+
+    /** Direction on the transformed board, by symmetry and ordinal. */
+    private static final SlideDirection[][] MAP =
+            new SlideDirection[SQUARE_COUNT][];
+    /** Direction on the original board, by symmetry and ordinal. */
+    private static final SlideDirection[][] UNMAP =
+            new SlideDirection[SQUARE_COUNT][];
+
+    static {
+        SlideDirection[] dirs = SlideDirection.values();
+        for(int sym = 0; sym < SQUARE_COUNT; sym++) {
+            MAP[sym] = new SlideDirection[dirs.length];
+            UNMAP[sym] = new SlideDirection[dirs.length];
+            for(SlideDirection dir : dirs) {
+                SlideDirection d = dir;
+                if((sym & 4) != 0) // towards column 0 becomes towards row 0
+                    d = d == SlideDirection.LEFT ? SlideDirection.UP :
+                        d == SlideDirection.UP ? SlideDirection.LEFT :
+                        d == SlideDirection.RIGHT ? SlideDirection.DOWN :
+                        SlideDirection.RIGHT;
+                if((sym & 1) != 0 && (d == SlideDirection.LEFT ||
+                        d == SlideDirection.RIGHT))
+                    d = d == SlideDirection.LEFT ? SlideDirection.RIGHT :
+                        SlideDirection.LEFT;
+                if((sym & 2) != 0 && (d == SlideDirection.UP ||
+                        d == SlideDirection.DOWN))
+                    d = d == SlideDirection.UP ? SlideDirection.DOWN :
+                        SlideDirection.UP;
+                MAP[sym][dir.ordinal()] = d;
+                UNMAP[sym][d.ordinal()] = dir;
+            }
+        }
+    }
+
+    /** Board size. */
+    private final int rows, cols;
+    /** Number of symmetries of this board size. */
+    private final int count;
+    /** Source cell of every cell of each transformed board. */
+    private final int[][] from;
+    /** The board and one transformed board, for the general path. */
+    private final byte[] cells, scratch;
+
+    /*******************************************************************
+     * Create the symmetries of a board size.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @throws IllegalArgumentException when a side is not positive
+     ******************************************************************/
+    public BoardSymmetry(int rows, int cols) {
+        if(rows < 1 || cols < 1)
+            throw new IllegalArgumentException();
+        this.rows = rows;
+        this.cols = cols;
+        count = rows == cols ? SQUARE_COUNT : RECT_COUNT;
+        from = new int[count][rows * cols];
+        for(int sym = 0; sym < count; sym++)
+            for(int k = 0; k < rows * cols; k++)
+                from[sym][index(sym, k)] = k;
+        cells = new byte[rows * cols];
+        scratch = new byte[rows * cols];
+    }
+
+    /*******************************************************************
+     * Find where a cell goes under a symmetry.
+     *
+     * @param sym the symmetry
+     * @param k board index of the cell
+     * @return board index on the transformed board
+     ******************************************************************/
+    private int index(int sym, int k) {
+        int r = k / cols, c = k % cols;
+        int h = rows, w = cols;
+        if((sym & 4) != 0) {
+            int t = r; r = c; c = t;
+            t = h; h = w; w = t;
+        }
+        if((sym & 1) != 0)
+            c = w - 1 - c;
+        if((sym & 2) != 0)
+            r = h - 1 - r;
+        return r * w + c;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of rows.
+     *
+     * @return the number of rows
+     ******************************************************************/
+    public int getRows() {
+        return rows;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of columns.
+     *
+     * @return the number of columns
+     ******************************************************************/
+    public int getCols() {
+        return cols;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of symmetries of the board size.
+     *
+     * @return 8 for a square board, else 4
+     ******************************************************************/
+    public int count() {
+        return count;
+    }
+
+    /*******************************************************************
+     * Transform a board.
+     *
+     * @param sym the symmetry, 0 to count() - 1
+     * @param src the board, not changed
+     * @param dst receives the transformed board; not src
+     * @return none
+     ******************************************************************/
+    public void transform(int sym, byte[] src, byte[] dst) {
+        int[] f = from[sym];
+        for(int k = 0; k < f.length; k++)
+            dst[k] = src[f[k]];
+    }
+
+    /*******************************************************************
+     * Find the symmetry that gives a board its canonical key. When
+     * several do, the lowest is returned.
+     *
+     * @param board the board, rows * cols cell codes
+     * @return the symmetry
+     ******************************************************************/
+    public int canonicalSymmetry(byte[] board) {
+        if(rows == 4 && cols == 4 && Boards.maxCode(board) < 16)
+            return canonicalSymmetry(Boards.key(board));
+        int best = 0;
+        long bestKey = Boards.key(board);
+        for(int sym = 1; sym < count; sym++) {
+            transform(sym, board, scratch);
+            long key = Boards.key(scratch);
+            if(key < bestKey) {
+                bestKey = key;
+                best = sym;
+            }
+        }
+        return best;
+    }
+
+    /*******************************************************************
+     * Compute the canonical key of a board: equal for every rotation
+     * and mirror image of it. Boards Boards.key packs exactly get
+     * distinct keys; larger boards are hashed and may share one.
+     *
+     * @param board the board, rows * cols cell codes
+     * @return the key
+     ******************************************************************/
+    public long canonicalKey(byte[] board) {
+        if(rows == 4 && cols == 4 && Boards.maxCode(board) < 16)
+            return canonicalKey(Boards.key(board));
+        long bestKey = Boards.key(board);
+        for(int sym = 1; sym < count; sym++) {
+            transform(sym, board, scratch);
+            bestKey = Math.min(bestKey, Boards.key(scratch));
+        }
+        return bestKey;
+    }
+
+    /*******************************************************************
+     * Compute the canonical key of a game's board.
+     *
+     * @param game the game, of this board size
+     * @return the key
+     * @throws IllegalArgumentException when the game's board is another
+     * size
+     ******************************************************************/
+    public long canonicalKey(Game2048 game) {
+        if(game.getRows() != rows || game.getCols() != cols)
+            throw new IllegalArgumentException();
+        game.copyCellCodes(cells);
+        return canonicalKey(cells);
+    }
+
+    /*******************************************************************
+     * Find the direction on a transformed board that moves the same
+     * tiles as a direction on the original board.
+     *
+     * @param sym the symmetry
+     * @param dir direction on the original board
+     * @return direction on the transformed board
+     ******************************************************************/
+    public static SlideDirection map(int sym, SlideDirection dir) {
+        return MAP[sym][dir.ordinal()];
+    }
+
+    /*******************************************************************
+     * Find the direction on the original board that moves the same tiles
+     * as a direction on a transformed board, e.g. to play a move chosen
+     * on the canonical board.
+     *
+     * @param sym the symmetry
+     * @param dir direction on the transformed board
+     * @return direction on the original board
+     ******************************************************************/
+    public static SlideDirection unmap(int sym, SlideDirection dir) {
+        return UNMAP[sym][dir.ordinal()];
+    }
+
+    /*******************************************************************
+     * Transform a packed 4x4 board, laid out as Boards.key and
+     * BitBoard2048 lay it out (cell (row, col) at bit 16*row + 4*col).
+     *
+     * @param sym the symmetry
+     * @param board the packed board
+     * @return the transformed board
+     ******************************************************************/
+    public static long transform(int sym, long board) {
+        if((sym & 4) != 0)
+            board = BitBoard2048.transpose(board);
+        if((sym & 1) != 0) // reverse the cells of each row
+            board = ((board & 0x000F000F000F000FL) << 12)
+                    | ((board & 0x00F000F000F000F0L) << 4)
+                    | ((board >>> 4) & 0x00F000F000F000F0L)
+                    | ((board >>> 12) & 0x000F000F000F000FL);
+        if((sym & 2) != 0) // reverse the rows
+            board = (board << 48) | ((board & 0xFFFF0000L) << 16)
+                    | ((board >>> 16) & 0xFFFF0000L) | (board >>> 48);
+        return board;
+    }
+
+    /*******************************************************************
+     * Compute the canonical key of a packed 4x4 board: the least of its
+     * eight symmetric boards.
+     *
+     * @param board the packed board
+     * @return the key
+     ******************************************************************/
+    public static long canonicalKey(long board) {
+        long t = BitBoard2048.transpose(board);
+        long best = Math.min(board, t);
+        long h = mirrorColumns(board), th = mirrorColumns(t);
+        best = Math.min(best, Math.min(h, th));
+        best = Math.min(best, Math.min(mirrorRows(board), mirrorRows(t)));
+        return Math.min(best, Math.min(mirrorRows(h), mirrorRows(th)));
+    }
+
+    /*******************************************************************
+     * Find the symmetry that gives a packed 4x4 board its canonical key,
+     * the lowest when several do.
+     *
+     * @param board the packed board
+     * @return the symmetry
+     ******************************************************************/
+    public static int canonicalSymmetry(long board) {
+        int best = 0;
+        long bestKey = board;
+        for(int sym = 1; sym < SQUARE_COUNT; sym++) {
+            long key = transform(sym, board);
+            if(key < bestKey) {
+                bestKey = key;
+                best = sym;
+            }
+        }
+        return best;
+    }
+
+    /*******************************************************************
+     * Reverse the cells of each row of a packed 4x4 board.
+     *
+     * @param board the packed board
+     * @return the mirrored board
+     ******************************************************************/
+    private static long mirrorColumns(long board) {
+        return transform(1, board);
+    }
+
+    /*******************************************************************
+     * Reverse the rows of a packed 4x4 board.
+     *
+     * @param board the packed board
+     * @return the mirrored board
+     ******************************************************************/
+    private static long mirrorRows(long board) {
+        return transform(2, board);
+    }
+}
@@ -0,0 +1,100 @@
+package game2048.ai;
+
+import game2048.*;
+import org.junit.*;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class BoardSymmetryTester {
+    private final static int REPEAT_COUNT = 200;
+    private static Random gen;
+    private int NROWS, NCOLS;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(5) + 2; /* 2-6 */
+        NCOLS = gen.nextBoolean() ? NROWS : gen.nextInt(5) + 2;
+    }
+
+    @Test(timeout = 5000)
+    public void mappedMovesSlideTheTransformedBoard()
+    {
+        BoardSymmetry symmetry = new BoardSymmetry(NROWS, NCOLS);
+        byte[] board = new byte[NROWS * NCOLS];
+        byte[] moved = new byte[board.length], expected = new byte[board.length];
+        byte[] turned = new byte[board.length], actual = new byte[board.length];
+        for (int n = 0; n < REPEAT_COUNT; n++) {
+            randomBoard(board, 12);
+            for (int sym = 0; sym < symmetry.count(); sym++) {
+                symmetry.transform(sym, board, turned);
+                /* transposing symmetries swap the sides */
+                int rows = sym < 4 ? NROWS : NCOLS, cols = sym < 4 ? NCOLS : NROWS;
+                for (SlideDirection dir : SlideDirection.values()) {
+                    SlideDirection mapped = BoardSymmetry.map(sym, dir);
+                    assertEquals(dir, BoardSymmetry.unmap(sym, mapped));
+                    boolean changed = Boards.slide(board, moved, NROWS, NCOLS, dir);
+                    assertEquals(changed, Boards.slide(turned, actual, rows,
+                            cols, mapped));
+                    symmetry.transform(sym, moved, expected);
+                    assertArrayEquals("symmetry " + sym + " " + dir, expected,
+                            actual);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void symmetricBoardsShareTheirCanonicalKey()
+    {
+        NROWS = NCOLS = gen.nextBoolean() ? 4 : NROWS;
+        BoardSymmetry symmetry = new BoardSymmetry(NROWS, NCOLS);
+        byte[] board = new byte[NROWS * NCOLS], turned = new byte[board.length];
+        for (int n = 0; n < REPEAT_COUNT; n++) {
+            randomBoard(board, gen.nextBoolean() ? 15 : 20);
+            long key = symmetry.canonicalKey(board);
+            int best = symmetry.canonicalSymmetry(board);
+            symmetry.transform(best, board, turned);
+            assertEquals(key, Boards.key(turned));
+            for (int sym = 0; sym < symmetry.count(); sym++) {
+                symmetry.transform(sym, board, turned);
+                assertEquals("symmetry " + sym, key, symmetry.canonicalKey(turned));
+                if (NROWS == 4 && Boards.maxCode(board) < 16)
+                    assertEquals(Boards.key(turned), BoardSymmetry.transform(sym,
+                            Boards.key(board)));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void hashSetMatchesJavaSet()
+    {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            LongHashSet set = new LongHashSet(gen.nextInt(100), offHeap);
+            Set<Long> expected = new HashSet<>();
+            for (int n = 0; n < 200000; n++) {
+                /* small keys repeat, and include key 0 */
+                long key = gen.nextBoolean() ? gen.nextInt(50000) : gen.nextLong();
+                assertEquals(expected.add(key), set.add(key));
+            }
+            assertEquals(expected.size(), set.size());
+            for (long key : expected)
+                assertTrue(set.contains(key));
+            assertEquals(expected.contains(-1L), set.contains(-1));
+            set.clear();
+            assertEquals(0, set.size());
+            assertFalse(set.contains(0));
+        }
+    }
+
+    private void randomBoard(byte[] board, int maxCode)
+    {
+        for (int k = 0; k < board.length; k++)
+            board[k] = gen.nextInt(3) == 0 ? 0 : (byte)(gen.nextInt(maxCode) + 1);
+    }
+}
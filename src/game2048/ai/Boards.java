@@ -0,0 +1,188 @@
+package game2048.ai;
+
+import game2048.SlideDirection;
+/***********************************************************************
+ * Boards class: Static helpers for boards stored the way Game2048
+ * stores them, one cell code per byte in row-major order (0 for an
+ * empty cell, log2(value) + 1 for a tile). Search code works on these
+ * arrays directly so no game object is needed per node.
+ **********************************************************************/
+public final class Boards {
+    /** Cell codes a new random tile can take: the values 1, 2, 4, 8,
+     * each equally likely, as placed by Game2048. */
+    public static final byte[] SPAWN_CODES = {1, 2, 3, 4};
+
+    private Boards() {
+    }
+
+    /*******************************************************************
+     * Slide a board into another array without adding a random tile.
+     *
+     * @param src the board before the move, not changed
+     * @param dst receives the board after the move
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param dir move direction of the tiles
+     * @return true when the board changes
+     ******************************************************************/
+    public static boolean slide(byte[] src, byte[] dst, int rows, int cols,
+                                SlideDirection dir) {
+        return slideScored(src, dst, rows, cols, dir) >= 0;
+    }
+
+    /*******************************************************************
+     * Slide a board into another array without adding a random tile,
+     * and score the move the usual 2048 way: the sum of the values of
+     * the merged tiles.
+     *
+     * @param src the board before the move, not changed
+     * @param dst receives the board after the move
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param dir move direction of the tiles
+     * @return the score of the move, or -1 when the board does not
+     * change
+     ******************************************************************/
+    public static int slideScored(byte[] src, byte[] dst, int rows, int cols,
+                                  SlideDirection dir) {
+        int score = -1;
+        switch(dir) {
+            case LEFT:
+                for(int i = 0; i < rows; i++)
+                    score = add(score, slideLine(src, dst, i * cols, 1, cols));
+                break;
+            case RIGHT:
+                for(int i = 0; i < rows; i++)
+                    score = add(score,
+                            slideLine(src, dst, i * cols + cols - 1, -1, cols));
+                break;
+            case UP:
+                for(int j = 0; j < cols; j++)
+                    score = add(score, slideLine(src, dst, j, cols, rows));
+                break;
+            case DOWN:
+                for(int j = 0; j < cols; j++)
+                    score = add(score,
+                            slideLine(src, dst, (rows - 1) * cols + j, -cols, rows));
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+        return score;
+    }
+
+    /*******************************************************************
+     * Add two line scores where -1 means the line did not move.
+     *
+     * @param a line score or -1
+     * @param b line score or -1
+     * @return the combined score, -1 when neither line moved
+     ******************************************************************/
+    private static int add(int a, int b) {
+        return a < 0 ? b : (b < 0 ? a : a + b);
+    }
+
+    /*******************************************************************
+     * Slide and merge one line of src into the same cells of dst in a
+     * single pass.
+     *
+     * @param src the board before the move
+     * @param dst receives the line after the move
+     * @param start index of the first cell, on the side the tiles move
+     * towards
+     * @param step index distance from one cell of the line to the next
+     * @param length number of cells in the line
+     * @return the sum of the merged tile values, or -1 when no tile in
+     * the line moved or merged
+     ******************************************************************/
+    private static int slideLine(byte[] src, byte[] dst, int start,
+                                 int step, int length) {
+        int end = start + step * length;
+        int write = start; // next cell to be filled
+        int pending = 0; // last tile read, may still merge
+        boolean moved = false;
+        int score = 0;
+
+        for(int k = start; k != end; k += step) {
+            int code = src[k];
+            if(code == 0)
+                continue;
+            if(code == pending) {
+                dst[write] = (byte)(code + 1);
+                score += 1 << code; // value of the merged tile
+                write += step;
+                pending = 0;
+                moved = true;
+            }
+            else {
+                if(pending != 0) {
+                    dst[write] = (byte)pending;
+                    write += step;
+                }
+                moved |= write != k;
+                pending = code;
+            }
+        }
+        if(pending != 0) {
+            dst[write] = (byte)pending;
+            write += step;
+        }
+        for(; write != end; write += step)
+            dst[write] = 0;
+        return moved ? score : -1;
+    }
+
+    /*******************************************************************
+     * Count the empty cells of a board.
+     *
+     * @param cells the board
+     * @return the number of zero cell codes
+     ******************************************************************/
+    public static int countEmpty(byte[] cells) {
+        int n = 0;
+        for(byte c : cells)
+            if(c == 0)
+                n++;
+        return n;
+    }
+
+    /*******************************************************************
+     * Find the largest tile of a board.
+     *
+     * @param cells the board
+     * @return the largest cell code, 0 for an empty board
+     ******************************************************************/
+    public static int maxCode(byte[] cells) {
+        int max = 0;
+        for(byte c : cells)
+            max = Math.max(max, c);
+        return max;
+    }
+
+    /*******************************************************************
+     * Compute a 64 bit key of a board for hash tables. Boards of up to
+     * 16 cells with codes below 16 are packed exactly, 4 bits per cell;
+     * larger boards are hashed, so two boards may share a key.
+     *
+     * @param cells the board
+     * @return the key
+     ******************************************************************/
+    public static long key(byte[] cells) {
+        if(cells.length <= 16) {
+            long packed = 0;
+            boolean fits = true;
+            for(int k = 0; k < cells.length; k++) {
+                fits &= cells[k] < 16;
+                packed |= (long)(cells[k] & 0xF) << (4 * k);
+            }
+            if(fits)
+                return packed;
+        }
+        long h = 0x9E3779B97F4A7C15L * (cells.length + 1);
+        for(byte c : cells)
+            h = (h ^ c) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return h ^ (h >>> 29);
+    }
+}
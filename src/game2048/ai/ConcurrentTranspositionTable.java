@@ -0,0 +1,167 @@
+package game2048.ai;
+
+import java.util.concurrent.locks.StampedLock;
+/***********************************************************************
+ * ConcurrentTranspositionTable class: A fixed size cache of search
+ * values shared by several search threads. The slots are split over a
+ * number of lock stripes; a lookup takes an optimistic read of its
+ * stripe and only locks when a writer got in the way, so threads
+ * working on different parts of the table never wait on each other.
+ *
+ * Like TranspositionTable, a new value replaces whatever shares its
+ * slot.
+ **********************************************************************/
+public class ConcurrentTranspositionTable implements SearchCache {
+    /** Default number of lock stripes. */
+    public static final int DEFAULT_STRIPES = 256;
+
+    /** Board key of every slot. */
+    private final long[] keys;
+    /** Search value of every slot. */
+    private final double[] values;
+    /** Search depth of every slot plus one; 0 marks an empty slot. */
+    private final byte[] depths;
+    /** One lock per stripe; slot s belongs to stripe s & stripeMask. */
+    private final StampedLock[] locks;
+    /** Number of index bits. */
+    private final int bits;
+    /** Stripe count minus one. */
+    private final int stripeMask;
+
+    /*******************************************************************
+     * Create an empty table with the default number of stripes.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     ******************************************************************/
+    public ConcurrentTranspositionTable(int capacity) {
+        this(capacity, DEFAULT_STRIPES);
+    }
+
+    /*******************************************************************
+     * Create an empty table.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param stripes the number of locks, rounded up to a power of two
+     * @throws IllegalArgumentException when capacity or stripes is not
+     * positive or above 2^30
+     ******************************************************************/
+    public ConcurrentTranspositionTable(int capacity, int stripes) {
+        if(capacity < 1 || capacity > (1 << 30) ||
+                stripes < 1 || stripes > (1 << 30))
+            throw new IllegalArgumentException();
+        bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        keys = new long[1 << bits];
+        values = new double[1 << bits];
+        depths = new byte[1 << bits];
+
+        int n = Integer.highestOneBit(stripes);
+        if(n < stripes)
+            n <<= 1;
+        n = Math.min(n, 1 << bits);
+        locks = new StampedLock[n];
+        for(int i = 0; i < n; i++)
+            locks[i] = new StampedLock();
+        stripeMask = n - 1;
+    }
+
+    /*******************************************************************
+     * Look up the value of a board searched at least as deep as asked.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board
+     * @return the stored value, or NaN when there is none
+     * @Override
+     ******************************************************************/
+    public double get(long key, int depth) {
+        int slot = slot(key);
+        StampedLock lock = locks[slot & stripeMask];
+
+        long stamp = lock.tryOptimisticRead();
+        long k = keys[slot];
+        byte d = depths[slot];
+        double v = values[slot];
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                k = keys[slot];
+                d = depths[slot];
+                v = values[slot];
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return d > depth && k == key ? v : Double.NaN;
+    }
+
+    /*******************************************************************
+     * Store the value of a board, replacing the slot's old value.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board, below
+     * 127
+     * @param value the search value
+     * @return none
+     * @Override
+     ******************************************************************/
+    public void put(long key, int depth, double value) {
+        int slot = slot(key);
+        StampedLock lock = locks[slot & stripeMask];
+        long stamp = lock.writeLock();
+        try {
+            keys[slot] = key;
+            values[slot] = value;
+            depths[slot] = (byte)(depth + 1);
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*******************************************************************
+     * Remove every stored value. Must not run during a search.
+     *
+     * @return none
+     * @Override
+     ******************************************************************/
+    public void clear() {
+        for(int s = 0; s <= stripeMask; s++) {
+            long stamp = locks[s].writeLock();
+            try {
+                for(int slot = s; slot < depths.length; slot += stripeMask + 1)
+                    depths[slot] = 0;
+            }
+            finally {
+                locks[s].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /*******************************************************************
+     * A method used to get the number of slots.
+     *
+     * @return the capacity
+     ******************************************************************/
+    public int capacity() {
+        return keys.length;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of lock stripes.
+     *
+     * @return the stripe count
+     ******************************************************************/
+    public int stripes() {
+        return locks.length;
+    }
+
+    /*******************************************************************
+     * Spread a key over the slots.
+     *
+     * @param key the board key
+     * @return slot index
+     ******************************************************************/
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+}
@@ -0,0 +1,85 @@
+package game2048.ai;
+/***********************************************************************
+ * DefaultHeuristic class: The usual 2048 board heuristic, applied to
+ * every row and every column. A line scores well when it has empty
+ * cells, neighbours that can merge and values that only increase or
+ * only decrease along it; large tiles cost a little so the search
+ * prefers to merge them. Boards of large unsorted tiles score below 0,
+ * but never near Heuristic.LOST.
+ **********************************************************************/
+public class DefaultHeuristic implements Heuristic {
+    private static final double EMPTY_WEIGHT = 270;
+    private static final double MERGE_WEIGHT = 700;
+    private static final double MONOTONICITY_WEIGHT = 47;
+    private static final double SUM_WEIGHT = 11;
+    /** Largest cell code with a precomputed power. */
+    private static final int MAX_CODE = 32;
+    /** code^4, for monotonicity. */
+    private static final double[] MONO_POW = new double[MAX_CODE + 1];
+    /** code^3.5, for the tile sum. */
+    private static final double[] SUM_POW = new double[MAX_CODE + 1];
+
+    static {
+        for(int c = 0; c <= MAX_CODE; c++) {
+            MONO_POW[c] = Math.pow(c, 4);
+            SUM_POW[c] = Math.pow(c, 3.5);
+        }
+    }
+
+    /*******************************************************************
+     * Score a board as the sum of the scores of its rows and columns.
+     *
+     * @param cells the board
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the score of the board
+     * @Override
+     ******************************************************************/
+    public double evaluate(byte[] cells, int rows, int cols) {
+        double score = 0;
+        for(int i = 0; i < rows; i++)
+            score += line(cells, i * cols, 1, cols);
+        for(int j = 0; j < cols; j++)
+            score += line(cells, j, cols, rows);
+        return score;
+    }
+
+    /*******************************************************************
+     * Score one row or column.
+     *
+     * @param cells the board
+     * @param start index of the first cell of the line
+     * @param step index distance from one cell to the next
+     * @param length number of cells in the line
+     * @return the score of the line
+     ******************************************************************/
+    private double line(byte[] cells, int start, int step, int length) {
+        int empty = 0, merges = 0;
+        double sum = 0, monoLeft = 0, monoRight = 0;
+        int prev = -1; // previous tile, for merges
+        int last = cells[start]; // previous cell, for monotonicity
+
+        for(int n = 0, k = start; n < length; n++, k += step) {
+            int code = Math.min(cells[k], MAX_CODE);
+            sum += SUM_POW[code];
+            if(code == 0)
+                empty++;
+            else {
+                if(code == prev)
+                    merges++;
+                prev = code;
+            }
+            if(n > 0) {
+                if(last > code)
+                    monoLeft += MONO_POW[last] - MONO_POW[code];
+                else
+                    monoRight += MONO_POW[code] - MONO_POW[last];
+            }
+            last = code;
+        }
+        return EMPTY_WEIGHT * empty +
+                MERGE_WEIGHT * merges -
+                MONOTONICITY_WEIGHT * Math.min(monoLeft, monoRight) -
+                SUM_WEIGHT * sum;
+    }
+}
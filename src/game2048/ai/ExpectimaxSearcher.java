@@ -0,0 +1,371 @@
+package game2048.ai;
+
+import game2048.*;
+import java.util.concurrent.CancellationException;
+/***********************************************************************
+ * ExpectimaxSearcher class: Picks the SlideDirection with the best
+ * expected heuristic score a fixed number of moves ahead. Player moves
+ * are max nodes; the random tile placed after each move is a chance
+ * node averaging over every empty cell and every spawn value. Branches
+ * whose probability falls below a cut-off are scored by the heuristic
+ * directly, and chance node results are cached in a transposition table.
+ *
+ * A searcher keeps its buffers and table between calls and is not
+ * thread safe; see ParallelExpectimaxSearcher for a multi-threaded
+ * search. Interrupting the thread running a search stops it early.
+ **********************************************************************/
+public class ExpectimaxSearcher {
+    /** Default branch probability below which the search stops. */
+    public static final double DEFAULT_MIN_PROBABILITY = 1e-4;
+    /** Default number of transposition table slots. */
+    public static final int DEFAULT_TABLE_SIZE = 1 << 20;
+    /** The thread's interrupt status is checked every this many + 1
+     *  nodes. */
+    private static final long INTERRUPT_CHECK_MASK = (1 << 10) - 1;
+
+    /** Number of player moves searched. */
+    private final int depth;
+    /** Scores the boards at the bottom of the search. */
+    private final Heuristic heuristic;
+    /** Cache of chance node values. */
+    private final SearchCache table;
+    /** Branch probability below which the search stops. */
+    private double minProbability = DEFAULT_MIN_PROBABILITY;
+    /** Dimensions of the board being searched. */
+    private int rows, cols;
+    /** One board buffer per player move of the search. */
+    private byte[][] buffers;
+    /** Expected value of the move the last search chose. */
+    private double value = Double.NaN;
+    /** Nodes visited by the last search, and over all searches. */
+    private long nodes, totalNodes;
+    /** Time taken by the last search, and by all searches. */
+    private long nanos, totalNanos;
+
+    /*******************************************************************
+     * Create a searcher with the default heuristic and table size.
+     *
+     * @param depth the number of player moves to search, at least 1
+     ******************************************************************/
+    public ExpectimaxSearcher(int depth) {
+        this(depth, new DefaultHeuristic(), DEFAULT_TABLE_SIZE);
+    }
+
+    /*******************************************************************
+     * Create a searcher.
+     *
+     * @param depth the number of player moves to search, at least 1
+     * @param heuristic scores the boards at the bottom of the search
+     * @param tableSize the number of transposition table slots
+     * @throws IllegalArgumentException when depth is out of range
+     ******************************************************************/
+    public ExpectimaxSearcher(int depth, Heuristic heuristic, int tableSize) {
+        this(depth, heuristic, new TranspositionTable(tableSize));
+    }
+
+    /*******************************************************************
+     * Create a searcher that caches chance node values in the given
+     * cache.
+     *
+     * @param depth the number of player moves to search, at least 1
+     * @param heuristic scores the boards at the bottom of the search
+     * @param cache cache of chance node values
+     * @throws IllegalArgumentException when depth is out of range
+     ******************************************************************/
+    public ExpectimaxSearcher(int depth, Heuristic heuristic, SearchCache cache) {
+        if(depth < 1 || depth > 100 || heuristic == null || cache == null)
+            throw new IllegalArgumentException();
+        this.depth = depth;
+        this.heuristic = heuristic;
+        this.table = cache;
+        this.buffers = new byte[depth + 1][0];
+    }
+
+    /*******************************************************************
+     * Set the branch probability below which the search scores a board
+     * with the heuristic instead of going deeper.
+     *
+     * @param minProbability the cut-off, 0 to always search to depth
+     * @return none
+     ******************************************************************/
+    public void setMinProbability(double minProbability) {
+        this.minProbability = minProbability;
+    }
+
+    /*******************************************************************
+     * Find the best move for a game.
+     *
+     * @param game the game, not changed
+     * @return the best direction, or null when no move changes the board
+     * @throws CancellationException when the thread is interrupted
+     * during the search; it stays interrupted
+     ******************************************************************/
+    public SlideDirection bestMove(Game2048 game) {
+        return bestMove(game.getCellCodes(), game.getRows(), game.getCols());
+    }
+
+    /*******************************************************************
+     * Find the best move for a board.
+     *
+     * @param cells the board, one cell code per byte in row-major order;
+     * not changed
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the best direction, or null when no move changes the board
+     * @throws CancellationException when the thread is interrupted
+     * during the search; it stays interrupted
+     ******************************************************************/
+    public SlideDirection bestMove(byte[] cells, int rows, int cols) {
+        long start = System.nanoTime();
+        if(rows != this.rows || cols != this.cols)
+            table.clear();
+        prepare(rows, cols);
+        nodes = 0;
+        value = Double.NaN;
+
+        SlideDirection best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        byte[] next = buffers[0];
+        for(SlideDirection dir : SlideDirection.values()) {
+            if(!Boards.slide(cells, next, rows, cols, dir))
+                continue;
+            double value = chanceNode(next, depth - 1, 1.0);
+            if(value > bestValue) {
+                bestValue = value;
+                best = dir;
+            }
+        }
+
+        nanos = System.nanoTime() - start;
+        totalNodes += nodes;
+        totalNanos += nanos;
+        if(best != null)
+            value = bestValue;
+        return best;
+    }
+
+    /*******************************************************************
+     * Search one chance node for ParallelExpectimaxSearcher, which
+     * splits the top of the tree itself. Nodes are added to getNodes().
+     *
+     * @param cells the board after a player move; restored before
+     * returning
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param movesLeft player moves still to search, below the depth
+     * @param probability chance of reaching this board
+     * @return the expected value
+     ******************************************************************/
+    double chanceValue(byte[] cells, int rows, int cols, int movesLeft,
+                       double probability) {
+        prepare(rows, cols);
+        return chanceNode(cells, movesLeft, probability);
+    }
+
+    /*******************************************************************
+     * Start counting nodes from zero, for ParallelExpectimaxSearcher.
+     *
+     * @return none
+     ******************************************************************/
+    void resetNodes() {
+        nodes = 0;
+    }
+
+    /*******************************************************************
+     * Value of a board right after a player move: the average over all
+     * possible random tiles of the best next move.
+     *
+     * @param cells the board after the move; restored before returning
+     * @param movesLeft player moves still to search
+     * @param probability chance of reaching this board
+     * @return the expected value
+     ******************************************************************/
+    private double chanceNode(byte[] cells, int movesLeft, double probability) {
+        countNode();
+        if(movesLeft == 0 || probability < minProbability)
+            return heuristic.evaluate(cells, rows, cols);
+
+        long key = Boards.key(cells);
+        double cached = table.get(key, movesLeft);
+        if(!Double.isNaN(cached))
+            return cached;
+
+        int empty = Boards.countEmpty(cells);
+        int outcomes = empty * Boards.SPAWN_CODES.length;
+        double childProbability = probability / outcomes;
+        double sum = 0;
+        for(int k = 0; k < cells.length; k++) {
+            if(cells[k] != 0)
+                continue;
+            for(byte code : Boards.SPAWN_CODES) {
+                cells[k] = code;
+                sum += maxNode(cells, movesLeft, childProbability);
+            }
+            cells[k] = 0;
+        }
+        double value = sum / outcomes;
+        table.put(key, movesLeft, value);
+        return value;
+    }
+
+    /*******************************************************************
+     * Value of a board where the player moves next: the best value over
+     * the moves that change the board, Heuristic.LOST when there is
+     * none.
+     *
+     * @param cells the board, not changed
+     * @param movesLeft player moves still to search, at least 1
+     * @param probability chance of reaching this board
+     * @return the value of the best move
+     ******************************************************************/
+    private double maxNode(byte[] cells, int movesLeft, double probability) {
+        countNode();
+        byte[] next = buffers[depth - movesLeft];
+        double best = Heuristic.LOST;
+        for(SlideDirection dir : SlideDirection.values()) {
+            if(Boards.slide(cells, next, rows, cols, dir))
+                best = Math.max(best,
+                        chanceNode(next, movesLeft - 1, probability));
+        }
+        return best;
+    }
+
+    /*******************************************************************
+     * Count a node, stopping the search when the thread has been
+     * interrupted. Only finished values are ever cached, so a stopped
+     * search leaves the table valid.
+     *
+     * @return none
+     * @throws CancellationException when the thread is interrupted
+     ******************************************************************/
+    private void countNode() {
+        if((++nodes & INTERRUPT_CHECK_MASK) == 0
+                && Thread.currentThread().isInterrupted())
+            throw new CancellationException("search interrupted");
+    }
+
+    /*******************************************************************
+     * Size the buffers for a board.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return none
+     ******************************************************************/
+    private void prepare(int rows, int cols) {
+        if(rows == this.rows && cols == this.cols)
+            return;
+        this.rows = rows;
+        this.cols = cols;
+        for(int d = 0; d < buffers.length; d++)
+            buffers[d] = new byte[rows * cols];
+    }
+
+    /*******************************************************************
+     * A method used to get the search depth.
+     *
+     * @return the number of player moves searched
+     ******************************************************************/
+    public int getDepth() {
+        return depth;
+    }
+
+    /*******************************************************************
+     * A method used to get the cache of chance node values.
+     *
+     * @return the cache
+     ******************************************************************/
+    public SearchCache getTable() {
+        return table;
+    }
+
+    /*******************************************************************
+     * A method used to get the branch probability cut-off.
+     *
+     * @return the cut-off
+     ******************************************************************/
+    public double getMinProbability() {
+        return minProbability;
+    }
+
+    /*******************************************************************
+     * A method used to get the expected value of the move the last
+     * search chose.
+     *
+     * @return the value, NaN when no move changed the board or the
+     * search was interrupted
+     ******************************************************************/
+    public double getValue() {
+        return value;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of nodes the last search visited.
+     *
+     * @return the node count
+     ******************************************************************/
+    public long getNodes() {
+        return nodes;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of nodes visited over all
+     * searches.
+     *
+     * @return the node count
+     ******************************************************************/
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    /*******************************************************************
+     * A method used to get the time spent in all searches.
+     *
+     * @return nanoseconds
+     ******************************************************************/
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the search speed over all searches.
+     *
+     * @return nodes per second, 0 before the first search
+     ******************************************************************/
+    public double getNodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1e9 / totalNanos;
+    }
+
+    /*******************************************************************
+     * Play one game with the searcher and print its speed.
+     * Arguments: [depth] [rows] [cols].
+     *
+     * @return none
+     ******************************************************************/
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int cols = args.length > 2 ? Integer.parseInt(args[2]) : rows;
+
+        Game2048 game = new Game2048();
+        game.resizeBoard(rows, cols, 1 << 20);
+        game.reset();
+        ExpectimaxSearcher searcher = new ExpectimaxSearcher(depth);
+
+        int moves = 0;
+        SlideDirection dir;
+        while((dir = searcher.bestMove(game)) != null) {
+            game.slide(dir);
+            moves++;
+        }
+
+        int maxTile = 0;
+        for(Cell c : game.getNonEmptyTiles())
+            maxTile = Math.max(maxTile, c.value);
+        System.out.printf("depth %d, %dx%d: %d moves, max tile %d%n",
+                depth, rows, cols, moves, maxTile);
+        System.out.printf("%d nodes in %.2f s: %.0f nodes/s, %.1f moves/s%n",
+                searcher.getTotalNodes(), searcher.getTotalNanos() / 1e9,
+                searcher.getNodesPerSecond(),
+                moves * 1e9 / searcher.getTotalNanos());
+    }
+}
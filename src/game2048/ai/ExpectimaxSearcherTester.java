@@ -0,0 +1,193 @@
+package game2048.ai;
+
+import game2048.*;
+import org.junit.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+
+public class ExpectimaxSearcherTester {
+    private final static int REPEAT_COUNT = 20;
+    private static Random gen;
+    private int NROWS, NCOLS;
+
+    /* a cache that never holds anything */
+    private final static SearchCache NO_CACHE = new SearchCache() {
+        public double get(long key, int depth) {
+            return Double.NaN;
+        }
+
+        public void put(long key, int depth, double value) {
+        }
+
+        public void clear() {
+        }
+    };
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(2) + 2; /* 2-3 */
+        NCOLS = gen.nextInt(2) + 2;
+    }
+
+    @Test(timeout = 5000)
+    public void onlyPossibleMoveIsChosen()
+    {
+        ExpectimaxSearcher searcher = new ExpectimaxSearcher(gen.nextInt(3) + 1);
+        byte[] board = new byte[NROWS * NCOLS], next = new byte[board.length];
+        for (int found = 0; found < REPEAT_COUNT; ) {
+            randomBoard(board, 6);
+            SlideDirection only = null;
+            int legal = 0;
+            for (SlideDirection dir : SlideDirection.values())
+                if (Boards.slide(board, next, NROWS, NCOLS, dir)) {
+                    only = dir;
+                    legal++;
+                }
+            if (legal > 1)
+                continue;
+            assertEquals(only, searcher.bestMove(board, NROWS, NCOLS));
+            if (only == null)
+                assertTrue(Double.isNaN(searcher.getValue()));
+            found++;
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void moveThatKeepsTheGameGoingIsChosen()
+    {
+        /* up fills the board with no move left whatever tile comes;
+           right leaves room to play on */
+        byte[] board = {
+                2, 1, 0,
+                5, 4, 3,
+                4, 6, 5
+        };
+        for (int depth = 2; depth <= 3; depth++) {
+            ExpectimaxSearcher searcher = new ExpectimaxSearcher(depth);
+            assertEquals(SlideDirection.RIGHT, searcher.bestMove(board, 3, 3));
+            assertTrue(searcher.getValue() > Heuristic.LOST);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void playableMoveBeatsALosingOneOnLargeTiles()
+    {
+        /* left leaves one empty cell that no new tile can save; the
+           other moves play on, but their large unsorted tiles score
+           well below 0, which a lost board once scored */
+        byte[] board = {
+                9, 14, 11,
+                12, 9, 15,
+                0, 11, 14
+        };
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int depth = 2; depth <= 3; depth++) {
+                ExpectimaxSearcher searcher = new ExpectimaxSearcher(depth);
+                ParallelExpectimaxSearcher parallel = new ParallelExpectimaxSearcher(
+                        depth, new DefaultHeuristic(), 1 << 12, pool);
+                searcher.setMinProbability(0);
+                parallel.setMinProbability(0);
+                SlideDirection best = searcher.bestMove(board, 3, 3);
+                assertNotNull(best);
+                assertTrue("depth " + depth, best != SlideDirection.LEFT);
+                assertTrue(searcher.getValue() < 0);
+                assertTrue(searcher.getValue() > Heuristic.LOST);
+                assertEquals(best, parallel.bestMove(board, 3, 3));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void cacheDoesNotChangeTheResult()
+    {
+        for (int n = 0; n < REPEAT_COUNT; n++) {
+            int depth = gen.nextInt(2) + 1;
+            byte[] board = new byte[NROWS * NCOLS];
+            randomBoard(board, 8);
+            /* with no cut-off a board is only met at one depth */
+            ExpectimaxSearcher cached = new ExpectimaxSearcher(depth,
+                    new DefaultHeuristic(), 1 << 12);
+            ExpectimaxSearcher uncached = new ExpectimaxSearcher(depth,
+                    new DefaultHeuristic(), NO_CACHE);
+            cached.setMinProbability(0);
+            uncached.setMinProbability(0);
+            assertEquals(uncached.bestMove(board, NROWS, NCOLS),
+                    cached.bestMove(board, NROWS, NCOLS));
+            assertEquals(uncached.getValue(), cached.getValue(), 0);
+            /* and again, now from the table */
+            assertEquals(uncached.bestMove(board, NROWS, NCOLS),
+                    cached.bestMove(board, NROWS, NCOLS));
+            assertEquals(uncached.getValue(), cached.getValue(), 0);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void interruptStopsTheSearch()
+    {
+        byte[] board = {2, 0, 0, 0, 1, 0};
+        ExpectimaxSearcher searcher = new ExpectimaxSearcher(4);
+        searcher.setMinProbability(0);
+        Thread.currentThread().interrupt();
+        try {
+            searcher.bestMove(board, 2, 3);
+            fail("an interrupted search should stop");
+        }
+        catch (CancellationException ex) {
+            assertTrue("the thread stays interrupted", Thread.interrupted());
+        }
+        assertTrue(Double.isNaN(searcher.getValue()));
+
+        /* what the stopped search cached is still right */
+        ExpectimaxSearcher fresh = new ExpectimaxSearcher(4);
+        fresh.setMinProbability(0);
+        assertEquals(fresh.bestMove(board, 2, 3), searcher.bestMove(board, 2, 3));
+        assertEquals(fresh.getValue(), searcher.getValue(), 0);
+    }
+
+    @Test(timeout = 30000)
+    public void parallelSearchMatchesSequential()
+    {
+        int depth = gen.nextInt(3) + 1;
+        ForkJoinPool pool = new ForkJoinPool(gen.nextInt(3) + 2);
+        try {
+            for (int n = 0; n < REPEAT_COUNT; n++) {
+                byte[] board = new byte[NROWS * NCOLS];
+                randomBoard(board, 8);
+                /* fresh tables, as a table may answer with values searched
+                   deeper; with no cut-off the order the threads finish in
+                   cannot matter */
+                ExpectimaxSearcher sequential = new ExpectimaxSearcher(depth);
+                ParallelExpectimaxSearcher parallel = new ParallelExpectimaxSearcher(
+                        depth, new DefaultHeuristic(), 1 << 16, pool);
+                sequential.setMinProbability(0);
+                parallel.setMinProbability(0);
+                parallel.setSplitDepth(gen.nextInt(3));
+                SlideDirection best = sequential.bestMove(board, NROWS, NCOLS);
+                assertEquals(best, parallel.bestMove(board, NROWS, NCOLS));
+                if (best != null)
+                    assertEquals(sequential.getValue(), parallel.getValue(), 0);
+                else
+                    assertTrue(Double.isNaN(parallel.getValue()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void randomBoard(byte[] board, int maxCode)
+    {
+        for (int k = 0; k < board.length; k++)
+            board[k] = gen.nextInt(3) == 0 ? 0 : (byte)(gen.nextInt(maxCode) + 1);
+    }
+}
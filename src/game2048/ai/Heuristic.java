@@ -0,0 +1,26 @@
+package game2048.ai;
+
+/**
+ * Scores a board position for the search. Larger scores are better.
+ * Implementations must not change the board and should be thread safe
+ * if a searcher is shared between threads.
+ */
+public interface Heuristic {
+    /**
+     * Value the search gives a board with no move left, far below the
+     * score of any board still in play.
+     */
+    double LOST = -1e12;
+
+    /**
+     * Score a board.
+     *
+     * @param cells the board, one cell code per byte in row-major order
+     *              (0 for an empty cell, log2(value) + 1 for a tile)
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the score of the board, which may be negative; boards
+     * still in play must score above LOST
+     */
+    double evaluate(byte[] cells, int rows, int cols);
+}
@@ -0,0 +1,210 @@
+package game2048.ai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+/***********************************************************************
+ * LongHashSet class: A set of 64 bit keys, such as board keys, stored
+ * as bare longs in an open-addressing table with linear probing. No
+ * key is ever boxed and there are no per-entry objects, so a set of
+ * hundreds of millions of states costs little more than 8 bytes per
+ * slot.
+ *
+ * The table is split into segments of at most 2^27 slots (1 GiB), so
+ * it can grow past the 2^31 elements a single array or buffer allows.
+ * Segments are heap arrays wrapped as LongBuffers or, for off-heap
+ * sets, direct buffers outside the Java heap, which keeps huge sets
+ * away from the garbage collector. The table doubles when it is three
+ * quarters full. Slot value 0 marks an empty slot, so key 0 is kept in
+ * a flag of its own.
+ *
+ * Not thread safe.
+ **********************************************************************/
+public class LongHashSet {
+    /** Slots per segment are at most 2^SEGMENT_BITS. */
+    private static final int SEGMENT_BITS = 27;
+    /** Smallest table. */
+    private static final int MIN_BITS = 4;
+    /** Largest table: 2^40 slots, 8 TiB. */
+    private static final int MAX_BITS = 40;
+
+    /** True to keep the table outside the Java heap. */
+    private final boolean offHeap;
+    /** The table. */
+    private LongBuffer[] segments;
+    /** Number of index bits, and slots per segment minus one. */
+    private int bits, segmentMask;
+    /** Number of keys stored in the table, not counting key 0. */
+    private long size;
+    /** True when the set holds key 0. */
+    private boolean hasZero;
+    /** Number of keys at which the table doubles. */
+    private long growAt;
+
+    /*******************************************************************
+     * Create an empty set.
+     *
+     * @param expected the number of keys to make room for; the table
+     * grows past it when needed
+     * @param offHeap true to keep the table in direct buffers
+     * @throws IllegalArgumentException when expected is negative or too
+     * large
+     ******************************************************************/
+    public LongHashSet(long expected, boolean offHeap) {
+        if(expected < 0 || expected > (3L << (MAX_BITS - 2)))
+            throw new IllegalArgumentException();
+        this.offHeap = offHeap;
+        // room for expected keys at three quarters full
+        int b = MIN_BITS;
+        while(b < MAX_BITS && (3L << (b - 2)) < expected)
+            b++;
+        allocate(b);
+    }
+
+    /*******************************************************************
+     * Make an empty table of 2^bits slots.
+     *
+     * @param bits the number of index bits
+     * @return none
+     ******************************************************************/
+    private void allocate(int bits) {
+        this.bits = bits;
+        int segmentBits = Math.min(bits, SEGMENT_BITS);
+        segmentMask = (1 << segmentBits) - 1;
+        segments = new LongBuffer[1 << (bits - segmentBits)];
+        for(int s = 0; s < segments.length; s++)
+            segments[s] = offHeap ?
+                    ByteBuffer.allocateDirect(8 << segmentBits)
+                            .order(ByteOrder.nativeOrder()).asLongBuffer() :
+                    LongBuffer.wrap(new long[1 << segmentBits]);
+        growAt = 3L << (bits - 2);
+    }
+
+    /*******************************************************************
+     * Add a key.
+     *
+     * @param key the key
+     * @return true when the key was not in the set yet
+     * @throws IllegalStateException when the table cannot grow further
+     ******************************************************************/
+    public boolean add(long key) {
+        if(key == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        if(size >= growAt)
+            grow();
+        long mask = (1L << bits) - 1;
+        for(long i = slot(key); ; i = (i + 1) & mask) {
+            LongBuffer segment = segments[(int)(i >>> SEGMENT_BITS)];
+            int offset = (int)i & segmentMask;
+            long k = segment.get(offset);
+            if(k == key)
+                return false;
+            if(k == 0) {
+                segment.put(offset, key);
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /*******************************************************************
+     * Check if a key is in the set.
+     *
+     * @param key the key
+     * @return true when it is
+     ******************************************************************/
+    public boolean contains(long key) {
+        if(key == 0)
+            return hasZero;
+        long mask = (1L << bits) - 1;
+        for(long i = slot(key); ; i = (i + 1) & mask) {
+            long k = segments[(int)(i >>> SEGMENT_BITS)]
+                    .get((int)i & segmentMask);
+            if(k == key)
+                return true;
+            if(k == 0)
+                return false;
+        }
+    }
+
+    /*******************************************************************
+     * A method used to get the number of keys in the set.
+     *
+     * @return the count
+     ******************************************************************/
+    public long size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    /*******************************************************************
+     * A method used to get the number of slots of the table.
+     *
+     * @return the capacity
+     ******************************************************************/
+    public long capacity() {
+        return 1L << bits;
+    }
+
+    /*******************************************************************
+     * A method used to get the memory the table takes.
+     *
+     * @return the size in bytes
+     ******************************************************************/
+    public long tableBytes() {
+        return 8L << bits;
+    }
+
+    /*******************************************************************
+     * Remove every key, keeping the table.
+     *
+     * @return none
+     ******************************************************************/
+    public void clear() {
+        for(LongBuffer segment : segments)
+            for(int k = 0; k < segment.capacity(); k++)
+                segment.put(k, 0);
+        size = 0;
+        hasZero = false;
+    }
+
+    /*******************************************************************
+     * Double the table and add the keys back.
+     *
+     * @return none
+     * @throws IllegalStateException when the table is at its largest
+     ******************************************************************/
+    private void grow() {
+        if(bits == MAX_BITS)
+            throw new IllegalStateException("set is full");
+        LongBuffer[] old = segments;
+        allocate(bits + 1);
+        long mask = (1L << bits) - 1;
+        for(LongBuffer segment : old) {
+            for(int k = 0; k < segment.capacity(); k++) {
+                long key = segment.get(k);
+                if(key == 0)
+                    continue;
+                long i = slot(key);
+                while(segments[(int)(i >>> SEGMENT_BITS)]
+                        .get((int)i & segmentMask) != 0)
+                    i = (i + 1) & mask;
+                segments[(int)(i >>> SEGMENT_BITS)]
+                        .put((int)i & segmentMask, key);
+            }
+        }
+    }
+
+    /*******************************************************************
+     * Spread a key over the slots; packed board keys keep most of their
+     * entropy in the low bits.
+     *
+     * @param key the key
+     * @return slot index
+     ******************************************************************/
+    private long slot(long key) {
+        return (key * 0x9E3779B97F4A7C15L) >>> (64 - bits);
+    }
+}
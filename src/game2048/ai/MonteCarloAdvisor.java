@@ -0,0 +1,332 @@
+package game2048.ai;
+
+import game2048.*;
+import java.util.*;
+import java.util.concurrent.*;
+/***********************************************************************
+ * MonteCarloAdvisor class: Scores each SlideDirection by playing many
+ * random games (rollouts) from the board it leads to, and suggests the
+ * direction with the best average result: either the final largest
+ * tile or the final score.
+ *
+ * Rollouts run on a fixed pool of threads, one rollout loop per thread,
+ * until the time budget or the rollout limit of the call is used up.
+ * Every loop draws from its own SplittableRandom, split from the
+ * advisor's seed, so threads never share a random number generator.
+ *
+ * advise may be called from one thread at a time.
+ **********************************************************************/
+public class MonteCarloAdvisor {
+    /** What a rollout is scored on. */
+    public enum Objective {
+        MAX_TILE, /* value of the largest tile at the end */
+        SCORE     /* sum of the merged tile values over the rollout */
+    }
+
+    /** Default time budget of one call. */
+    public static final long DEFAULT_BUDGET_MILLIS = 100;
+    /** Default most moves of one rollout. */
+    public static final int DEFAULT_MAX_ROLLOUT_MOVES = 10000;
+
+    /** Threads running the rollouts. */
+    private final ExecutorService executor;
+    /** Number of rollout loops per call. */
+    private final int threads;
+    /** Source of the random streams of the rollout loops. */
+    private final SplittableRandom seeds;
+    /** Time budget of one call. */
+    private long budgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS);
+    /** Most rollouts per call, 0 for no limit. */
+    private int maxRollouts;
+    /** Most moves of one rollout. */
+    private int maxRolloutMoves = DEFAULT_MAX_ROLLOUT_MOVES;
+    /** What a rollout is scored on. */
+    private Objective objective = Objective.SCORE;
+    /** Rollouts and average result per direction of the last call. */
+    private final long[] rollouts = new long[4];
+    private final double[] averages = new double[4];
+
+    /*******************************************************************
+     * Create an advisor with one thread per core.
+     *
+     * @param seed seed of the rollout random streams
+     ******************************************************************/
+    public MonteCarloAdvisor(long seed) {
+        this(Runtime.getRuntime().availableProcessors(), seed);
+    }
+
+    /*******************************************************************
+     * Create an advisor.
+     *
+     * @param threads the number of rollout threads
+     * @param seed seed of the rollout random streams
+     * @throws IllegalArgumentException when threads is not positive
+     ******************************************************************/
+    public MonteCarloAdvisor(int threads, long seed) {
+        if(threads < 1)
+            throw new IllegalArgumentException();
+        this.threads = threads;
+        this.seeds = new SplittableRandom(seed);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rollout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /*******************************************************************
+     * Set the time budget of one call.
+     *
+     * @param millis the budget in milliseconds
+     * @return none
+     ******************************************************************/
+    public void setBudgetMillis(long millis) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /*******************************************************************
+     * Set the most rollouts of one call, spread evenly over the
+     * directions and the threads. The call ends at this count or at the
+     * time budget, whichever comes first; when the count is at least
+     * the number of possible first moves, every one of them gets a
+     * rollout even past the budget.
+     *
+     * @param maxRollouts the rollout count, 0 for no limit
+     * @return none
+     ******************************************************************/
+    public void setMaxRollouts(int maxRollouts) {
+        if(maxRollouts < 0)
+            throw new IllegalArgumentException();
+        this.maxRollouts = maxRollouts;
+    }
+
+    /*******************************************************************
+     * Set the most moves of one rollout.
+     *
+     * @param maxRolloutMoves the move count
+     * @return none
+     ******************************************************************/
+    public void setMaxRolloutMoves(int maxRolloutMoves) {
+        this.maxRolloutMoves = maxRolloutMoves;
+    }
+
+    /*******************************************************************
+     * Set what a rollout is scored on.
+     *
+     * @param objective the final largest tile or the final score
+     * @return none
+     ******************************************************************/
+    public void setObjective(Objective objective) {
+        this.objective = objective;
+    }
+
+    /*******************************************************************
+     * Suggest a move for a game.
+     *
+     * @param game the game, not changed
+     * @return the best direction, or null when no move changes the board
+     ******************************************************************/
+    public SlideDirection advise(Game2048 game) {
+        return advise(game.getCellCodes(), game.getRows(), game.getCols());
+    }
+
+    /*******************************************************************
+     * Suggest a move for a board.
+     *
+     * @param cells the board, one cell code per byte in row-major order;
+     * not changed
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the best direction, or null when no move changes the board
+     ******************************************************************/
+    public SlideDirection advise(byte[] cells, int rows, int cols) {
+        SlideDirection[] dirs = SlideDirection.values();
+        Arrays.fill(rollouts, 0);
+        Arrays.fill(averages, 0);
+
+        // the board and score right after each first move
+        List<byte[]> starts = new ArrayList<byte[]>(dirs.length);
+        int[] startDirs = new int[dirs.length];
+        int[] startScores = new int[dirs.length];
+        for(int d = 0; d < dirs.length; d++) {
+            byte[] next = new byte[cells.length];
+            int score = Boards.slideScored(cells, next, rows, cols, dirs[d]);
+            if(score >= 0) {
+                startDirs[starts.size()] = d;
+                startScores[starts.size()] = score;
+                starts.add(next);
+            }
+        }
+        if(starts.isEmpty())
+            return null;
+        if(starts.size() == 1)
+            return dirs[startDirs[0]];
+
+        // share the limit out exactly; each loop picks up the starts
+        // where the loop before it left off, so taken together the loops
+        // go round the starts in turn
+        long deadline = System.nanoTime() + budgetNanos;
+        List<Callable<double[]>> loops = new ArrayList<Callable<double[]>>(threads);
+        int offset = 0;
+        for(int t = 0; t < threads; t++) {
+            int quota = maxRollouts == 0 ? Integer.MAX_VALUE :
+                    maxRollouts / threads + (t < maxRollouts % threads ? 1 : 0);
+            if(quota == 0)
+                break;
+            int first = offset % starts.size();
+            offset += maxRollouts == 0 ? 1 : quota;
+            SplittableRandom random = seeds.split();
+            loops.add(() -> rolloutLoop(starts, startScores, rows, cols,
+                    random, deadline, first, quota));
+        }
+
+        // each loop returns its rollout count and result sum per start
+        double[] sums = new double[starts.size()];
+        long[] counts = new long[starts.size()];
+        try {
+            for(Future<double[]> f : executor.invokeAll(loops)) {
+                double[] r = f.get();
+                for(int s = 0; s < sums.length; s++) {
+                    counts[s] += (long)r[2 * s];
+                    sums[s] += r[2 * s + 1];
+                }
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        catch(ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        // a start without rollouts has no average to compare
+        int best = -1;
+        for(int s = 0; s < sums.length; s++) {
+            rollouts[startDirs[s]] = counts[s];
+            averages[startDirs[s]] = counts[s] == 0 ? 0 : sums[s] / counts[s];
+            if(counts[s] > 0 && (best < 0 ||
+                    averages[startDirs[s]] > averages[startDirs[best]]))
+                best = s;
+        }
+        return dirs[startDirs[Math.max(best, 0)]];
+    }
+
+    /*******************************************************************
+     * Play rollouts from each start board in turn, beginning at a given
+     * start, until the deadline or the quota. The first round of starts
+     * (or the whole quota when it is smaller) is played whatever the
+     * deadline.
+     *
+     * @param starts board after each first move
+     * @param startScores score of each first move
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param random this loop's random stream
+     * @param deadline System.nanoTime() to stop at
+     * @param first index of the start of the first rollout
+     * @param quota most rollouts of this loop
+     * @return rollout count and result sum of each start, interleaved
+     ******************************************************************/
+    private double[] rolloutLoop(List<byte[]> starts, int[] startScores,
+                                 int rows, int cols, SplittableRandom random,
+                                 long deadline, int first, int quota) {
+        double[] result = new double[2 * starts.size()];
+        byte[] a = new byte[rows * cols];
+        byte[] b = new byte[rows * cols];
+        for(int n = 0; n < quota; n++) {
+            int s = (first + n) % starts.size();
+            if(n >= starts.size() && System.nanoTime() >= deadline)
+                break;
+            System.arraycopy(starts.get(s), 0, a, 0, a.length);
+            result[2 * s] += 1;
+            result[2 * s + 1] += rollout(a, b, rows, cols, startScores[s], random);
+        }
+        return result;
+    }
+
+    /*******************************************************************
+     * Play random moves from a board just after a move until no move
+     * is left or the move limit is reached.
+     *
+     * @param a the board, overwritten
+     * @param b scratch board
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param score score so far
+     * @param random random stream for spawns and moves
+     * @return the rollout result for the objective
+     ******************************************************************/
+    private double rollout(byte[] a, byte[] b, int rows, int cols, int score,
+                           SplittableRandom random) {
+        SlideDirection[] dirs = SlideDirection.values();
+        for(int moves = 0; moves < maxRolloutMoves; moves++) {
+            spawn(a, random);
+
+            // try the directions in a random rotation
+            int first = random.nextInt(dirs.length);
+            int gained = -1;
+            for(int d = 0; d < dirs.length && gained < 0; d++)
+                gained = Boards.slideScored(a, b, rows, cols,
+                        dirs[(first + d) % dirs.length]);
+            if(gained < 0)
+                break;
+            score += gained;
+            byte[] t = a;
+            a = b;
+            b = t;
+        }
+        if(objective == Objective.MAX_TILE) {
+            int code = Boards.maxCode(a);
+            return code == 0 ? 0 : 1 << (code - 1);
+        }
+        return score;
+    }
+
+    /*******************************************************************
+     * Place a random tile on a random empty cell, as Game2048 does.
+     *
+     * @param cells the board, with at least one empty cell
+     * @param random random stream
+     * @return none
+     ******************************************************************/
+    private static void spawn(byte[] cells, SplittableRandom random) {
+        int pick = random.nextInt(Boards.countEmpty(cells));
+        for(int k = 0; k < cells.length; k++)
+            if(cells[k] == 0 && pick-- == 0) {
+                cells[k] = Boards.SPAWN_CODES[random.nextInt(Boards.SPAWN_CODES.length)];
+                return;
+            }
+    }
+
+    /*******************************************************************
+     * A method used to get the rollouts of a direction in the last
+     * call.
+     *
+     * @param dir the direction
+     * @return the rollout count, 0 when the move was not possible
+     ******************************************************************/
+    public long getRollouts(SlideDirection dir) {
+        return rollouts[dir.ordinal()];
+    }
+
+    /*******************************************************************
+     * A method used to get the average result of a direction in the
+     * last call.
+     *
+     * @param dir the direction
+     * @return the average rollout result
+     ******************************************************************/
+    public double getAverage(SlideDirection dir) {
+        return averages[dir.ordinal()];
+    }
+
+    /*******************************************************************
+     * Stop the rollout threads.
+     *
+     * @return none
+     ******************************************************************/
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,96 @@
+package game2048.ai;
+
+import game2048.*;
+import org.junit.*;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class MonteCarloAdvisorTester {
+    private final static int REPEAT_COUNT = 50;
+    private static Random gen;
+    private int NROWS, NCOLS;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(4) + 2; /* 2-5 */
+        NCOLS = gen.nextInt(4) + 2;
+    }
+
+    @Test(timeout = 10000)
+    public void smallRolloutLimitCoversEveryFirstMove()
+    {
+        int threads = gen.nextInt(4) + 1;
+        MonteCarloAdvisor advisor = new MonteCarloAdvisor(threads, gen.nextLong());
+        /* the deadline has always passed, so only the limit counts */
+        advisor.setBudgetMillis(0);
+        advisor.setMaxRolloutMoves(20);
+        byte[] board = new byte[NROWS * NCOLS], next = new byte[board.length];
+        try {
+            for (int n = 0; n < REPEAT_COUNT; n++) {
+                int legal = randomBoard(board, next);
+                int limit = legal + gen.nextInt(threads * legal);
+                advisor.setMaxRollouts(limit);
+                SlideDirection best = advisor.advise(board, NROWS, NCOLS);
+                long total = 0;
+                for (SlideDirection dir : SlideDirection.values()) {
+                    boolean possible = Boards.slide(board, next, NROWS, NCOLS, dir);
+                    assertEquals(dir + " with limit " + limit + " on " + threads
+                            + " threads", possible, advisor.getRollouts(dir) > 0);
+                    total += advisor.getRollouts(dir);
+                }
+                assertTrue(total <= limit);
+                assertTrue(advisor.getRollouts(best) > 0);
+            }
+        } finally {
+            advisor.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void rolloutLimitBelowTheFirstMovesIsKept()
+    {
+        int threads = gen.nextInt(4) + 1;
+        MonteCarloAdvisor advisor = new MonteCarloAdvisor(threads, gen.nextLong());
+        advisor.setBudgetMillis(1000);
+        advisor.setMaxRolloutMoves(20);
+        byte[] board = new byte[NROWS * NCOLS], next = new byte[board.length];
+        try {
+            for (int n = 0; n < REPEAT_COUNT; n++) {
+                int legal = randomBoard(board, next);
+                int limit = gen.nextInt(legal) + 1;
+                advisor.setMaxRollouts(limit);
+                SlideDirection best = advisor.advise(board, NROWS, NCOLS);
+                long total = 0;
+                for (SlideDirection dir : SlideDirection.values())
+                    total += advisor.getRollouts(dir);
+                assertEquals(limit, total);
+                /* a first move without rollouts is never chosen */
+                assertTrue(advisor.getRollouts(best) > 0);
+            }
+        } finally {
+            advisor.shutdown();
+        }
+    }
+
+    /* fill a board with a choice of moves (a single move needs no
+       rollouts) and count its moves */
+    private int randomBoard(byte[] board, byte[] next)
+    {
+        while (true) {
+            for (int k = 0; k < board.length; k++)
+                board[k] = gen.nextInt(3) == 0 ? 0 : (byte)(gen.nextInt(4) + 1);
+            int legal = 0;
+            for (SlideDirection dir : SlideDirection.values())
+                if (Boards.slide(board, next, NROWS, NCOLS, dir))
+                    legal++;
+            if (legal > 1)
+                return legal;
+        }
+    }
+}
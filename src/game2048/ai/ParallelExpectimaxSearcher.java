@@ -0,0 +1,380 @@
+package game2048.ai;
+
+import game2048.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+/***********************************************************************
+ * ParallelExpectimaxSearcher class: The expectimax search of
+ * ExpectimaxSearcher spread over a ForkJoinPool. The four SlideDirection
+ * subtrees of the root are separate tasks, and so is every spawn branch
+ * of the chance nodes in the top split levels of the tree. Below that,
+ * each pool thread runs the sequential search with its own buffers.
+ * All threads share one lock-striped ConcurrentTranspositionTable.
+ *
+ * bestMove may be called from one thread at a time.
+ **********************************************************************/
+public class ParallelExpectimaxSearcher {
+    /** Default number of chance node levels split into tasks. */
+    public static final int DEFAULT_SPLIT_DEPTH = 1;
+
+    /** Number of player moves searched. */
+    private final int depth;
+    /** Scores the boards at the bottom of the search. */
+    private final Heuristic heuristic;
+    /** Cache of chance node values shared by all threads. */
+    private final ConcurrentTranspositionTable table;
+    /** Threads running the search. */
+    private final ForkJoinPool pool;
+    /** True when the pool was created here and is shut down here. */
+    private final boolean ownsPool;
+    /** Sequential searcher of each pool thread. */
+    private final ThreadLocal<ExpectimaxSearcher> worker;
+    /** Every sequential searcher created so far, to sum their nodes. */
+    private final Queue<ExpectimaxSearcher> workers =
+            new ConcurrentLinkedQueue<ExpectimaxSearcher>();
+    /** Nodes visited by the split tasks themselves. */
+    private final LongAdder taskNodes = new LongAdder();
+    /** Branch probability below which the search stops. */
+    private volatile double minProbability =
+            ExpectimaxSearcher.DEFAULT_MIN_PROBABILITY;
+    /** Number of chance node levels split into tasks. */
+    private int splitDepth = DEFAULT_SPLIT_DEPTH;
+    /** Dimensions of the board being searched. */
+    private int rows, cols;
+    /** Expected value of the move the last search chose. */
+    private double value = Double.NaN;
+    /** Nodes visited and time taken over all searches. */
+    private long totalNodes, totalNanos;
+
+    /*******************************************************************
+     * Create a searcher with the default heuristic and table size on a
+     * new pool.
+     *
+     * @param depth the number of player moves to search, at least 1
+     * @param parallelism the number of pool threads
+     ******************************************************************/
+    public ParallelExpectimaxSearcher(int depth, int parallelism) {
+        this(depth, new DefaultHeuristic(),
+                ExpectimaxSearcher.DEFAULT_TABLE_SIZE,
+                new ForkJoinPool(parallelism), true);
+    }
+
+    /*******************************************************************
+     * Create a searcher on an existing pool. The pool is not shut down
+     * by shutdown().
+     *
+     * @param depth the number of player moves to search, at least 1
+     * @param heuristic scores the boards at the bottom of the search;
+     * must be thread safe
+     * @param tableSize the number of transposition table slots
+     * @param pool threads running the search
+     ******************************************************************/
+    public ParallelExpectimaxSearcher(int depth, Heuristic heuristic,
+                                      int tableSize, ForkJoinPool pool) {
+        this(depth, heuristic, tableSize, pool, false);
+    }
+
+    private ParallelExpectimaxSearcher(int depth, Heuristic heuristic,
+                                       int tableSize, ForkJoinPool pool,
+                                       boolean ownsPool) {
+        if(depth < 1 || depth > 100 || heuristic == null || pool == null)
+            throw new IllegalArgumentException();
+        this.depth = depth;
+        this.heuristic = heuristic;
+        this.table = new ConcurrentTranspositionTable(tableSize);
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.worker = ThreadLocal.withInitial(() -> {
+            ExpectimaxSearcher w = new ExpectimaxSearcher(
+                    this.depth, this.heuristic, table);
+            w.setMinProbability(minProbability);
+            workers.add(w);
+            return w;
+        });
+    }
+
+    /*******************************************************************
+     * Set the branch probability below which the search scores a board
+     * with the heuristic instead of going deeper.
+     *
+     * @param minProbability the cut-off, 0 to always search to depth
+     * @return none
+     ******************************************************************/
+    public void setMinProbability(double minProbability) {
+        this.minProbability = minProbability;
+    }
+
+    /*******************************************************************
+     * Set how many chance node levels below each root move are split
+     * into one task per spawn branch. More levels give more, smaller
+     * tasks.
+     *
+     * @param splitDepth the number of levels, 0 to split only the root
+     * @return none
+     ******************************************************************/
+    public void setSplitDepth(int splitDepth) {
+        if(splitDepth < 0)
+            throw new IllegalArgumentException();
+        this.splitDepth = splitDepth;
+    }
+
+    /*******************************************************************
+     * Find the best move for a game.
+     *
+     * @param game the game, not changed
+     * @return the best direction, or null when no move changes the board
+     ******************************************************************/
+    public SlideDirection bestMove(Game2048 game) {
+        return bestMove(game.getCellCodes(), game.getRows(), game.getCols());
+    }
+
+    /*******************************************************************
+     * Find the best move for a board.
+     *
+     * @param cells the board, one cell code per byte in row-major order;
+     * not changed
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the best direction, or null when no move changes the board
+     ******************************************************************/
+    public SlideDirection bestMove(byte[] cells, int rows, int cols) {
+        long start = System.nanoTime();
+        if(rows != this.rows || cols != this.cols) {
+            table.clear();
+            this.rows = rows;
+            this.cols = cols;
+        }
+        for(ExpectimaxSearcher w : workers) {
+            w.resetNodes();
+            w.setMinProbability(minProbability);
+        }
+        taskNodes.reset();
+        value = Double.NaN;
+
+        RootTask root = new RootTask(cells.clone());
+        SlideDirection best = pool.invoke(root);
+        if(best != null)
+            value = root.bestValue;
+
+        totalNodes += getNodes();
+        totalNanos += System.nanoTime() - start;
+        return best;
+    }
+
+    /*******************************************************************
+     * Shut down the pool if this searcher created it.
+     *
+     * @return none
+     ******************************************************************/
+    public void shutdown() {
+        if(ownsPool)
+            pool.shutdown();
+    }
+
+    /*******************************************************************
+     * A method used to get the expected value of the move the last
+     * search chose.
+     *
+     * @return the value, NaN when no move changed the board
+     ******************************************************************/
+    public double getValue() {
+        return value;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of nodes the last search visited.
+     *
+     * @return the node count
+     ******************************************************************/
+    public long getNodes() {
+        long n = taskNodes.sum();
+        for(ExpectimaxSearcher w : workers)
+            n += w.getNodes();
+        return n;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of nodes visited over all
+     * searches.
+     *
+     * @return the node count
+     ******************************************************************/
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    /*******************************************************************
+     * A method used to get the time spent in all searches.
+     *
+     * @return nanoseconds
+     ******************************************************************/
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the search speed over all searches.
+     *
+     * @return nodes per second, 0 before the first search
+     ******************************************************************/
+    public double getNodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1e9 / totalNanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of pool threads.
+     *
+     * @return the pool parallelism
+     ******************************************************************/
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /*******************************************************************
+     * RootTask class: Searches the four moves of the root in parallel
+     * and picks the best.
+     *******************************************************************/
+    private class RootTask extends RecursiveTask<SlideDirection> {
+        private static final long serialVersionUID = 1L;
+        /** The root board. */
+        private final byte[] cells;
+        /** Value of the move chosen, set by compute. */
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        RootTask(byte[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        protected SlideDirection compute() {
+            SlideDirection[] dirs = SlideDirection.values();
+            ChanceTask[] tasks = new ChanceTask[dirs.length];
+            List<ChanceTask> moves = new ArrayList<ChanceTask>(dirs.length);
+            for(int d = 0; d < dirs.length; d++) {
+                byte[] next = new byte[cells.length];
+                if(Boards.slide(cells, next, rows, cols, dirs[d])) {
+                    tasks[d] = new ChanceTask(next, depth - 1, 1.0, splitDepth);
+                    moves.add(tasks[d]);
+                }
+            }
+            invokeAll(moves);
+
+            SlideDirection best = null;
+            for(int d = 0; d < dirs.length; d++) {
+                if(tasks[d] != null && tasks[d].getRawResult() > bestValue) {
+                    bestValue = tasks[d].getRawResult();
+                    best = dirs[d];
+                }
+            }
+            return best;
+        }
+    }
+
+    /*******************************************************************
+     * ChanceTask class: A chance node. While split levels are left,
+     * every spawn branch is its own task; otherwise the pool thread's
+     * sequential searcher takes the whole subtree.
+     *******************************************************************/
+    private class ChanceTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+        /** The board after the player move. */
+        private final byte[] cells;
+        /** Player moves still to search. */
+        private final int movesLeft;
+        /** Chance of reaching this board. */
+        private final double probability;
+        /** Chance node levels still split into tasks. */
+        private final int splitsLeft;
+
+        ChanceTask(byte[] cells, int movesLeft, double probability,
+                   int splitsLeft) {
+            this.cells = cells;
+            this.movesLeft = movesLeft;
+            this.probability = probability;
+            this.splitsLeft = splitsLeft;
+        }
+
+        @Override
+        protected Double compute() {
+            if(splitsLeft == 0 || movesLeft == 0 ||
+                    probability < minProbability)
+                return worker.get().chanceValue(cells, rows, cols,
+                        movesLeft, probability);
+
+            taskNodes.increment();
+            long key = Boards.key(cells);
+            double cached = table.get(key, movesLeft);
+            if(!Double.isNaN(cached))
+                return cached;
+
+            int outcomes = Boards.countEmpty(cells) * Boards.SPAWN_CODES.length;
+            double childProbability = probability / outcomes;
+            List<SpawnTask> spawns = new ArrayList<SpawnTask>(outcomes);
+            for(int k = 0; k < cells.length; k++) {
+                if(cells[k] != 0)
+                    continue;
+                for(byte code : Boards.SPAWN_CODES) {
+                    byte[] child = cells.clone();
+                    child[k] = code;
+                    spawns.add(new SpawnTask(child, movesLeft,
+                            childProbability, splitsLeft - 1));
+                }
+            }
+            invokeAll(spawns);
+
+            double sum = 0;
+            for(SpawnTask t : spawns)
+                sum += t.getRawResult();
+            double value = sum / outcomes;
+            table.put(key, movesLeft, value);
+            return value;
+        }
+    }
+
+    /*******************************************************************
+     * SpawnTask class: A max node reached through one spawn branch. Its
+     * moves are split into tasks while split levels are left.
+     *******************************************************************/
+    private class SpawnTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+        /** The board with the new tile. */
+        private final byte[] cells;
+        /** Player moves still to search, at least 1. */
+        private final int movesLeft;
+        /** Chance of reaching this board. */
+        private final double probability;
+        /** Chance node levels still split into tasks. */
+        private final int splitsLeft;
+
+        SpawnTask(byte[] cells, int movesLeft, double probability,
+                  int splitsLeft) {
+            this.cells = cells;
+            this.movesLeft = movesLeft;
+            this.probability = probability;
+            this.splitsLeft = splitsLeft;
+        }
+
+        @Override
+        protected Double compute() {
+            taskNodes.increment();
+            List<ChanceTask> moves = new ArrayList<ChanceTask>(4);
+            for(SlideDirection dir : SlideDirection.values()) {
+                byte[] next = new byte[cells.length];
+                if(Boards.slide(cells, next, rows, cols, dir))
+                    moves.add(new ChanceTask(next, movesLeft - 1,
+                            probability, splitsLeft));
+            }
+            if(splitsLeft > 0)
+                invokeAll(moves);
+            else
+                for(ChanceTask t : moves)
+                    t.invoke();
+
+            double best = Heuristic.LOST;
+            for(ChanceTask t : moves)
+                best = Math.max(best, t.getRawResult());
+            return best;
+        }
+    }
+}
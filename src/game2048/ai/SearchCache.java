@@ -0,0 +1,31 @@
+package game2048.ai;
+
+/**
+ * A bounded cache of search values keyed on a 64 bit board key (see
+ * Boards.key) and the number of moves searched below the board.
+ */
+public interface SearchCache {
+    /**
+     * Look up the value of a board searched at least as deep as asked.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board
+     * @return the stored value, or NaN when there is none
+     */
+    double get(long key, int depth);
+
+    /**
+     * Store the value of a board. The cache may drop older values to
+     * make room.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board
+     * @param value the search value
+     */
+    void put(long key, int depth, double value);
+
+    /**
+     * Remove every stored value.
+     */
+    void clear();
+}
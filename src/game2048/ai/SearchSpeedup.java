@@ -0,0 +1,93 @@
+package game2048.ai;
+
+import java.util.Random;
+/***********************************************************************
+ * SearchSpeedup class: Measures the speed-up of
+ * ParallelExpectimaxSearcher from 1 thread up to all cores at a fixed
+ * depth, on 4x4 and 6x6 boards. The boards are generated from a fixed
+ * seed so runs can be compared.
+ *
+ * Arguments: [depth4x4] [depth6x6] [boards] [maxThreads]
+ **********************************************************************/
+public class SearchSpeedup {
+    /** Seed of the generated boards. */
+    private static final long SEED = 2048;
+
+    public static void main(String[] args) {
+        int depth4 = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int depth6 = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int boards = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) :
+                Runtime.getRuntime().availableProcessors();
+
+        run(4, depth4, boards, maxThreads);
+        run(6, depth6, boards, maxThreads);
+    }
+
+    /*******************************************************************
+     * Search the same boards with 1, 2, 4, ... and maxThreads threads
+     * and print the time and speed-up of each.
+     *
+     * @param size the number of rows and columns
+     * @param depth the search depth
+     * @param boards the number of boards searched per thread count
+     * @param maxThreads the most threads tried
+     * @return none
+     ******************************************************************/
+    private static void run(int size, int depth, int boards, int maxThreads) {
+        byte[][] positions = positions(size, boards);
+        System.out.printf("%dx%d, depth %d, %d boards%n", size, size, depth,
+                boards);
+        System.out.printf("%8s %10s %14s %8s%n", "threads", "ms", "nodes/s",
+                "speedup");
+
+        // warm up the JIT on a searcher of its own, so the timed ones
+        // start with an empty table
+        ParallelExpectimaxSearcher warmUp =
+                new ParallelExpectimaxSearcher(depth, maxThreads);
+        for(byte[] p : positions)
+            warmUp.bestMove(p, size, size);
+        warmUp.shutdown();
+
+        double baseMillis = 0;
+        for(int threads = 1; threads <= maxThreads; ) {
+            ParallelExpectimaxSearcher searcher =
+                    new ParallelExpectimaxSearcher(depth, threads);
+
+            long start = System.nanoTime();
+            long nodes = 0;
+            for(byte[] p : positions) {
+                searcher.bestMove(p, size, size);
+                nodes += searcher.getNodes();
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+            searcher.shutdown();
+
+            if(threads == 1)
+                baseMillis = millis;
+            System.out.printf("%8d %10.1f %14.0f %8.2f%n", threads, millis,
+                    nodes * 1000.0 / millis, baseMillis / millis);
+
+            threads = threads == maxThreads ? threads + 1 :
+                    Math.min(2 * threads, maxThreads);
+        }
+    }
+
+    /*******************************************************************
+     * Generate mid-game boards: about half the cells hold a tile of
+     * value 1 to 64.
+     *
+     * @param size the number of rows and columns
+     * @param count the number of boards
+     * @return the boards as cell codes
+     ******************************************************************/
+    private static byte[][] positions(int size, int count) {
+        Random gen = new Random(SEED + size);
+        byte[][] positions = new byte[count][size * size];
+        for(byte[] p : positions)
+            for(int k = 0; k < p.length; k++)
+                if(gen.nextBoolean())
+                    p[k] = (byte)(1 + gen.nextInt(7));
+        return positions;
+    }
+}
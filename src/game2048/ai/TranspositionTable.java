@@ -0,0 +1,122 @@
+package game2048.ai;
+
+import java.util.Arrays;
+/***********************************************************************
+ * TranspositionTable class: A fixed size cache of search results keyed
+ * on a 64 bit board key (see Boards.key). Each slot holds one board;
+ * a new result replaces whatever shares its slot, so memory never grows
+ * past the size given at construction.
+ *
+ * Not thread safe; use one table per searcher thread.
+ **********************************************************************/
+public class TranspositionTable implements SearchCache {
+    /** Board key of every slot. */
+    private final long[] keys;
+    /** Search value of every slot. */
+    private final double[] values;
+    /** Search depth of every slot plus one; 0 marks an empty slot. */
+    private final byte[] depths;
+    /** Number of index bits. */
+    private final int bits;
+    /** Number of lookups and of lookups that found a result. */
+    private long lookups, hits;
+
+    /*******************************************************************
+     * Create an empty table.
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     * @throws IllegalArgumentException when capacity is not positive or
+     * above 2^30
+     ******************************************************************/
+    public TranspositionTable(int capacity) {
+        if(capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException();
+        bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        keys = new long[1 << bits];
+        values = new double[1 << bits];
+        depths = new byte[1 << bits];
+    }
+
+    /*******************************************************************
+     * Look up the value of a board searched at least as deep as asked.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board
+     * @return the stored value, or NaN when there is none
+     * @Override
+     ******************************************************************/
+    public double get(long key, int depth) {
+        int slot = slot(key);
+        lookups++;
+        if(depths[slot] > depth && keys[slot] == key) {
+            hits++;
+            return values[slot];
+        }
+        return Double.NaN;
+    }
+
+    /*******************************************************************
+     * Store the value of a board, replacing the slot's old result.
+     *
+     * @param key the board key
+     * @param depth the number of moves searched below the board, below
+     * 127
+     * @param value the search value
+     * @return none
+     * @Override
+     ******************************************************************/
+    public void put(long key, int depth, double value) {
+        int slot = slot(key);
+        keys[slot] = key;
+        values[slot] = value;
+        depths[slot] = (byte)(depth + 1);
+    }
+
+    /*******************************************************************
+     * Remove every stored result.
+     *
+     * @return none
+     * @Override
+     ******************************************************************/
+    public void clear() {
+        Arrays.fill(depths, (byte)0);
+    }
+
+    /*******************************************************************
+     * A method used to get the number of slots.
+     *
+     * @return the capacity
+     ******************************************************************/
+    public int capacity() {
+        return keys.length;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of lookups so far.
+     *
+     * @return lookups
+     ******************************************************************/
+    public long getLookups() {
+        return lookups;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of lookups that found a result.
+     *
+     * @return hits
+     ******************************************************************/
+    public long getHits() {
+        return hits;
+    }
+
+    /*******************************************************************
+     * Spread a key over the slots; packed board keys keep most of their
+     * entropy in the low bits.
+     *
+     * @param key the board key
+     * @return slot index
+     ******************************************************************/
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+}
@@ -0,0 +1,66 @@
+package game2048.journal;
+
+/***********************************************************************
+ * MoveJournal class: The layout of a move journal file, which records
+ * one game as the seed of its random tiles, its board and its moves.
+ * All numbers are big-endian.
+ *
+ * Version 3:
+ *   magic:i32 version:u8 rows:u16 cols:u16 winningValue:i32 seed:i64
+ *   spawnAlgorithm:u8 (how the random tiles are placed; SPAWN_GAME2048
+ *     is the only one readers replay)
+ *   moves, four per byte: move k is the SlideDirection ordinal in bits
+ *     2*(k%4) and 2*(k%4)+1 of byte k/4
+ *   claimed outcome: status:u8 (GameStatus ordinal, or NO_OUTCOME when
+ *     none was recorded), then when recorded rows * cols cell codes of
+ *     the final board in row-major order, one per byte
+ *   moveCount:i64
+ *
+ * Version 2 is the same without the spawn algorithm, which is taken
+ * to be SPAWN_GAME2048, and version 1 is version 2 without the claimed
+ * outcome; readers accept all three.
+ *
+ * The game is a Game2048 created with the seed, sized, and reset; each
+ * move is then passed to slide in order, whether or not it changed the
+ * board. A move that changes nothing draws no random numbers, so the
+ * same seed and moves always give the same game. Where the tiles land
+ * depends on the order Game2048 keeps its empty cells in and the order
+ * it draws its random numbers; a change to either is a new spawn
+ * algorithm, and must get a new id.
+ **********************************************************************/
+public final class MoveJournal {
+    /** First four bytes of every journal: "2JNL" in ASCII. */
+    public static final int MAGIC = 0x324A4E4C;
+    /** Format version written by MoveJournalWriter. */
+    public static final int VERSION = 3;
+    /** Oldest format version readers accept. */
+    public static final int MIN_VERSION = 1;
+    /** Bytes before the moves. */
+    public static final int HEADER_SIZE = 22;
+    /** Bytes before the moves in versions 1 and 2. */
+    public static final int OLD_HEADER_SIZE = 21;
+    /** Spawn algorithm of Game2048: nextInt(empty cells) picks a slot of
+     *  its empty cell list, then nextInt(4) picks a value of 1 to 8. */
+    public static final int SPAWN_GAME2048 = 1;
+    /** Bytes of the move count, the last of the file. */
+    public static final int TRAILER_SIZE = 8;
+    /** Status byte of a journal that claims no outcome. */
+    public static final int NO_OUTCOME = 0xFF;
+    /** Moves stored in each byte. */
+    public static final int MOVES_PER_BYTE = 4;
+    /** Usual file name extension. */
+    public static final String EXTENSION = ".2048j";
+
+    private MoveJournal() {
+    }
+
+    /*******************************************************************
+     * Find the number of bytes the moves of a journal take.
+     *
+     * @param moveCount the number of moves
+     * @return the number of bytes
+     ******************************************************************/
+    public static long movesSize(long moveCount) {
+        return (moveCount + MOVES_PER_BYTE - 1) / MOVES_PER_BYTE;
+    }
+}
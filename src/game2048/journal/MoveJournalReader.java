@@ -0,0 +1,320 @@
+package game2048.journal;
+
+import game2048.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+/***********************************************************************
+ * MoveJournalReader class: Reads a journal file written by
+ * MoveJournalWriter and replays it through a Game2048. Moves are read
+ * through a fixed buffer as they are needed, so a journal of any length
+ * is replayed in constant memory.
+ *
+ * Usage: MoveJournalReader file... (replays each journal and prints
+ * the replay speed and how many games ended in each status)
+ **********************************************************************/
+public class MoveJournalReader implements Closeable {
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Every direction by ordinal. */
+    private static final SlideDirection[] DIRECTIONS = SlideDirection.values();
+
+    /** The journal file. */
+    private final FileChannel channel;
+    /** Bytes read from the file but not yet decoded; no larger than the
+     *  moves, so short journals are cheap to open. */
+    private final ByteBuffer buffer;
+    /** Header fields. */
+    private final long seed;
+    private final int rows, cols, winningValue;
+    /** How the recorded game placed its random tiles. */
+    private final int spawnAlgorithm;
+    /** Number of moves in the journal. */
+    private final long moveCount;
+    /** Claimed final status and board, null when none was recorded. */
+    private final GameStatus outcomeStatus;
+    private final byte[] outcomeCells;
+    /** Move bytes not yet read from the file. */
+    private long bytesLeft;
+    /** Moves returned so far. */
+    private long movesRead;
+    /** Byte whose moves are being returned. */
+    private int current;
+
+    /*******************************************************************
+     * Open a journal and read its header and move count.
+     *
+     * @param path the journal file
+     * @throws IOException when the file cannot be read or is not a
+     * journal
+     ******************************************************************/
+    public MoveJournalReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if(size < MoveJournal.OLD_HEADER_SIZE + MoveJournal.TRAILER_SIZE)
+                throw new IOException("not a move journal: " + path);
+
+            ByteBuffer header = ByteBuffer.allocate(MoveJournal.OLD_HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            if(header.getInt() != MoveJournal.MAGIC)
+                throw new IOException("not a move journal: " + path);
+            int version = header.get() & 0xFF;
+            if(version < MoveJournal.MIN_VERSION || version > MoveJournal.VERSION)
+                throw new IOException("unknown journal version " + version);
+            rows = header.getShort() & 0xFFFF;
+            cols = header.getShort() & 0xFFFF;
+            winningValue = header.getInt();
+            seed = header.getLong();
+            int headerSize = version < 3 ? MoveJournal.OLD_HEADER_SIZE
+                    : MoveJournal.HEADER_SIZE;
+            if(version < 3)
+                spawnAlgorithm = MoveJournal.SPAWN_GAME2048;
+            else {
+                if(size < headerSize + MoveJournal.TRAILER_SIZE)
+                    throw new IOException("not a move journal: " + path);
+                ByteBuffer b = ByteBuffer.allocate(1);
+                readFully(b, MoveJournal.OLD_HEADER_SIZE);
+                spawnAlgorithm = b.get(0) & 0xFF;
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(MoveJournal.TRAILER_SIZE);
+            readFully(trailer, size - MoveJournal.TRAILER_SIZE);
+            trailer.flip();
+            moveCount = trailer.getLong();
+            if(moveCount < 0 || moveCount / MoveJournal.MOVES_PER_BYTE > size)
+                throw new IOException("bad move count: " + path);
+            bytesLeft = MoveJournal.movesSize(moveCount);
+            long outcomeSize = size - headerSize - bytesLeft
+                    - MoveJournal.TRAILER_SIZE;
+            long outcomePosition = headerSize + bytesLeft;
+
+            int status = MoveJournal.NO_OUTCOME;
+            if(version > 1 && outcomeSize > 0) {
+                ByteBuffer b = ByteBuffer.allocate(1);
+                readFully(b, outcomePosition);
+                status = b.get(0) & 0xFF;
+            }
+            long expected = version == 1 ? 0 : status == MoveJournal.NO_OUTCOME ?
+                    1 : 1 + (long)rows * cols;
+            if(outcomeSize != expected)
+                throw new IOException("journal size does not match its move count: "
+                        + path);
+
+            if(status == MoveJournal.NO_OUTCOME) {
+                outcomeStatus = null;
+                outcomeCells = null;
+            }
+            else {
+                if(status >= GameStatus.values().length)
+                    throw new IOException("bad claimed status: " + path);
+                outcomeStatus = GameStatus.values()[status];
+                outcomeCells = new byte[rows * cols];
+                readFully(ByteBuffer.wrap(outcomeCells), outcomePosition + 1);
+                for(byte code : outcomeCells)
+                    if(code < 0 || code > 31)
+                        throw new IOException("bad claimed cell code: " + path);
+            }
+
+            channel.position(headerSize);
+            buffer = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, bytesLeft));
+            buffer.limit(0);
+        }
+        catch(IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /*******************************************************************
+     * Fill a buffer from a file position.
+     *
+     * @param dst the buffer to fill
+     * @param position file position of the first byte
+     * @return none
+     * @throws IOException when the file ends first
+     ******************************************************************/
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while(dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if(n < 0)
+                throw new EOFException();
+            position += n;
+        }
+    }
+
+    /*******************************************************************
+     * Read the next move.
+     *
+     * @return the direction, or null after the last move
+     * @throws IOException when the file cannot be read
+     ******************************************************************/
+    public SlideDirection next() throws IOException {
+        if(movesRead == moveCount)
+            return null;
+        int slot = (int)(movesRead++ % MoveJournal.MOVES_PER_BYTE);
+        if(slot == 0)
+            current = nextByte();
+        return DIRECTIONS[(current >>> (2 * slot)) & 3];
+    }
+
+    /*******************************************************************
+     * Read the next byte of moves, refilling the buffer when empty.
+     *
+     * @return the byte, 0 to 255
+     * @throws IOException when the file cannot be read
+     ******************************************************************/
+    private int nextByte() throws IOException {
+        if(!buffer.hasRemaining()) {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), bytesLeft));
+            while(buffer.hasRemaining())
+                if(channel.read(buffer) < 0)
+                    throw new EOFException();
+            bytesLeft -= buffer.limit();
+            buffer.flip();
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /*******************************************************************
+     * Create the game as it was before the first move: seeded, sized
+     * and reset.
+     *
+     * @return the game
+     * @throws IllegalArgumentException when the header holds an invalid
+     * board size or winning value
+     * @throws IllegalStateException when the game placed its tiles with
+     * a spawn algorithm other than Game2048's
+     ******************************************************************/
+    public Game2048 newGame() {
+        if(spawnAlgorithm != MoveJournal.SPAWN_GAME2048)
+            throw new IllegalStateException("cannot replay spawn algorithm "
+                    + spawnAlgorithm);
+        Game2048 game = new Game2048(seed);
+        game.resizeBoard(rows, cols, winningValue);
+        game.setUndoLimit(1); // a replay never undoes
+        game.reset();
+        return game;
+    }
+
+    /*******************************************************************
+     * Replay the moves not read yet on a new game.
+     *
+     * @return the game after the last move
+     * @throws IOException when the file cannot be read
+     ******************************************************************/
+    public Game2048 replay() throws IOException {
+        Game2048 game = newGame();
+        for(SlideDirection dir = next(); dir != null; dir = next())
+            game.slide(dir);
+        return game;
+    }
+
+    /*******************************************************************
+     * A method used to get the seed of the game's random tiles.
+     *
+     * @return the seed
+     ******************************************************************/
+    public long getSeed() {
+        return seed;
+    }
+
+    /*******************************************************************
+     * A method used to get how the recorded game placed its random
+     * tiles. Only MoveJournal.SPAWN_GAME2048 can be replayed; the moves
+     * of any journal can still be read.
+     *
+     * @return the spawn algorithm id
+     ******************************************************************/
+    public int getSpawnAlgorithm() {
+        return spawnAlgorithm;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of rows.
+     *
+     * @return the number of rows
+     ******************************************************************/
+    public int getRows() {
+        return rows;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of columns.
+     *
+     * @return the number of columns
+     ******************************************************************/
+    public int getCols() {
+        return cols;
+    }
+
+    /*******************************************************************
+     * A method used to get the winning value.
+     *
+     * @return the winning value
+     ******************************************************************/
+    public int getWinningValue() {
+        return winningValue;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of moves in the journal.
+     *
+     * @return the move count
+     ******************************************************************/
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /*******************************************************************
+     * A method used to get the status the recorder claims the moves end
+     * in.
+     *
+     * @return the claimed status, or null when the journal claims no
+     * outcome
+     ******************************************************************/
+    public GameStatus getOutcomeStatus() {
+        return outcomeStatus;
+    }
+
+    /*******************************************************************
+     * A method used to get the board the recorder claims the moves end
+     * on, as cell codes in row-major order.
+     *
+     * @return a copy of the claimed cell codes, or null when the journal
+     * claims no outcome
+     ******************************************************************/
+    public byte[] getOutcomeCells() {
+        return outcomeCells == null ? null : outcomeCells.clone();
+    }
+
+    /*******************************************************************
+     * Close the file.
+     *
+     * @return none
+     * @throws IOException when closing fails
+     ******************************************************************/
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        long moves = 0;
+        int[] statuses = new int[GameStatus.values().length];
+        long start = System.nanoTime();
+        for(String name : args) {
+            try(MoveJournalReader reader = new MoveJournalReader(Paths.get(name))) {
+                statuses[reader.replay().getStatus().ordinal()]++;
+                moves += reader.getMoveCount();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d journals, %d moves, %.0f moves/s%n", args.length,
+                moves, moves / seconds);
+        for(GameStatus status : GameStatus.values())
+            System.out.printf("%s: %d%n", status, statuses[status.ordinal()]);
+    }
+}
@@ -0,0 +1,281 @@
+package game2048.journal;
+
+import game2048.*;
+import org.junit.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class MoveJournalTester {
+    private final static int GAME_GOAL = 2048;
+    private static Random gen;
+    private int NROWS, NCOLS;
+    private Path dir;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(8) + 3; /* 3-10 */
+        NCOLS = gen.nextInt(8) + 3;
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files)
+                Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    @Test(timeout = 5000)
+    public void replayEndsOnTheSameBoard() throws IOException
+    {
+        long seed = gen.nextLong();
+        int moves = gen.nextInt(500) + 1; /* any count, not just multiples of 4 */
+        Path path = dir.resolve("game" + MoveJournal.EXTENSION);
+        Game2048 game = record(path, seed, moves);
+
+        try (MoveJournalReader reader = new MoveJournalReader(path)) {
+            assertEquals(seed, reader.getSeed());
+            assertEquals(NROWS, reader.getRows());
+            assertEquals(NCOLS, reader.getCols());
+            assertEquals(GAME_GOAL, reader.getWinningValue());
+            assertEquals(moves, reader.getMoveCount());
+            Game2048 replayed = reader.replay();
+            assertArrayEquals("replayed board differs", game.getCellCodes(),
+                    replayed.getCellCodes());
+            assertEquals(game.getStatus(), replayed.getStatus());
+            assertEquals(game.getStatus(), reader.getOutcomeStatus());
+            assertArrayEquals("claimed board differs", game.getCellCodes(),
+                    reader.getOutcomeCells());
+        }
+        assertEquals("two bits per move",
+                MoveJournal.HEADER_SIZE + (moves + 3) / 4 + 1 + NROWS * NCOLS
+                        + MoveJournal.TRAILER_SIZE,
+                Files.size(path));
+    }
+
+    @Test(timeout = 5000)
+    public void nextReturnsTheMovesInOrder() throws IOException
+    {
+        Path path = dir.resolve("moves" + MoveJournal.EXTENSION);
+        SlideDirection[] dirs = SlideDirection.values();
+        List<SlideDirection> moves = new ArrayList<SlideDirection>();
+        try (MoveJournalWriter writer = new MoveJournalWriter(path, 1, NROWS,
+                NCOLS, GAME_GOAL)) {
+            for (int k = gen.nextInt(100); k >= 0; k--) {
+                SlideDirection d = dirs[gen.nextInt(dirs.length)];
+                moves.add(d);
+                writer.append(d);
+            }
+        }
+        try (MoveJournalReader reader = new MoveJournalReader(path)) {
+            assertNull("no outcome was set", reader.getOutcomeStatus());
+            for (SlideDirection d : moves)
+                assertEquals(d, reader.next());
+            assertNull("no move after the last", reader.next());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void verifierFindsTamperedOutcomes() throws Exception
+    {
+        for (int k = 0; k < 10; k++)
+            record(dir.resolve("game-" + k + MoveJournal.EXTENSION),
+                    gen.nextLong(), gen.nextInt(200) + 1);
+        /* claim a different first cell in one journal */
+        Path tampered = dir.resolve("game-3" + MoveJournal.EXTENSION);
+        try (FileChannel ch = FileChannel.open(tampered, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long cell = ch.size() - MoveJournal.TRAILER_SIZE - NROWS * NCOLS;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, cell);
+            b.put(0, (byte)(b.get(0) + 1)).rewind();
+            ch.write(b, cell);
+        }
+        Files.write(dir.resolve("junk" + MoveJournal.EXTENSION), new byte[40]);
+
+        ReplayVerifier verifier = new ReplayVerifier(3, 2, 2,
+                new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(2, verifier.verify(dir));
+        assertEquals(9, verifier.getCount(ReplayVerifier.Result.MATCH));
+        assertEquals(1, verifier.getCount(ReplayVerifier.Result.BOARD_MISMATCH));
+        assertEquals(1, verifier.getCount(ReplayVerifier.Result.UNREADABLE));
+    }
+
+    @Test(timeout = 5000)
+    public void truncatedJournalIsRejected() throws IOException
+    {
+        Path path = dir.resolve("cut" + MoveJournal.EXTENSION);
+        record(path, gen.nextLong(), 50);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 1);
+        }
+        try {
+            new MoveJournalReader(path).close();
+            fail("a truncated journal should be rejected");
+        }
+        catch (IOException ex) {
+            /* expected */
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void stateCounterKeepsBoardSizesApart() throws IOException
+    {
+        /* the same seed and a few moves on each size start out with the
+           same leading cells, which pack to the same keys */
+        long seed = gen.nextLong();
+        int[][] sizes = {{2, 2}, {3, 3}, {4, 4}, {2, 3}, {5, 6}};
+        StateCounter mixed = new StateCounter(16, gen.nextBoolean());
+        long sum = 0;
+        for (int k = 0; k < sizes.length; k++) {
+            NROWS = sizes[k][0];
+            NCOLS = sizes[k][1];
+            Path path = dir.resolve("size-" + k + MoveJournal.EXTENSION);
+            record(path, seed, gen.nextInt(3));
+            StateCounter alone = new StateCounter(16, false);
+            alone.add(path);
+            mixed.add(path);
+            sum += alone.getStates();
+            assertEquals(alone.getStates(), mixed.getStates(NROWS, NCOLS));
+        }
+        assertEquals(sizes.length, mixed.getJournals());
+        assertEquals(sum, mixed.getStates());
+    }
+
+    /* a 4x4 game with seed 2048 and the moves below, as written when the
+       spawn algorithm was pinned; a change to where Game2048 places its
+       tiles breaks this test and needs a new spawn algorithm id */
+    private final static String GOLDEN_MOVES = "LLURDLUULRDDRULLDURRDLUL";
+    private final static byte[] GOLDEN_JOURNAL = {
+            0x32, 0x4A, 0x4E, 0x4C, 0x03, 0x00, 0x04, 0x00, 0x04, 0x00, 0x00,
+            0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x08, 0x00, 0x01,
+            (byte)0x90, 0x53, (byte)0xF8, 0x06, (byte)0xA7, 0x13,
+            0x00, 0x03, 0x04, 0x01, 0x05, 0x02, 0x01, 0x04, 0x04, 0x03, 0x06,
+            0x05, 0x00, 0x01, 0x04, 0x00, 0x00,
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x18
+    };
+    private final static byte[] GOLDEN_BOARD = {
+            3, 4, 1, 5,
+            2, 1, 4, 4,
+            3, 6, 5, 0,
+            1, 4, 0, 0
+    };
+    private final static long GOLDEN_SCORE = 142;
+    private final static int GOLDEN_SPAWN_BYTE = 21;
+
+    @Test(timeout = 5000)
+    public void goldenJournalReplaysToAKnownBoard() throws Exception
+    {
+        /* the writer still writes the same file */
+        Path written = dir.resolve("written" + MoveJournal.EXTENSION);
+        Game2048 game = new Game2048(2048);
+        game.resizeBoard(4, 4, GAME_GOAL);
+        game.reset();
+        try (MoveJournalWriter writer = new MoveJournalWriter(written, 2048, 4, 4,
+                GAME_GOAL)) {
+            for (char c : GOLDEN_MOVES.toCharArray()) {
+                SlideDirection d = golden(c);
+                writer.append(d);
+                game.slide(d);
+            }
+            writer.setOutcome(game);
+        }
+        assertArrayEquals(GOLDEN_JOURNAL, Files.readAllBytes(written));
+
+        /* and the file, or its version 2 form without the spawn byte,
+           replays to the same board */
+        byte[] version2 = new byte[GOLDEN_JOURNAL.length - 1];
+        System.arraycopy(GOLDEN_JOURNAL, 0, version2, 0, GOLDEN_SPAWN_BYTE);
+        System.arraycopy(GOLDEN_JOURNAL, GOLDEN_SPAWN_BYTE + 1, version2,
+                GOLDEN_SPAWN_BYTE, version2.length - GOLDEN_SPAWN_BYTE);
+        version2[4] = 2;
+        for (byte[] bytes : new byte[][] {GOLDEN_JOURNAL, version2}) {
+            Path path = dir.resolve("golden-" + bytes.length + MoveJournal.EXTENSION);
+            Files.write(path, bytes);
+            try (MoveJournalReader reader = new MoveJournalReader(path)) {
+                assertEquals(MoveJournal.SPAWN_GAME2048, reader.getSpawnAlgorithm());
+                assertEquals(GOLDEN_MOVES.length(), reader.getMoveCount());
+                for (char c : GOLDEN_MOVES.toCharArray())
+                    assertEquals(golden(c), reader.next());
+                assertNull(reader.next());
+            }
+            try (MoveJournalReader reader = new MoveJournalReader(path)) {
+                Game2048 replayed = reader.replay();
+                assertArrayEquals(GOLDEN_BOARD, replayed.getCellCodes());
+                assertEquals(GOLDEN_SCORE, replayed.getScore());
+                assertEquals(GameStatus.IN_PROGRESS, replayed.getStatus());
+            }
+        }
+        ReplayVerifier verifier = new ReplayVerifier(2, 1, 1,
+                new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(0, verifier.verify(dir));
+        assertEquals(3, verifier.getCount(ReplayVerifier.Result.MATCH));
+    }
+
+    @Test(timeout = 5000)
+    public void unknownSpawnAlgorithmIsNotReplayed() throws Exception
+    {
+        byte[] bytes = GOLDEN_JOURNAL.clone();
+        bytes[GOLDEN_SPAWN_BYTE] = MoveJournal.SPAWN_GAME2048 + 1;
+        Path path = dir.resolve("other" + MoveJournal.EXTENSION);
+        Files.write(path, bytes);
+        try (MoveJournalReader reader = new MoveJournalReader(path)) {
+            assertEquals(MoveJournal.SPAWN_GAME2048 + 1, reader.getSpawnAlgorithm());
+            /* the moves can still be read, but not the tiles */
+            assertEquals(golden(GOLDEN_MOVES.charAt(0)), reader.next());
+            try {
+                reader.newGame();
+                fail("the tiles of another spawn algorithm cannot be replayed");
+            }
+            catch (IllegalStateException ex) {
+                /* expected */
+            }
+        }
+        ReplayVerifier verifier = new ReplayVerifier(1, 1, 1,
+                new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(1, verifier.verify(dir));
+        assertEquals(1, verifier.getCount(ReplayVerifier.Result.UNKNOWN_SPAWN));
+        try {
+            new StateCounter(16, false).add(path);
+            fail("states of another spawn algorithm cannot be counted");
+        }
+        catch (IOException ex) {
+            /* expected */
+        }
+    }
+
+    private static SlideDirection golden(char move)
+    {
+        return SlideDirection.values()["LURD".indexOf(move)];
+    }
+
+    private Game2048 record(Path path, long seed, int moves) throws IOException
+    {
+        Game2048 game = new Game2048(seed);
+        game.resizeBoard(NROWS, NCOLS, GAME_GOAL);
+        game.reset();
+        SlideDirection[] dirs = SlideDirection.values();
+        try (MoveJournalWriter writer = new MoveJournalWriter(path, seed, NROWS,
+                NCOLS, GAME_GOAL)) {
+            for (int k = 0; k < moves; k++) {
+                SlideDirection d = dirs[gen.nextInt(dirs.length)];
+                writer.append(d);
+                game.slide(d);
+            }
+            writer.setOutcome(game);
+        }
+        return game;
+    }
+}
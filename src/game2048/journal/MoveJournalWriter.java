@@ -0,0 +1,171 @@
+package game2048.journal;
+
+import game2048.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+/***********************************************************************
+ * MoveJournalWriter class: Records the moves of one game to a new
+ * journal file in the MoveJournal format. The file is only ever
+ * appended to: the header first, then the moves as they are made, four
+ * to a byte, and the claimed outcome and move count when the writer is
+ * closed.
+ *
+ * The game being recorded must be a Game2048 created with the same
+ * seed, sized with the same rows, columns and winning value, and reset
+ * once before its first move.
+ **********************************************************************/
+public class MoveJournalWriter implements Closeable {
+    /** Size of the write buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The journal file. */
+    private final FileChannel channel;
+    /** Bytes not yet written to the file. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** Moves of the byte being filled, in its low bits. */
+    private int pending;
+    /** Number of moves in pending. */
+    private int pendingMoves;
+    /** Number of moves recorded. */
+    private long moveCount;
+    /** Board size given to the constructor. */
+    private final int rows, cols;
+    /** Claimed final status and board, null until setOutcome. */
+    private GameStatus outcomeStatus;
+    private byte[] outcomeCells;
+    /** True once closed. */
+    private boolean closed;
+
+    /*******************************************************************
+     * Create a journal file and write its header.
+     *
+     * @param path the file, which must not exist yet
+     * @param seed seed of the game's random tiles
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param winningValue the winning value
+     * @throws IOException when the file cannot be created
+     * @throws IllegalArgumentException when rows or cols do not fit in
+     * 16 bits
+     ******************************************************************/
+    public MoveJournalWriter(Path path, long seed, int rows, int cols,
+                             int winningValue) throws IOException {
+        if(rows < 0 || rows > 0xFFFF || cols < 0 || cols > 0xFFFF)
+            throw new IllegalArgumentException();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.rows = rows;
+        this.cols = cols;
+        buffer.putInt(MoveJournal.MAGIC)
+                .put((byte)MoveJournal.VERSION)
+                .putShort((short)rows)
+                .putShort((short)cols)
+                .putInt(winningValue)
+                .putLong(seed)
+                .put((byte)MoveJournal.SPAWN_GAME2048);
+    }
+
+    /*******************************************************************
+     * Record the next move.
+     *
+     * @param dir the direction passed to slide
+     * @return none
+     * @throws IOException when the file cannot be written
+     ******************************************************************/
+    public void append(SlideDirection dir) throws IOException {
+        if(closed)
+            throw new IllegalStateException();
+        pending |= dir.ordinal() << (2 * pendingMoves);
+        moveCount++;
+        if(++pendingMoves == MoveJournal.MOVES_PER_BYTE) {
+            buffer.put((byte)pending);
+            pending = 0;
+            pendingMoves = 0;
+            if(!buffer.hasRemaining())
+                flush();
+        }
+    }
+
+    /*******************************************************************
+     * A method used to get the number of moves recorded.
+     *
+     * @return the move count
+     ******************************************************************/
+    public long getMoveCount() {
+        return moveCount;
+    }
+
+    /*******************************************************************
+     * Record the game's current board and status as the outcome the
+     * moves lead to, written when the writer is closed. Called again,
+     * the last call wins.
+     *
+     * @param game the recorded game, after its last move
+     * @return none
+     * @throws IllegalArgumentException when the game's board is not the
+     * size given to the constructor
+     ******************************************************************/
+    public void setOutcome(Game2048 game) {
+        if(closed)
+            throw new IllegalStateException();
+        if(game.getRows() != rows || game.getCols() != cols)
+            throw new IllegalArgumentException();
+        outcomeStatus = game.getStatus();
+        outcomeCells = game.getCellCodes();
+    }
+
+    /*******************************************************************
+     * Write the buffered bytes to the file. Moves of a byte that is
+     * not full yet stay buffered.
+     *
+     * @return none
+     * @throws IOException when the file cannot be written
+     ******************************************************************/
+    public void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /*******************************************************************
+     * Write the last moves, the claimed outcome and the move count, and
+     * close the file.
+     *
+     * @return none
+     * @throws IOException when the file cannot be written
+     ******************************************************************/
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        try {
+            if(buffer.remaining() < 2)
+                flush();
+            if(pendingMoves > 0)
+                buffer.put((byte)pending);
+            if(outcomeStatus == null)
+                buffer.put((byte)MoveJournal.NO_OUTCOME);
+            else {
+                buffer.put((byte)outcomeStatus.ordinal());
+                // a large board may not fit the buffer
+                for(int k = 0; k < outcomeCells.length; ) {
+                    if(!buffer.hasRemaining())
+                        flush();
+                    int n = Math.min(buffer.remaining(), outcomeCells.length - k);
+                    buffer.put(outcomeCells, k, n);
+                    k += n;
+                }
+            }
+            if(buffer.remaining() < MoveJournal.TRAILER_SIZE)
+                flush();
+            buffer.putLong(moveCount);
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package game2048.journal;
+
+import game2048.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+/***********************************************************************
+ * ReplayVerifier class: Checks directories of move journals by
+ * replaying every game through Game2048.slide and comparing the result
+ * with the outcome the journal claims, on a work-stealing pool of
+ * threads.
+ *
+ * File names are streamed from the directory in batches; each batch is
+ * split in halves down to single files, so idle threads steal work
+ * from busy ones whatever the length of each game. At most a fixed
+ * number of batches are in flight at once, so memory stays flat however
+ * many journals there are. Only counts and the first few failing files
+ * are kept.
+ *
+ * Usage: ReplayVerifier [--threads T] [--batch N] [--in-flight B]
+ *   [--show N] DIR... (exits with status 1 when any journal fails)
+ **********************************************************************/
+public class ReplayVerifier {
+    /*******************************************************************
+     * Result of checking one journal.
+     ******************************************************************/
+    public enum Result {
+        /** The replay ends on the claimed board and status. */
+        MATCH,
+        /** The replay ends in a different status. */
+        STATUS_MISMATCH,
+        /** The replay ends in the claimed status on another board. */
+        BOARD_MISMATCH,
+        /** The journal claims no outcome. */
+        NO_OUTCOME,
+        /** The tiles were placed by a spawn algorithm replay does not
+         *  know, so the game cannot be checked. */
+        UNKNOWN_SPAWN,
+        /** The file is not a valid journal. */
+        UNREADABLE
+    }
+
+    /** Number of worker threads. */
+    private final int threads;
+    /** Files per batch. */
+    private final int batchSize;
+    /** Most batches queued or running at once. */
+    private final int maxBatches;
+    /** Where failing files and the summary go. */
+    private final PrintStream out;
+    /** Most failing files to print. */
+    private int showFailures = 20;
+
+    /** Running totals. */
+    private final LongAdder[] results = new LongAdder[Result.values().length];
+    private final LongAdder totalMoves = new LongAdder();
+    /** Failing files printed so far. */
+    private final AtomicInteger shown = new AtomicInteger();
+
+    /*******************************************************************
+     * Create a verifier.
+     *
+     * @param threads the number of worker threads
+     * @param batchSize the number of files handed to the pool at once
+     * @param maxBatches the most batches in flight at once
+     * @param out receives failing files and the summary
+     * @throws IllegalArgumentException when a count is not positive
+     ******************************************************************/
+    public ReplayVerifier(int threads, int batchSize, int maxBatches,
+                          PrintStream out) {
+        if(threads < 1 || batchSize < 1 || maxBatches < 1)
+            throw new IllegalArgumentException();
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.out = out;
+        for(int r = 0; r < results.length; r++)
+            results[r] = new LongAdder();
+    }
+
+    /*******************************************************************
+     * Set the most failing files printed.
+     *
+     * @param showFailures the count, 0 to print none
+     * @return none
+     ******************************************************************/
+    public void setShowFailures(int showFailures) {
+        this.showFailures = showFailures;
+    }
+
+    /*******************************************************************
+     * Check every journal in some directories, then print a summary of
+     * the files, moves and results.
+     *
+     * @param dirs the directories; only files ending in
+     * MoveJournal.EXTENSION are checked
+     * @return the number of journals that did not match their outcome
+     * @throws IOException when a directory cannot be listed
+     * @throws InterruptedException when interrupted while waiting
+     ******************************************************************/
+    public long verify(Path... dirs) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore inFlight = new Semaphore(maxBatches);
+        try {
+            for(Path dir : dirs) {
+                try(DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                        "*" + MoveJournal.EXTENSION)) {
+                    Path[] batch = new Path[batchSize];
+                    int n = 0;
+                    for(Path file : files) {
+                        batch[n++] = file;
+                        if(n == batchSize) {
+                            submit(pool, inFlight, batch, n);
+                            batch = new Path[batchSize];
+                            n = 0;
+                        }
+                    }
+                    if(n > 0)
+                        submit(pool, inFlight, batch, n);
+                }
+            }
+            // every permit is back once the last batch is done
+            inFlight.acquire(maxBatches);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        report(System.nanoTime() - start);
+        return getFailures();
+    }
+
+    /*******************************************************************
+     * Hand a batch to the pool, waiting while too many are in flight.
+     *
+     * @param pool the pool
+     * @param inFlight one permit per batch that may still be submitted
+     * @param batch the files
+     * @param n the number of files in the batch
+     * @return none
+     * @throws InterruptedException when interrupted while waiting
+     ******************************************************************/
+    private void submit(ForkJoinPool pool, Semaphore inFlight, Path[] batch,
+                        int n) throws InterruptedException {
+        inFlight.acquire();
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    new Split(batch, 0, n).invoke();
+                }
+                finally {
+                    inFlight.release();
+                }
+            }
+        });
+    }
+
+    /*******************************************************************
+     * Split class: Checks a range of a batch, forking half of it for
+     * other threads to steal until one file is left.
+     ******************************************************************/
+    private final class Split extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path[] files;
+        private final int from, to;
+
+        Split(Path[] files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1)
+                count(files[from], check(files[from]));
+            else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Split(files, from, mid), new Split(files, mid, to));
+            }
+        }
+    }
+
+    /*******************************************************************
+     * Replay one journal and compare the result with its claimed
+     * outcome, adding its moves to the total.
+     *
+     * @param file the journal
+     * @return the result
+     ******************************************************************/
+    public Result check(Path file) {
+        try(MoveJournalReader reader = new MoveJournalReader(file)) {
+            GameStatus status = reader.getOutcomeStatus();
+            if(status == null)
+                return Result.NO_OUTCOME;
+            if(reader.getSpawnAlgorithm() != MoveJournal.SPAWN_GAME2048)
+                return Result.UNKNOWN_SPAWN;
+            Game2048 game = reader.replay();
+            totalMoves.add(reader.getMoveCount());
+            if(game.getStatus() != status)
+                return Result.STATUS_MISMATCH;
+            if(!Arrays.equals(game.getCellCodes(), reader.getOutcomeCells()))
+                return Result.BOARD_MISMATCH;
+            return Result.MATCH;
+        }
+        catch(IOException | RuntimeException ex) {
+            // a bad header can also fail in resizeBoard
+            return Result.UNREADABLE;
+        }
+    }
+
+    /*******************************************************************
+     * Add a result to the totals and print it when it is one of the
+     * first failures.
+     *
+     * @param file the journal
+     * @param result its result
+     * @return none
+     ******************************************************************/
+    private void count(Path file, Result result) {
+        results[result.ordinal()].increment();
+        if(result != Result.MATCH && shown.getAndIncrement() < showFailures)
+            out.println(result + " " + file);
+    }
+
+    /*******************************************************************
+     * A method used to get the number of journals with a result.
+     *
+     * @param result the result
+     * @return the count so far
+     ******************************************************************/
+    public long getCount(Result result) {
+        return results[result.ordinal()].sum();
+    }
+
+    /*******************************************************************
+     * A method used to get the number of journals that did not match
+     * their outcome, for any reason.
+     *
+     * @return the count so far
+     ******************************************************************/
+    public long getFailures() {
+        long failures = 0;
+        for(Result r : Result.values())
+            if(r != Result.MATCH)
+                failures += getCount(r);
+        return failures;
+    }
+
+    /*******************************************************************
+     * Print the throughput and the count of each result.
+     *
+     * @param nanos time taken
+     * @return none
+     ******************************************************************/
+    private void report(long nanos) {
+        long files = 0;
+        for(Result r : Result.values())
+            files += getCount(r);
+        long moves = totalMoves.sum();
+        double seconds = Math.max(nanos, 1) / 1e9;
+        out.printf("%d journals, %d moves in %.2f s: %.0f journals/s, "
+                + "%.0f moves/s, %d threads%n", files, moves, seconds,
+                files / seconds, moves / seconds, threads);
+        for(Result r : Result.values())
+            out.printf("%s: %d%n", r, getCount(r));
+    }
+
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 256;
+        int inFlight = 0;
+        int show = 20;
+        int first = 0;
+        for(; first < args.length && args[first].startsWith("--"); first++) {
+            switch(args[first]) {
+                case "--threads": threads = Integer.parseInt(args[++first]); break;
+                case "--batch": batch = Integer.parseInt(args[++first]); break;
+                case "--in-flight": inFlight = Integer.parseInt(args[++first]); break;
+                case "--show": show = Integer.parseInt(args[++first]); break;
+                default:
+                    System.err.println("unknown option " + args[first]);
+                    System.exit(2);
+            }
+        }
+        if(inFlight == 0)
+            inFlight = 4 * threads;
+        Path[] dirs = new Path[args.length - first];
+        for(int d = 0; d < dirs.length; d++)
+            dirs[d] = Paths.get(args[first + d]);
+
+        ReplayVerifier verifier = new ReplayVerifier(threads, batch, inFlight,
+                System.out);
+        verifier.setShowFailures(show);
+        if(verifier.verify(dirs) > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,179 @@
+package game2048.journal;
+
+import game2048.*;
+import game2048.ai.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+/***********************************************************************
+ * StateCounter class: Counts the distinct states a corpus of move
+ * journals passes through, treating boards that are rotations or
+ * mirror images of each other as one state. Each journal is replayed
+ * and the canonical key of every board along the way, the first one
+ * included, goes into a LongHashSet, so memory grows with the distinct
+ * states only. Keys do not record the board size, so each size has a
+ * set of its own and the counts are added up.
+ *
+ * Usage: StateCounter [--expected N] [--off-heap] DIR-or-FILE...
+ *   (N is for the first board size; sets of other sizes start small and
+ *   grow. Boards of more than 16 cells or with tiles above 2^14 have
+ *   hashed keys, so two of their states may very rarely count as one)
+ **********************************************************************/
+public class StateCounter {
+    /** Canonical keys of the states seen, by rows << 16 | cols. */
+    private final Map<Integer, LongHashSet> states =
+            new HashMap<Integer, LongHashSet>();
+    /** States to make room for in the first set. */
+    private final long expected;
+    /** True to keep the sets outside the Java heap. */
+    private final boolean offHeap;
+    /** Symmetries and set of the last board size seen. */
+    private BoardSymmetry symmetry;
+    private LongHashSet sizeStates;
+    /** Journals and boards replayed. */
+    private long journals, positions;
+
+    /*******************************************************************
+     * Create a counter.
+     *
+     * @param expected the number of distinct states of the first board
+     * size to make room for
+     * @param offHeap true to keep the sets outside the Java heap
+     ******************************************************************/
+    public StateCounter(long expected, boolean offHeap) {
+        this.expected = expected;
+        this.offHeap = offHeap;
+    }
+
+    /*******************************************************************
+     * Replay a journal and add every board of it.
+     *
+     * @param file the journal
+     * @return none
+     * @throws IOException when the file cannot be read, is not a
+     * journal, or has a spawn algorithm replay does not know
+     ******************************************************************/
+    public void add(Path file) throws IOException {
+        try(MoveJournalReader reader = new MoveJournalReader(file)) {
+            if(reader.getSpawnAlgorithm() != MoveJournal.SPAWN_GAME2048)
+                throw new IOException("unknown spawn algorithm "
+                        + reader.getSpawnAlgorithm() + ": " + file);
+            Game2048 game = reader.newGame();
+            if(symmetry == null || symmetry.getRows() != game.getRows()
+                    || symmetry.getCols() != game.getCols()) {
+                symmetry = new BoardSymmetry(game.getRows(), game.getCols());
+                int size = game.getRows() << 16 | game.getCols();
+                sizeStates = states.get(size);
+                if(sizeStates == null) {
+                    sizeStates = new LongHashSet(states.isEmpty() ? expected : 0,
+                            offHeap);
+                    states.put(size, sizeStates);
+                }
+            }
+            sizeStates.add(symmetry.canonicalKey(game));
+            positions++;
+            for(SlideDirection dir = reader.next(); dir != null;
+                    dir = reader.next()) {
+                // a move that changes nothing leaves the same state
+                if(game.slide(dir)) {
+                    sizeStates.add(symmetry.canonicalKey(game));
+                    positions++;
+                }
+            }
+            journals++;
+        }
+    }
+
+    /*******************************************************************
+     * A method used to get the number of journals replayed.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getJournals() {
+        return journals;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of boards replayed, repeats
+     * included.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getPositions() {
+        return positions;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of distinct states, over all board
+     * sizes.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getStates() {
+        long count = 0;
+        for(LongHashSet set : states.values())
+            count += set.size();
+        return count;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of distinct states of one board
+     * size.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the count, 0 when no journal had this size
+     ******************************************************************/
+    public long getStates(int rows, int cols) {
+        LongHashSet set = states.get(rows << 16 | cols);
+        return set == null ? 0 : set.size();
+    }
+
+    /*******************************************************************
+     * A method used to get the memory the sets take.
+     *
+     * @return the size in bytes
+     ******************************************************************/
+    public long getTableBytes() {
+        long bytes = 0;
+        for(LongHashSet set : states.values())
+            bytes += set.tableBytes();
+        return bytes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long expected = 1 << 20;
+        boolean offHeap = false;
+        int first = 0;
+        for(; first < args.length && args[first].startsWith("--"); first++) {
+            switch(args[first]) {
+                case "--expected": expected = Long.parseLong(args[++first]); break;
+                case "--off-heap": offHeap = true; break;
+                default:
+                    System.err.println("unknown option " + args[first]);
+                    System.exit(2);
+            }
+        }
+
+        StateCounter counter = new StateCounter(expected, offHeap);
+        long start = System.nanoTime();
+        for(int a = first; a < args.length; a++) {
+            Path path = Paths.get(args[a]);
+            if(!Files.isDirectory(path))
+                counter.add(path);
+            else {
+                try(DirectoryStream<Path> files = Files.newDirectoryStream(path,
+                        "*" + MoveJournal.EXTENSION)) {
+                    for(Path file : files)
+                        counter.add(file);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d journals, %d positions, %d distinct states "
+                + "in %.2f s, %.0f positions/s, table %d MiB%n",
+                counter.getJournals(), counter.getPositions(),
+                counter.getStates(), seconds, counter.getPositions() / seconds,
+                counter.getTableBytes() >> 20);
+    }
+}
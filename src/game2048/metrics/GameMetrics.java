@@ -0,0 +1,220 @@
+package game2048.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+/***********************************************************************
+ * GameMetrics class: Counters, latency histograms and gauges for the
+ * Game2048 methods, shown over JMX once registered. Games report to a
+ * GameMetrics given to Game2048.setMetrics; any number of games on any
+ * number of threads may share one.
+ *
+ * Every counter is a LongAdder, so games on different threads do not
+ * contend on a shared cache line. Every call is counted but only one in
+ * the sample interval is timed, which keeps the two clock reads off
+ * most slides. A game without metrics pays one null check per call.
+ **********************************************************************/
+public class GameMetrics implements GameMetricsMXBean {
+    /** Default number of calls per timed call. */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    /** Domain and type of the JMX names. */
+    public static final String OBJECT_NAME_PREFIX = "game2048:type=GameMetrics";
+
+    /** Counters of each method. */
+    private final Operation slide = new Operation();
+    private final Operation placeRandomValue = new Operation();
+    private final Operation undo = new Operation();
+    private final Operation updateStatus = new Operation();
+    /** Gauges, kept up to date by the games as they change. */
+    private final LongAdder games = new LongAdder();
+    private final LongAdder undoDepth = new LongAdder();
+    private final LongAdder undoBytes = new LongAdder();
+    /** Sample interval - 1; a call is timed when its number & mask is 0. */
+    private volatile int sampleMask = DEFAULT_SAMPLE_INTERVAL - 1;
+    /** JMX name once registered. */
+    private ObjectName objectName;
+
+    /*******************************************************************
+     * Operation class: The call and failure counts and the times of one
+     * method.
+     ******************************************************************/
+    private static final class Operation {
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final Log2Histogram times = new Log2Histogram();
+
+        void record(long start, boolean failed) {
+            calls.increment();
+            if(failed)
+                failures.increment();
+            if(start != 0)
+                times.record(System.nanoTime() - start);
+        }
+
+        OperationStats snapshot() {
+            return new OperationStats(calls.sum(), failures.sum(),
+                    times.getCount(), times.getMean(),
+                    times.getPercentile(50), times.getPercentile(99),
+                    times.getMax());
+        }
+
+        void reset() {
+            calls.reset();
+            failures.reset();
+            times.reset();
+        }
+    }
+
+    /*******************************************************************
+     * Register with the platform MBean server as
+     * game2048:type=GameMetrics,name=NAME.
+     *
+     * @param name the name, unique among registered metrics
+     * @return the JMX name
+     * @throws JMException when the name is taken or not valid
+     ******************************************************************/
+    public ObjectName register(String name) throws JMException {
+        ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ",name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        objectName = on;
+        return on;
+    }
+
+    /*******************************************************************
+     * Remove the registration made by register, if any.
+     *
+     * @return none
+     * @throws JMException when the server refuses
+     ******************************************************************/
+    public void unregister() throws JMException {
+        if(objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /*******************************************************************
+     * Start timing a call when it is due for a sample.
+     *
+     * @param call a running count of the caller's calls
+     * @return System.nanoTime() when the call is timed, else 0
+     ******************************************************************/
+    public long start(int call) {
+        return (call & sampleMask) == 0 ? System.nanoTime() : 0;
+    }
+
+    /*******************************************************************
+     * Count a slide.
+     *
+     * @param start the value start returned
+     * @param moved true when the slide changed the board
+     * @return none
+     ******************************************************************/
+    public void recordSlide(long start, boolean moved) {
+        slide.record(start, !moved);
+    }
+
+    /*******************************************************************
+     * Count a placeRandomValue call.
+     *
+     * @param start the value start returned
+     * @param placed false when the board was full
+     * @return none
+     ******************************************************************/
+    public void recordPlaceRandomValue(long start, boolean placed) {
+        placeRandomValue.record(start, !placed);
+    }
+
+    /*******************************************************************
+     * Count an undo.
+     *
+     * @param start the value start returned
+     * @param undone false when there was nothing to undo
+     * @return none
+     ******************************************************************/
+    public void recordUndo(long start, boolean undone) {
+        undo.record(start, !undone);
+    }
+
+    /*******************************************************************
+     * Count an updateStatus call or a status check made by a slide or
+     * setValues.
+     *
+     * @param start the value start returned
+     * @return none
+     ******************************************************************/
+    public void recordUpdateStatus(long start) {
+        updateStatus.record(start, false);
+    }
+
+    /*******************************************************************
+     * Change the number of games reporting.
+     *
+     * @param delta 1 for a game added, -1 for one removed
+     * @return none
+     ******************************************************************/
+    public void addGames(int delta) {
+        games.add(delta);
+    }
+
+    /*******************************************************************
+     * Change the undo gauges by what a game's history changed.
+     *
+     * @param depth change in moves that can be undone
+     * @param bytes change in estimated bytes held
+     * @return none
+     ******************************************************************/
+    public void addHistory(long depth, long bytes) {
+        if(depth != 0)
+            undoDepth.add(depth);
+        if(bytes != 0)
+            undoBytes.add(bytes);
+    }
+
+    public OperationStats getSlide() {
+        return slide.snapshot();
+    }
+
+    public OperationStats getPlaceRandomValue() {
+        return placeRandomValue.snapshot();
+    }
+
+    public OperationStats getUndo() {
+        return undo.snapshot();
+    }
+
+    public OperationStats getUpdateStatus() {
+        return updateStatus.snapshot();
+    }
+
+    public long getGames() {
+        return games.sum();
+    }
+
+    public long getUndoDepth() {
+        return undoDepth.sum();
+    }
+
+    public long getUndoBytes() {
+        return undoBytes.sum();
+    }
+
+    public int getSampleInterval() {
+        return sampleMask + 1;
+    }
+
+    public void setSampleInterval(int interval) {
+        if(interval < 1 || interval > 1 << 30)
+            throw new IllegalArgumentException();
+        // round up to a power of two so the test is a mask
+        sampleMask = Integer.highestOneBit(2 * interval - 1) - 1;
+    }
+
+    public void reset() {
+        slide.reset();
+        placeRandomValue.reset();
+        undo.reset();
+        updateStatus.reset();
+    }
+}
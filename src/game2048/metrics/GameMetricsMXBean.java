@@ -0,0 +1,79 @@
+package game2048.metrics;
+
+/**
+ * What a GameMetrics shows over JMX, e.g. in JConsole under
+ * game2048:type=GameMetrics.
+ */
+public interface GameMetricsMXBean {
+    /**
+     * Counters and times of Game2048.slide, including the tile it
+     * places and the status check at its end.
+     *
+     * @return a snapshot
+     */
+    OperationStats getSlide();
+
+    /**
+     * Counters and times of Game2048.placeRandomValue when called by
+     * itself, as reset does.
+     *
+     * @return a snapshot
+     */
+    OperationStats getPlaceRandomValue();
+
+    /**
+     * Counters and times of Game2048.undo.
+     *
+     * @return a snapshot
+     */
+    OperationStats getUndo();
+
+    /**
+     * Counters and times of Game2048.updateStatus, including the status
+     * check every slide and setValues makes.
+     *
+     * @return a snapshot
+     */
+    OperationStats getUpdateStatus();
+
+    /**
+     * Number of games reporting to these metrics.
+     *
+     * @return the count
+     */
+    long getGames();
+
+    /**
+     * Moves that can be undone, over all games reporting.
+     *
+     * @return the total undo depth
+     */
+    long getUndoDepth();
+
+    /**
+     * Estimated heap held by the undo histories of all games reporting.
+     *
+     * @return the total in bytes
+     */
+    long getUndoBytes();
+
+    /**
+     * One call in this many is timed; the rest are only counted.
+     *
+     * @return the sample interval, a power of two
+     */
+    int getSampleInterval();
+
+    /**
+     * Set how often calls are timed. Timing costs two clock reads, so
+     * a hot slide is best timed only now and then.
+     *
+     * @param interval 1 to time every call; rounded up to a power of two
+     */
+    void setSampleInterval(int interval);
+
+    /**
+     * Zero the counters and times. The gauges are kept.
+     */
+    void reset();
+}
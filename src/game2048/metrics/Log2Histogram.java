@@ -0,0 +1,108 @@
+package game2048.metrics;
+
+import java.util.concurrent.atomic.*;
+/***********************************************************************
+ * Log2Histogram class: Counts durations in 65 buckets, one per power
+ * of two, so a percentile is known to within a factor of two. Every
+ * counter is a LongAdder, which spreads updates from different threads
+ * over separate cells, so many threads can record at once without
+ * fighting over one cache line. No call allocates.
+ **********************************************************************/
+public class Log2Histogram {
+    /** Number of buckets: bucket b holds values below 2^b. */
+    private static final int BUCKETS = 65;
+
+    /** Number of values in each bucket. */
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    /** Sum and largest of the values. */
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Log2Histogram() {
+        for(int b = 0; b < BUCKETS; b++)
+            counts[b] = new LongAdder();
+    }
+
+    /*******************************************************************
+     * Count one duration.
+     *
+     * @param nanos the duration, negative values count as 0
+     * @return none
+     ******************************************************************/
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /*******************************************************************
+     * A method used to get the number of values counted.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getCount() {
+        long n = 0;
+        for(LongAdder c : counts)
+            n += c.sum();
+        return n;
+    }
+
+    /*******************************************************************
+     * A method used to get the mean of the values counted.
+     *
+     * @return the mean, 0 when nothing was counted
+     ******************************************************************/
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double)sum.sum() / n;
+    }
+
+    /*******************************************************************
+     * A method used to get the largest value counted.
+     *
+     * @return the largest value, 0 when nothing was counted
+     ******************************************************************/
+    public long getMax() {
+        return max.get();
+    }
+
+    /*******************************************************************
+     * Find a percentile of the values counted so far.
+     *
+     * @param percent 0 to 100
+     * @return the upper bound of the bucket holding the percentile, 0
+     * when nothing was counted
+     ******************************************************************/
+    public long getPercentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts[b].sum();
+            n += snapshot[b];
+        }
+        if(n == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(percent / 100 * n));
+        long seen = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if(seen >= rank)
+                return b == 64 ? Long.MAX_VALUE : (1L << b) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /*******************************************************************
+     * Forget every value counted. Values recorded during the call may
+     * or may not be kept.
+     *
+     * @return none
+     ******************************************************************/
+    public void reset() {
+        for(LongAdder c : counts)
+            c.reset();
+        sum.reset();
+        max.reset();
+    }
+}
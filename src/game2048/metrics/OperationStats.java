@@ -0,0 +1,118 @@
+package game2048.metrics;
+
+import java.beans.ConstructorProperties;
+/***********************************************************************
+ * OperationStats class: A snapshot of the counters of one instrumented
+ * Game2048 method. JMX clients see it as a composite attribute with
+ * one item per getter.
+ **********************************************************************/
+public class OperationStats {
+    private final long calls, failures, timed;
+    private final double meanNanos;
+    private final long p50Nanos, p99Nanos, maxNanos;
+
+    /*******************************************************************
+     * Create a snapshot. The parameter names let JMX rebuild one from
+     * its composite form.
+     *
+     * @param calls the number of calls
+     * @param failures the number of calls that did nothing or failed
+     * @param timed the number of calls timed
+     * @param meanNanos the mean time of the timed calls
+     * @param p50Nanos the median time
+     * @param p99Nanos the 99th percentile time
+     * @param maxNanos the longest time
+     ******************************************************************/
+    @ConstructorProperties({"calls", "failures", "timed", "meanNanos",
+            "p50Nanos", "p99Nanos", "maxNanos"})
+    public OperationStats(long calls, long failures, long timed,
+                          double meanNanos, long p50Nanos, long p99Nanos,
+                          long maxNanos) {
+        this.calls = calls;
+        this.failures = failures;
+        this.timed = timed;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of calls.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getCalls() {
+        return calls;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of calls that did nothing or failed:
+     * slides that moved no tile, random values with no empty cell and
+     * undos with nothing to undo.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getFailures() {
+        return failures;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of calls timed, one in each sample
+     * interval.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getTimed() {
+        return timed;
+    }
+
+    /*******************************************************************
+     * A method used to get the mean time of the timed calls.
+     *
+     * @return the mean in nanoseconds, 0 when none was timed
+     ******************************************************************/
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the median time, to within a factor of two.
+     *
+     * @return the time in nanoseconds
+     ******************************************************************/
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the 99th percentile time, to within a factor
+     * of two.
+     *
+     * @return the time in nanoseconds
+     ******************************************************************/
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /*******************************************************************
+     * A method used to get the longest time.
+     *
+     * @return the time in nanoseconds
+     ******************************************************************/
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /*******************************************************************
+     * Format the snapshot on one line.
+     *
+     * @return the text
+     * @Override
+     ******************************************************************/
+    public String toString() {
+        return String.format("calls %d failures %d timed %d mean %.0f ns "
+                + "p50 %d ns p99 %d ns max %d ns", calls, failures, timed,
+                meanNanos, p50Nanos, p99Nanos, maxNanos);
+    }
+}
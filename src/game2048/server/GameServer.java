@@ -0,0 +1,485 @@
+package game2048.server;
+
+import game2048.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+/***********************************************************************
+ * GameServer class: Hosts many Game2048 sessions in one JVM behind a
+ * localhost socket, speaking the binary Protocol. One thread runs a
+ * non-blocking NIO selector loop over every connection; requests are
+ * handled in the order they arrive, so no game is ever touched by two
+ * threads and no locks are needed.
+ *
+ * A connection may open up to Protocol.MAX_SESSIONS sessions, of
+ * Protocol.MAX_CELLS cells in all. Its sessions are ended when it
+ * disconnects, and a connection that fails while being set up is
+ * dropped on its own, leaving the others served. Replies go to the connection that sent the
+ * request; those a slow client has not read yet are buffered, and past
+ * MAX_PENDING bytes the server stops reading from that client until it
+ * catches up.
+ *
+ * Usage: GameServer [port]
+ **********************************************************************/
+public class GameServer implements Runnable, Closeable {
+    /** Default port. */
+    public static final int DEFAULT_PORT = 2048;
+    /** Bytes of replies buffered per connection before reading stops. */
+    private static final int MAX_PENDING = 1 << 20;
+    /** Size of the read buffer of a connection. */
+    private static final int READ_BUFFER = 8192;
+
+    /** Waits for socket events. */
+    private final Selector selector;
+    /** Listening socket. */
+    private final ServerSocketChannel listener;
+    /** Every open session by id. */
+    private final Map<Integer, Session> sessions = new HashMap<Integer, Session>();
+    /** Id of the next session. */
+    private int nextId = 1;
+    /** What the last move did; the selector thread is the only user. */
+    private final MoveResult lastMove = new MoveResult();
+    /** Set to stop the selector loop. */
+    private volatile boolean closed;
+    /** Number of open sessions. */
+    private volatile int sessionCount;
+    /** Number of MOVE requests handled. */
+    private final LongAdder moves = new LongAdder();
+
+    /*******************************************************************
+     * Create a server listening on a localhost port. Nothing is served
+     * until run is called.
+     *
+     * @param port the port, 0 for any free port
+     * @throws IOException when the port cannot be opened
+     ******************************************************************/
+    public GameServer(int port) throws IOException {
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /*******************************************************************
+     * A method used to get the port the server listens on.
+     *
+     * @return the port
+     ******************************************************************/
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /*******************************************************************
+     * A method used to get the number of open sessions.
+     *
+     * @return the session count
+     ******************************************************************/
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of moves handled so far.
+     *
+     * @return the move count
+     ******************************************************************/
+    public long getMoveCount() {
+        return moves.sum();
+    }
+
+    /*******************************************************************
+     * Serve connections until close is called. All sockets are closed
+     * on return.
+     *
+     * @return none
+     * @throws UncheckedIOException when the selector fails
+     ******************************************************************/
+    public void run() {
+        try {
+            while(!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(key.isValid() && key.isAcceptable())
+                        accept();
+                    else if(key.isValid())
+                        serve(key, (Connection)key.attachment());
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            for(SelectionKey key : selector.keys())
+                closeQuietly(key.channel());
+            closeQuietly(selector);
+        }
+    }
+
+    /*******************************************************************
+     * Stop the selector loop; run closes the sockets as it returns.
+     *
+     * @return none
+     ******************************************************************/
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /*******************************************************************
+     * Accept a waiting connection, if any. A connection that cannot be
+     * accepted or set up is closed and skipped; the listening socket
+     * stays registered, so the next one is tried on the next select.
+     *
+     * @return none
+     ******************************************************************/
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = listener.accept();
+            if(channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection c = new Connection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        }
+        catch(IOException ex) {
+            // e.g. out of file descriptors, or the client already reset
+            if(channel != null)
+                closeQuietly(channel);
+        }
+    }
+
+    /*******************************************************************
+     * Read and write what a connection is ready for. Any I/O or
+     * protocol error drops the connection.
+     *
+     * @param key the connection's selection key
+     * @param c the connection
+     * @return none
+     ******************************************************************/
+    private void serve(SelectionKey key, Connection c) {
+        try {
+            if(key.isReadable()) {
+                if(c.channel.read(c.in) < 0) {
+                    drop(c);
+                    return;
+                }
+                c.in.flip();
+                while(handle(c))
+                    ;
+                c.in.compact();
+            }
+            flush(c);
+        }
+        catch(IOException ex) {
+            drop(c);
+        }
+    }
+
+    /*******************************************************************
+     * Handle the next request in a connection's read buffer.
+     *
+     * @param c the connection
+     * @return true when a request was handled, false when the buffer
+     * does not hold a whole one
+     * @throws ProtocolException on an unknown opcode
+     ******************************************************************/
+    private boolean handle(Connection c) throws ProtocolException {
+        ByteBuffer in = c.in;
+        if(!in.hasRemaining())
+            return false;
+        byte op = in.get(in.position());
+        int size = Protocol.requestSize(op);
+        if(size < 0)
+            throw new ProtocolException("unknown opcode " + op);
+        if(in.remaining() < size)
+            return false;
+
+        in.get(); // the opcode
+        switch(op) {
+            case Protocol.NEW:
+                newGame(c, in.get() & 0xFF, in.get() & 0xFF, in.getInt(),
+                        in.getLong());
+                break;
+            case Protocol.MOVE:
+                move(c, in.getInt(), in.get());
+                break;
+            default:
+                closeSession(c, in.getInt());
+                break;
+        }
+        return true;
+    }
+
+    /*******************************************************************
+     * Start a session and send its first board.
+     *
+     * @param c the connection asking
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param winningValue the winning value
+     * @param seed seed of the random tiles
+     * @return none
+     ******************************************************************/
+    private void newGame(Connection c, int rows, int cols, int winningValue,
+                         long seed) {
+        Game2048 game = new Game2048(seed);
+        try {
+            game.resizeBoard(rows, cols, winningValue);
+        }
+        catch(IllegalArgumentException ex) {
+            sendError(c, 0, Protocol.BAD_REQUEST);
+            return;
+        }
+        if(c.sessions.size() >= Protocol.MAX_SESSIONS
+                || c.cells + rows * cols > Protocol.MAX_CELLS) {
+            sendError(c, 0, Protocol.TOO_MANY_SESSIONS);
+            return;
+        }
+        game.setUndoLimit(1); // sessions cannot undo
+        game.reset();
+
+        Session s = new Session(nextId++, game);
+        sessions.put(s.id, s);
+        c.sessions.add(s.id);
+        c.cells += s.shadow.length;
+        sessionCount = sessions.size();
+        sendBoard(c, s, null);
+    }
+
+    /*******************************************************************
+     * Slide the board of a session and send what changed. Only the
+     * connection that opened it may, so the board it was last sent
+     * stays the one the next reply is compared with.
+     *
+     * @param c the connection asking
+     * @param id the session id
+     * @param dir the SlideDirection ordinal
+     * @return none
+     ******************************************************************/
+    private void move(Connection c, int id, byte dir) {
+        Session s = c.sessions.contains(id) ? sessions.get(id) : null;
+        SlideDirection[] dirs = SlideDirection.values();
+        if(s == null)
+            sendError(c, id, Protocol.NO_SESSION);
+        else if(dir < 0 || dir >= dirs.length)
+            sendError(c, id, Protocol.BAD_REQUEST);
+        else {
+            moves.increment();
+            s.game.slide(dirs[dir], lastMove);
+            sendBoard(c, s, lastMove);
+        }
+    }
+
+    /*******************************************************************
+     * End a session. Only the connection that opened it may, so its
+     * session count and cells stay right.
+     *
+     * @param c the connection asking
+     * @param id the session id
+     * @return none
+     ******************************************************************/
+    private void closeSession(Connection c, int id) {
+        if(!c.sessions.remove((Integer)id)) {
+            sendError(c, id, Protocol.NO_SESSION);
+            return;
+        }
+        Session s = sessions.remove(id);
+        c.cells -= s.shadow.length;
+        sessionCount = sessions.size();
+        ByteBuffer out = reserve(c, Protocol.CLOSED_SIZE);
+        out.put(Protocol.CLOSED).putInt(id);
+    }
+
+    /*******************************************************************
+     * Queue a BOARD reply with the cells that changed since the last
+     * one sent for the session. After a move only the cells the move
+     * reports are compared, not the whole board.
+     *
+     * @param c the connection the reply goes to
+     * @param s the session
+     * @param move what the last move did, null to compare every cell
+     * @return none
+     ******************************************************************/
+    private void sendBoard(Connection c, Session s, MoveResult move) {
+        int n = s.shadow.length;
+        ByteBuffer out = reserve(c,
+                Protocol.BOARD_HEADER_SIZE + Protocol.CELL_SIZE * n);
+        out.put(Protocol.BOARD).putInt(s.id)
+                .put((byte)s.game.getStatus().ordinal())
+                .put((byte)(move != null && move.isMoved() ? 1 : 0));
+        int countAt = out.position();
+        out.putShort((short)0);
+        int count = 0;
+        if(move == null) {
+            for(int k = 0; k < n; k++)
+                count += sendCell(out, s, k);
+        }
+        else {
+            // a cell is sent once: after that it matches the shadow
+            for(int i = 0; i < move.getMoveCount(); i++) {
+                count += sendCell(out, s, move.getFrom(i));
+                count += sendCell(out, s, move.getTo(i));
+            }
+            if(move.getSpawnCell() >= 0)
+                count += sendCell(out, s, move.getSpawnCell());
+        }
+        out.putShort(countAt, (short)count);
+    }
+
+    /*******************************************************************
+     * Add a cell to a BOARD reply when it differs from what the client
+     * last saw.
+     *
+     * @param out the reply
+     * @param s the session
+     * @param k board index of the cell
+     * @return 1 when the cell was added, else 0
+     ******************************************************************/
+    private static int sendCell(ByteBuffer out, Session s, int k) {
+        byte code = s.game.getCellCode(k);
+        if(code == s.shadow[k])
+            return 0;
+        out.putShort((short)k).put(code);
+        s.shadow[k] = code;
+        return 1;
+    }
+
+    /*******************************************************************
+     * Queue an ERROR reply.
+     *
+     * @param c the connection
+     * @param id the session id of the request
+     * @param reason the error reason
+     * @return none
+     ******************************************************************/
+    private void sendError(Connection c, int id, byte reason) {
+        ByteBuffer out = reserve(c, Protocol.ERROR_SIZE);
+        out.put(Protocol.ERROR).putInt(id).put(reason);
+    }
+
+    /*******************************************************************
+     * Make room in a connection's write buffer.
+     *
+     * @param c the connection
+     * @param bytes the number of bytes about to be written
+     * @return the write buffer
+     ******************************************************************/
+    private static ByteBuffer reserve(Connection c, int bytes) {
+        if(c.out.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(2 * c.out.capacity(), c.out.position() + bytes));
+            c.out.flip();
+            bigger.put(c.out);
+            c.out = bigger;
+        }
+        return c.out;
+    }
+
+    /*******************************************************************
+     * Write as much of the queued replies as the socket takes, and
+     * choose what to wait for next: more requests, or room to write
+     * when replies are left over.
+     *
+     * @param c the connection
+     * @return none
+     * @throws IOException when the socket fails
+     ******************************************************************/
+    private void flush(Connection c) throws IOException {
+        c.out.flip();
+        c.channel.write(c.out);
+        c.out.compact();
+
+        int pending = c.out.position();
+        int ops = pending > 0 ? SelectionKey.OP_WRITE : 0;
+        if(pending < MAX_PENDING)
+            ops |= SelectionKey.OP_READ;
+        if(c.key.interestOps() != ops)
+            c.key.interestOps(ops);
+    }
+
+    /*******************************************************************
+     * Close a connection and end its sessions.
+     *
+     * @param c the connection
+     * @return none
+     ******************************************************************/
+    private void drop(Connection c) {
+        for(int id : c.sessions)
+            sessions.remove(id);
+        sessionCount = sessions.size();
+        c.key.cancel();
+        closeQuietly(c.channel);
+    }
+
+    /*******************************************************************
+     * Close something, ignoring errors.
+     *
+     * @param resource what to close
+     * @return none
+     ******************************************************************/
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        }
+        catch(IOException ex) {
+            // nothing left to do with it
+        }
+    }
+
+    /*******************************************************************
+     * Connection class: One client socket and its buffers.
+     *******************************************************************/
+    private static class Connection {
+        /** The socket. */
+        final SocketChannel channel;
+        /** The socket's key in the selector. */
+        SelectionKey key;
+        /** Requests read but not yet handled. */
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+        /** Replies not yet written. */
+        ByteBuffer out = ByteBuffer.allocate(READ_BUFFER);
+        /** Sessions opened on this connection. */
+        final Set<Integer> sessions = new HashSet<Integer>();
+        /** Board cells of those sessions. */
+        int cells;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /*******************************************************************
+     * Session class: One game and the board its client last saw.
+     *******************************************************************/
+    private static class Session {
+        /** Session id. */
+        final int id;
+        /** The game. */
+        final Game2048 game;
+        /** Cell codes as of the last reply. */
+        final byte[] shadow;
+
+        Session(int id, Game2048 game) {
+            this.id = id;
+            this.game = game;
+            this.shadow = new byte[game.getRows() * game.getCols()];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer server = new GameServer(port);
+        System.out.println("listening on localhost:" + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,230 @@
+package game2048.server;
+
+import game2048.*;
+import org.junit.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import static org.junit.Assert.*;
+
+public class GameServerTester {
+    private final static int GAME_GOAL = 2048;
+    private static Random gen;
+    private int NROWS, NCOLS;
+    private GameServer server;
+    private Thread serverThread;
+
+    @BeforeClass
+    public static void globalSetup()
+    {
+        gen = new Random();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        NROWS = gen.nextInt(8) + 3; /* 3-10 */
+        NCOLS = gen.nextInt(8) + 3;
+        server = new GameServer(0);
+        serverThread = new Thread(server, "server");
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        serverThread.join();
+    }
+
+    @Test(timeout = 5000)
+    public void newMoveCloseRoundTrip() throws IOException
+    {
+        long seed = gen.nextLong();
+        Game2048 game = new Game2048(seed);
+        game.resizeBoard(NROWS, NCOLS, GAME_GOAL);
+        game.reset();
+        byte[] board = new byte[NROWS * NCOLS];
+        SlideDirection[] dirs = SlideDirection.values();
+
+        try (Client client = new Client()) {
+            client.newGame(NROWS, NCOLS, seed);
+            assertEquals(Protocol.BOARD, client.readOp());
+            int id = client.in.readInt();
+            assertEquals(GameStatus.IN_PROGRESS.ordinal(), client.readBoard(board));
+            assertArrayEquals(game.getCellCodes(), board);
+            assertEquals(1, server.getSessionCount());
+
+            for (int n = 0; n < 50; n++) {
+                SlideDirection d = dirs[gen.nextInt(dirs.length)];
+                client.move(id, d);
+                boolean moved = game.slide(d);
+                assertEquals(Protocol.BOARD, client.readOp());
+                assertEquals(id, client.in.readInt());
+                assertEquals(game.getStatus().ordinal(), client.readBoard(board));
+                assertEquals(moved, client.lastMoved);
+                assertArrayEquals("after move " + n, game.getCellCodes(), board);
+            }
+            assertEquals(50, server.getMoveCount());
+
+            client.closeGame(id);
+            assertEquals(Protocol.CLOSED, client.readOp());
+            assertEquals(id, client.in.readInt());
+            client.move(id, SlideDirection.LEFT);
+            assertEquals(Protocol.ERROR, client.readOp());
+            assertEquals(id, client.in.readInt());
+            assertEquals(Protocol.NO_SESSION, client.in.readByte());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void sessionsOfAConnectionAreCapped() throws IOException
+    {
+        int side = Protocol.MAX_SIDE;
+        int fit = Math.min(Protocol.MAX_SESSIONS,
+                Protocol.MAX_CELLS / (side * side));
+        byte[] board = new byte[side * side];
+        try (Client client = new Client(); Client other = new Client()) {
+            int[] ids = new int[fit];
+            for (int k = 0; k < fit; k++) {
+                client.newGame(side, side, gen.nextLong());
+                assertEquals(Protocol.BOARD, client.readOp());
+                ids[k] = client.in.readInt();
+                client.readBoard(board);
+            }
+            client.newGame(side, side, gen.nextLong());
+            assertEquals(Protocol.ERROR, client.readOp());
+            assertEquals(0, client.in.readInt());
+            assertEquals(Protocol.TOO_MANY_SESSIONS, client.in.readByte());
+
+            /* another connection has its own allowance, but cannot close
+               this one's sessions */
+            other.newGame(side, side, gen.nextLong());
+            assertEquals(Protocol.BOARD, other.readOp());
+            other.in.readInt();
+            other.readBoard(board);
+            other.closeGame(ids[0]);
+            assertEquals(Protocol.ERROR, other.readOp());
+            assertEquals(ids[0], other.in.readInt());
+            assertEquals(Protocol.NO_SESSION, other.in.readByte());
+
+            /* closing a session makes room again */
+            client.closeGame(ids[0]);
+            assertEquals(Protocol.CLOSED, client.readOp());
+            assertEquals(ids[0], client.in.readInt());
+            client.newGame(side, side, gen.nextLong());
+            assertEquals(Protocol.BOARD, client.readOp());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void otherConnectionsCannotMoveASession() throws IOException
+    {
+        long seed = gen.nextLong();
+        Game2048 game = new Game2048(seed);
+        game.resizeBoard(NROWS, NCOLS, GAME_GOAL);
+        game.reset();
+        byte[] board = new byte[NROWS * NCOLS];
+        SlideDirection[] dirs = SlideDirection.values();
+        try (Client client = new Client(); Client other = new Client()) {
+            client.newGame(NROWS, NCOLS, seed);
+            assertEquals(Protocol.BOARD, client.readOp());
+            int id = client.in.readInt();
+            client.readBoard(board);
+
+            for (int n = 0; n < 20; n++) {
+                other.move(id, dirs[gen.nextInt(dirs.length)]);
+                assertEquals(Protocol.ERROR, other.readOp());
+                assertEquals(id, other.in.readInt());
+                assertEquals(Protocol.NO_SESSION, other.in.readByte());
+
+                /* the owner's board is left as it was */
+                SlideDirection d = dirs[gen.nextInt(dirs.length)];
+                client.move(id, d);
+                game.slide(d);
+                assertEquals(Protocol.BOARD, client.readOp());
+                assertEquals(id, client.in.readInt());
+                client.readBoard(board);
+                assertArrayEquals("after move " + n, game.getCellCodes(), board);
+            }
+            assertEquals(20, server.getMoveCount());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void droppedConnectionLeavesTheOthersServed() throws IOException
+    {
+        byte[] board = new byte[NROWS * NCOLS];
+        try (Client client = new Client()) {
+            /* a client that resets its connection at once */
+            Socket reset = new Socket(InetAddress.getLoopbackAddress(),
+                    server.getPort());
+            reset.setSoLinger(true, 0);
+            reset.close();
+
+            client.newGame(NROWS, NCOLS, gen.nextLong());
+            assertEquals(Protocol.BOARD, client.readOp());
+            client.in.readInt();
+            client.readBoard(board);
+            try (Client late = new Client()) {
+                late.newGame(NROWS, NCOLS, gen.nextLong());
+                assertEquals(Protocol.BOARD, late.readOp());
+            }
+        }
+    }
+
+    /* a blocking client of the server */
+    private class Client implements Closeable {
+        final Socket socket;
+        final DataOutputStream out;
+        final DataInputStream in;
+        boolean lastMoved;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+        }
+
+        void newGame(int rows, int cols, long seed) throws IOException {
+            out.writeByte(Protocol.NEW);
+            out.writeByte(rows);
+            out.writeByte(cols);
+            out.writeInt(GAME_GOAL);
+            out.writeLong(seed);
+            out.flush();
+        }
+
+        void move(int id, SlideDirection dir) throws IOException {
+            out.writeByte(Protocol.MOVE);
+            out.writeInt(id);
+            out.writeByte(dir.ordinal());
+            out.flush();
+        }
+
+        void closeGame(int id) throws IOException {
+            out.writeByte(Protocol.CLOSE);
+            out.writeInt(id);
+            out.flush();
+        }
+
+        byte readOp() throws IOException {
+            return in.readByte();
+        }
+
+        /* read the rest of a BOARD reply into board; returns the status */
+        int readBoard(byte[] board) throws IOException {
+            int status = in.readUnsignedByte();
+            lastMoved = in.readUnsignedByte() != 0;
+            for (int count = in.readUnsignedShort(); count > 0; count--) {
+                int k = in.readUnsignedShort();
+                board[k] = in.readByte();
+            }
+            return status;
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package game2048.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+/***********************************************************************
+ * LatencyHistogram class: Counts durations in buckets that double in
+ * width, each power of two split into 8 equal sub-buckets, so any
+ * percentile is known to within about 12% with a fixed 500 counters.
+ * Any number of threads may record at once; no call allocates.
+ **********************************************************************/
+public class LatencyHistogram {
+    /** Values below this get one bucket each. */
+    private static final int LINEAR = 16;
+    /** Sub-buckets per power of two, as a shift. */
+    private static final int SUB_BITS = 3;
+    /** Number of buckets, enough for any non-negative long. */
+    private static final int BUCKETS = LINEAR + (63 - 4) * (1 << SUB_BITS);
+
+    /** Number of values in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /*******************************************************************
+     * Count one duration.
+     *
+     * @param nanos the duration, negative values count as 0
+     * @return none
+     ******************************************************************/
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /*******************************************************************
+     * Find the bucket of a value.
+     *
+     * @param v a value, not negative
+     * @return the bucket index
+     ******************************************************************/
+    private static int bucket(long v) {
+        if(v < LINEAR)
+            return (int)v;
+        int e = 63 - Long.numberOfLeadingZeros(v); // at least 4
+        int sub = (int)(v >>> (e - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return LINEAR + ((e - 4) << SUB_BITS) + sub;
+    }
+
+    /*******************************************************************
+     * Find the largest value of a bucket.
+     *
+     * @param b the bucket index
+     * @return the largest value counted in it
+     ******************************************************************/
+    private static long upperBound(int b) {
+        if(b < LINEAR)
+            return b;
+        int e = ((b - LINEAR) >> SUB_BITS) + 4;
+        long sub = (b - LINEAR) & ((1 << SUB_BITS) - 1);
+        long width = 1L << (e - SUB_BITS);
+        return ((1L << SUB_BITS) + sub) * width + width - 1;
+    }
+
+    /*******************************************************************
+     * A method used to get the number of values counted.
+     *
+     * @return the count
+     ******************************************************************/
+    public long getCount() {
+        long n = 0;
+        for(int b = 0; b < BUCKETS; b++)
+            n += counts.get(b);
+        return n;
+    }
+
+    /*******************************************************************
+     * Find a percentile of the values counted so far.
+     *
+     * @param percent 0 to 100
+     * @return the upper bound of the bucket holding the percentile, 0
+     * when nothing was counted
+     ******************************************************************/
+    public long getPercentile(double percent) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            snapshot[b] = counts.get(b);
+            n += snapshot[b];
+        }
+        if(n == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(percent / 100 * n));
+        long seen = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            seen += snapshot[b];
+            if(seen >= rank)
+                return upperBound(b);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /*******************************************************************
+     * Move every value counted so far into a new histogram, leaving
+     * this one empty. Each bucket is emptied in one atomic step, so a
+     * value recorded meanwhile lands in exactly one of the two.
+     *
+     * @return the values taken
+     ******************************************************************/
+    public LatencyHistogram drain() {
+        LatencyHistogram taken = new LatencyHistogram();
+        for(int b = 0; b < BUCKETS; b++)
+            taken.counts.set(b, counts.getAndSet(b, 0));
+        return taken;
+    }
+
+    /*******************************************************************
+     * Count every value of another histogram as well.
+     *
+     * @param other the histogram to add, not changed
+     * @return none
+     ******************************************************************/
+    public void add(LatencyHistogram other) {
+        for(int b = 0; b < BUCKETS; b++)
+            counts.addAndGet(b, other.counts.get(b));
+    }
+
+    /*******************************************************************
+     * Forget every value counted.
+     *
+     * @return none
+     ******************************************************************/
+    public void reset() {
+        for(int b = 0; b < BUCKETS; b++)
+            counts.set(b, 0);
+    }
+}
@@ -0,0 +1,351 @@
+package game2048.server;
+
+import game2048.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+/***********************************************************************
+ * LoadGenerator class: Plays random games against a GameServer from
+ * many connections at once and reports the open sessions, moves per
+ * second and move latency (p50, p99, max) of every interval, and of
+ * the whole run after the warm-up at the end.
+ *
+ * Each connection runs on its own thread with one request in flight:
+ * it sends a MOVE for its next session in turn, waits for the reply and
+ * records the round trip. Finished games are closed and replaced, so
+ * the number of sessions stays constant.
+ *
+ * With --embedded the server runs in this JVM on a free port, which
+ * measures everything on one machine with one command.
+ *
+ * Usage: LoadGenerator [--port P] [--embedded] [--connections C]
+ *   [--sessions S] [--rows R] [--cols C] [--win W] [--seconds T]
+ *   [--warmup T] [--report-ms MS] [--seed S] (the first T seconds,
+ *   default 2, are reported but left out of the summary)
+ **********************************************************************/
+public class LoadGenerator {
+    /** Server port. */
+    private final int port;
+    /** Number of connections, each on its own thread. */
+    private final int connections;
+    /** Sessions per connection. */
+    private final int sessionsPerConnection;
+    /** Board of every game. */
+    private final int rows, cols, winningValue;
+    /** Seed of the random moves and tiles. */
+    private final long seed;
+
+    /** Round trip time of the moves since the last report. */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /** Time to run before measuring, in nanoseconds. */
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(2);
+    /** Moves answered so far. */
+    private final LongAdder moves = new LongAdder();
+    /** Sessions open right now. */
+    private final LongAdder openSessions = new LongAdder();
+    /** Set to stop the connection threads. */
+    private volatile boolean stopped;
+
+    /*******************************************************************
+     * Create a load generator.
+     *
+     * @param port the server port on localhost
+     * @param connections the number of connections
+     * @param sessionsPerConnection the sessions of each connection
+     * @param rows the number of rows of each board
+     * @param cols the number of columns of each board
+     * @param winningValue the winning value of each game
+     * @param seed seed of the random moves and tiles
+     ******************************************************************/
+    public LoadGenerator(int port, int connections, int sessionsPerConnection,
+                         int rows, int cols, int winningValue, long seed) {
+        if(connections < 1 || sessionsPerConnection < 1)
+            throw new IllegalArgumentException();
+        this.port = port;
+        this.connections = connections;
+        this.sessionsPerConnection = sessionsPerConnection;
+        this.rows = rows;
+        this.cols = cols;
+        this.winningValue = winningValue;
+        this.seed = seed;
+    }
+
+    /*******************************************************************
+     * Set how long the load runs before it is measured. The warm-up is
+     * reported like any interval but left out of the summary.
+     *
+     * @param seconds the warm-up time, 0 for none
+     * @return none
+     ******************************************************************/
+    public void setWarmupSeconds(long seconds) {
+        if(seconds < 0)
+            throw new IllegalArgumentException();
+        warmupNanos = TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /*******************************************************************
+     * Warm up, then run the load for a while, printing a line for
+     * every interval and a summary of the time after the warm-up at the
+     * end. Each line shows the latency of its own interval only.
+     *
+     * @param seconds how long to run after the warm-up
+     * @param reportMillis time between progress lines
+     * @param out where the lines go
+     * @return none
+     * @throws InterruptedException when interrupted while waiting
+     ******************************************************************/
+    public void run(long seconds, long reportMillis, PrintStream out)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<Thread>(connections);
+        for(int t = 0; t < connections; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> connectionLoop(index), "load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+        boolean measuring = warmupNanos == 0;
+        long measuredFrom = start;
+        LatencyHistogram measured = new LatencyHistogram();
+        long measuredMoves = 0;
+        long lastMoves = 0;
+        long lastTime = start;
+        while(System.nanoTime() < end) {
+            // the warm-up's last interval ends with it
+            long until = measuring ? end : measureStart;
+            long left = TimeUnit.NANOSECONDS.toMillis(until - System.nanoTime());
+            Thread.sleep(Math.max(1, Math.min(reportMillis, left)));
+            long now = System.nanoTime();
+            long m = moves.sum();
+            LatencyHistogram interval = latency.drain();
+            if(measuring) {
+                measured.add(interval);
+                measuredMoves += m - lastMoves;
+            }
+            report(out, measuring ? "progress" : "warmup", m - lastMoves,
+                    (m - lastMoves) * 1e9 / (now - lastTime), interval);
+            lastMoves = m;
+            lastTime = now;
+            if(!measuring && now >= measureStart) {
+                measuring = true;
+                measuredFrom = now;
+            }
+        }
+
+        stopped = true;
+        for(Thread thread : threads)
+            thread.join();
+        report(out, "done", measuredMoves,
+                measuredMoves * 1e9 / Math.max(1, lastTime - measuredFrom),
+                measured);
+    }
+
+    /*******************************************************************
+     * Print one line of results.
+     *
+     * @param out where the line goes
+     * @param label first word of the line
+     * @param count the moves the line covers
+     * @param movesPerSecond the move rate to show
+     * @param times round trip times of the moves the line covers
+     * @return none
+     ******************************************************************/
+    private void report(PrintStream out, String label, long count,
+                        double movesPerSecond, LatencyHistogram times) {
+        out.printf("%s sessions %d moves %d %.0f moves/s latency " +
+                        "p50 %.1f us p99 %.1f us max %.1f us%n",
+                label, openSessions.sum(), count, movesPerSecond,
+                times.getPercentile(50) / 1e3,
+                times.getPercentile(99) / 1e3,
+                times.getPercentile(100) / 1e3);
+    }
+
+    /*******************************************************************
+     * Body of a connection thread: open the sessions, then move each in
+     * turn until stopped.
+     *
+     * @param index the connection number
+     * @return none
+     ******************************************************************/
+    private void connectionLoop(int index) {
+        SplittableRandom random = new SplittableRandom(seed + index);
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+
+            int[] ids = new int[sessionsPerConnection];
+            for(int s = 0; s < ids.length; s++)
+                ids[s] = newGame(out, in, random.nextLong());
+
+            for(int s = 0; !stopped; s = (s + 1) % ids.length) {
+                long sent = System.nanoTime();
+                out.writeByte(Protocol.MOVE);
+                out.writeInt(ids[s]);
+                out.writeByte(random.nextInt(SlideDirection.values().length));
+                out.flush();
+                int status = readBoard(in, ids[s]);
+                latency.record(System.nanoTime() - sent);
+                moves.increment();
+
+                if(status != GameStatus.IN_PROGRESS.ordinal()) {
+                    closeGame(out, in, ids[s]);
+                    ids[s] = newGame(out, in, random.nextLong());
+                }
+            }
+
+            for(int id : ids)
+                closeGame(out, in, id);
+        }
+        catch(IOException ex) {
+            System.err.println("connection " + index + ": " + ex);
+        }
+    }
+
+    /*******************************************************************
+     * Open a session and wait for its first board.
+     *
+     * @param out the request stream
+     * @param in the reply stream
+     * @param gameSeed seed of the game's random tiles
+     * @return the session id
+     * @throws IOException on a socket error or an unexpected reply
+     ******************************************************************/
+    private int newGame(DataOutputStream out, DataInputStream in,
+                        long gameSeed) throws IOException {
+        out.writeByte(Protocol.NEW);
+        out.writeByte(rows);
+        out.writeByte(cols);
+        out.writeInt(winningValue);
+        out.writeLong(gameSeed);
+        out.flush();
+        int id = expect(in, Protocol.BOARD);
+        skipBoard(in);
+        openSessions.increment();
+        return id;
+    }
+
+    /*******************************************************************
+     * End a session and wait for the server to confirm.
+     *
+     * @param out the request stream
+     * @param in the reply stream
+     * @param id the session id
+     * @return none
+     * @throws IOException on a socket error or an unexpected reply
+     ******************************************************************/
+    private void closeGame(DataOutputStream out, DataInputStream in, int id)
+            throws IOException {
+        out.writeByte(Protocol.CLOSE);
+        out.writeInt(id);
+        out.flush();
+        expect(in, Protocol.CLOSED);
+        openSessions.decrement();
+    }
+
+    /*******************************************************************
+     * Read a BOARD reply for a session.
+     *
+     * @param in the reply stream
+     * @param id the session id expected
+     * @return the GameStatus ordinal
+     * @throws IOException on a socket error or an unexpected reply
+     ******************************************************************/
+    private static int readBoard(DataInputStream in, int id) throws IOException {
+        if(expect(in, Protocol.BOARD) != id)
+            throw new ProtocolException("reply for another session");
+        return skipBoard(in);
+    }
+
+    /*******************************************************************
+     * Read the rest of a BOARD reply after its session id; the changed
+     * cells are read and dropped.
+     *
+     * @param in the reply stream
+     * @return the GameStatus ordinal
+     * @throws IOException on a socket error
+     ******************************************************************/
+    private static int skipBoard(DataInputStream in) throws IOException {
+        int status = in.readUnsignedByte();
+        in.readUnsignedByte(); // moved
+        int count = in.readUnsignedShort();
+        in.skipNBytes((long)count * Protocol.CELL_SIZE);
+        return status;
+    }
+
+    /*******************************************************************
+     * Read the opcode and session id of a reply.
+     *
+     * @param in the reply stream
+     * @param op the opcode expected
+     * @return the session id
+     * @throws IOException on a socket error, an ERROR reply or another
+     * opcode
+     ******************************************************************/
+    private static int expect(DataInputStream in, byte op) throws IOException {
+        byte got = in.readByte();
+        int id = in.readInt();
+        if(got == Protocol.ERROR)
+            throw new ProtocolException("error " + in.readByte() +
+                    " for session " + id);
+        if(got != op)
+            throw new ProtocolException("unexpected reply " + got);
+        return id;
+    }
+
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        int port = GameServer.DEFAULT_PORT;
+        boolean embedded = false;
+        int connections = 4, sessions = 250;
+        int rows = 4, cols = 4, win = 2048;
+        long seconds = 10, warmup = 2, reportMillis = 1000;
+        long seed = System.nanoTime();
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--embedded": embedded = true; break;
+                case "--connections": connections = Integer.parseInt(args[++i]); break;
+                case "--sessions": sessions = Integer.parseInt(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--cols": cols = Integer.parseInt(args[++i]); break;
+                case "--win": win = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Long.parseLong(args[++i]); break;
+                case "--warmup": warmup = Long.parseLong(args[++i]); break;
+                case "--report-ms": reportMillis = Long.parseLong(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        GameServer server = null;
+        if(embedded) {
+            server = new GameServer(0);
+            port = server.getPort();
+            Thread thread = new Thread(server, "game-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        LoadGenerator load = new LoadGenerator(port, connections, sessions,
+                rows, cols, win, seed);
+        load.setWarmupSeconds(warmup);
+        load.run(seconds, reportMillis, System.out);
+        if(server != null) {
+            System.out.println("server moves " + server.getMoveCount() +
+                    " sessions " + server.getSessionCount());
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package game2048.server;
+
+/***********************************************************************
+ * Protocol class: The binary messages between GameServer and its
+ * clients. All numbers are big-endian, the ByteBuffer default.
+ *
+ * Requests, each starting with its one byte opcode:
+ *   NEW   rows:u8 cols:u8 winningValue:i32 seed:i64
+ *   MOVE  session:i32 direction:u8 (SlideDirection ordinal)
+ *   CLOSE session:i32
+ *
+ * Replies:
+ *   BOARD  session:i32 status:u8 (GameStatus ordinal) moved:u8
+ *          count:u16, then count times cell:u16 code:u8
+ *   CLOSED session:i32
+ *   ERROR  session:i32 reason:u8
+ *
+ * A BOARD reply lists only the cells that changed since the last reply
+ * for the session, as cell codes (0 for empty, log2(value) + 1 for a
+ * tile). The reply to NEW lists every tile of the new board.
+ *
+ * A connection may hold at most MAX_SESSIONS sessions of MAX_CELLS
+ * cells together; a NEW past either limit gets TOO_MANY_SESSIONS.
+ **********************************************************************/
+public final class Protocol {
+    /** Request: start a game. */
+    public static final byte NEW = 1;
+    /** Request: slide the board of a session. */
+    public static final byte MOVE = 2;
+    /** Request: end a session. */
+    public static final byte CLOSE = 3;
+
+    /** Reply: status and changed cells of a session. */
+    public static final byte BOARD = 1;
+    /** Reply: the session was ended. */
+    public static final byte CLOSED = 3;
+    /** Reply: the request failed. */
+    public static final byte ERROR = 127;
+
+    /** Error reason: no session with that id. */
+    public static final byte NO_SESSION = 1;
+    /** Error reason: bad board size, winning value or direction. */
+    public static final byte BAD_REQUEST = 2;
+    /** Error reason: the connection holds too many sessions or cells. */
+    public static final byte TOO_MANY_SESSIONS = 3;
+
+    /** Bytes of each request, opcode included. */
+    public static final int NEW_SIZE = 15;
+    public static final int MOVE_SIZE = 6;
+    public static final int CLOSE_SIZE = 5;
+    /** Bytes of a BOARD reply before its cell list. */
+    public static final int BOARD_HEADER_SIZE = 9;
+    /** Bytes of each cell of a BOARD reply. */
+    public static final int CELL_SIZE = 3;
+    /** Bytes of a CLOSED reply. */
+    public static final int CLOSED_SIZE = 5;
+    /** Bytes of an ERROR reply. */
+    public static final int ERROR_SIZE = 6;
+
+    /** Largest number of rows or columns of a board. */
+    public static final int MAX_SIDE = 255;
+    /** Most open sessions of one connection. */
+    public static final int MAX_SESSIONS = 1024;
+    /** Most board cells of the open sessions of one connection. */
+    public static final int MAX_CELLS = 1 << 20;
+
+    private Protocol() {
+    }
+
+    /*******************************************************************
+     * Find the size of a request from its opcode.
+     *
+     * @param op the opcode
+     * @return the number of bytes, or -1 for an unknown opcode
+     ******************************************************************/
+    public static int requestSize(byte op) {
+        switch(op) {
+            case NEW:
+                return NEW_SIZE;
+            case MOVE:
+                return MOVE_SIZE;
+            case CLOSE:
+                return CLOSE_SIZE;
+            default:
+                return -1;
+        }
+    }
+}
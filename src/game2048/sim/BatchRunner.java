@@ -0,0 +1,468 @@
+package game2048.sim;
+
+import game2048.*;
+import game2048.ai.*;
+import game2048.journal.*;
+import game2048.metrics.GameMetrics;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+import javax.management.JMException;
+/***********************************************************************
+ * BatchRunner class: Plays many headless games in parallel with a move
+ * policy and streams the results while they come in: win rate, moves
+ * per game, largest tiles, games per second and moves per second.
+ *
+ * Only running totals are kept, so memory stays flat however many
+ * games are played. Each worker thread reuses one policy for all of
+ * its games; each game gets a Game2048 seeded from its number.
+ *
+ * Usage: BatchRunner [--games N] [--rows R] [--cols C] [--win W]
+ *   [--threads T] [--policy random|expectimax:DEPTH|montecarlo:MILLIS]
+ *   [--seed S] [--max-moves M] [--report-ms MS] [--each]
+ *   [--journal DIR] [--jmx] (--jmx registers a GameMetrics MBean
+ *   while the games run and prints its counters at the end)
+ **********************************************************************/
+public class BatchRunner {
+    /** Largest tile code counted in the tile histogram. */
+    private static final int MAX_CODE = 31;
+
+    /** Number of games to play. */
+    private final long games;
+    /** Board of every game. */
+    private final int rows, cols, winningValue;
+    /** Number of worker threads. */
+    private final int threads;
+    /** Creates the policy of each worker thread. */
+    private final Supplier<MovePolicy> policies;
+    /** Where the results go. */
+    private final PrintStream out;
+    /** Most moves of a game before it is stopped, 0 for no limit. */
+    private int maxMoves;
+    /** Time between progress lines. */
+    private long reportMillis = 1000;
+    /** True to print one line per finished game. */
+    private boolean eachGame;
+    /** Seed of the random tiles; game number id uses seed + id. */
+    private long seed = System.nanoTime();
+    /** Directory of the move journals, null to record none. */
+    private Path journalDir;
+    /** Metrics every game reports to, null for none. */
+    private GameMetrics metrics;
+
+    /** Next game number to hand out. */
+    private final AtomicLong nextGame = new AtomicLong();
+    /** Set when a worker fails, so the others start no new game. */
+    private volatile boolean failed;
+    /** Running totals. */
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder totalMoves = new LongAdder();
+    private final LongAdder totalScore = new LongAdder();
+    /** Number of games ending with each largest tile code. */
+    private final AtomicLongArray maxTiles = new AtomicLongArray(MAX_CODE + 1);
+
+    /*******************************************************************
+     * Create a runner.
+     *
+     * @param games the number of games to play
+     * @param rows the number of rows of each board
+     * @param cols the number of columns of each board
+     * @param winningValue the winning value of each game
+     * @param threads the number of worker threads
+     * @param policies creates the policy of each worker thread
+     * @param out where the results are printed
+     ******************************************************************/
+    public BatchRunner(long games, int rows, int cols, int winningValue,
+                       int threads, Supplier<MovePolicy> policies,
+                       PrintStream out) {
+        if(games < 0 || threads < 1)
+            throw new IllegalArgumentException();
+        this.games = games;
+        this.rows = rows;
+        this.cols = cols;
+        this.winningValue = winningValue;
+        this.threads = threads;
+        this.policies = policies;
+        this.out = out;
+    }
+
+    /*******************************************************************
+     * Set the most moves of a game; longer games are stopped and
+     * counted as not won.
+     *
+     * @param maxMoves the move count, 0 for no limit
+     * @return none
+     ******************************************************************/
+    public void setMaxMoves(int maxMoves) {
+        this.maxMoves = maxMoves;
+    }
+
+    /*******************************************************************
+     * Set the time between progress lines.
+     *
+     * @param reportMillis milliseconds
+     * @return none
+     ******************************************************************/
+    public void setReportMillis(long reportMillis) {
+        this.reportMillis = reportMillis;
+    }
+
+    /*******************************************************************
+     * Print one line per finished game as well as the progress lines.
+     *
+     * @param eachGame true to print every game
+     * @return none
+     ******************************************************************/
+    public void setEachGame(boolean eachGame) {
+        this.eachGame = eachGame;
+    }
+
+    /*******************************************************************
+     * Set the seed of the random tiles. Each game is seeded from it and
+     * its game number, so with a deterministic policy such as
+     * expectimax a game plays out the same whichever thread runs it.
+     *
+     * @param seed the seed
+     * @return none
+     ******************************************************************/
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /*******************************************************************
+     * Record every game to a move journal named game-ID.2048j, with its
+     * final board and status as the claimed outcome.
+     *
+     * @param journalDir the directory, created if missing; null to
+     * record none
+     * @return none
+     ******************************************************************/
+    public void setJournalDir(Path journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    /*******************************************************************
+     * Make every game report to a GameMetrics while it is played.
+     *
+     * @param metrics the metrics, null for none
+     * @return none
+     ******************************************************************/
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /*******************************************************************
+     * Play all the games, printing progress lines until the last one
+     * finishes and then a summary line. When a worker fails, the others
+     * finish the game they are playing and start no other.
+     *
+     * @return none
+     * @throws InterruptedException when interrupted while waiting
+     * @throws ExecutionException when a worker failed, e.g. to write a
+     * journal; its cause is the worker's exception
+     ******************************************************************/
+    public void run() throws InterruptedException, ExecutionException {
+        // check the board before starting any thread
+        new Game2048().resizeBoard(rows, cols, winningValue);
+        if(journalDir != null) {
+            try {
+                Files.createDirectories(journalDir);
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>(threads);
+        for(int t = 0; t < threads; t++)
+            results.add(workers.submit(this::playGames));
+        workers.shutdown();
+
+        while(!workers.awaitTermination(reportMillis, TimeUnit.MILLISECONDS))
+            report("progress", start);
+        try {
+            for(Future<?> result : results)
+                result.get();
+        }
+        catch(ExecutionException ex) {
+            report("failed", start);
+            throw ex;
+        }
+        report("done", start);
+    }
+
+    /*******************************************************************
+     * Body of a worker thread: play games until none are left, then
+     * close the worker's policy.
+     *
+     * @return none
+     ******************************************************************/
+    private void playGames() {
+        try(MovePolicy policy = policies.get()) {
+            playUntilDone(policy);
+        }
+        catch(RuntimeException | Error ex) {
+            failed = true;
+            throw ex;
+        }
+    }
+
+    /*******************************************************************
+     * Play games with a policy until none are left or a worker failed.
+     *
+     * @param policy chooses the moves
+     * @return none
+     ******************************************************************/
+    private void playUntilDone(MovePolicy policy) {
+        long id;
+        while(!failed && (id = nextGame.getAndIncrement()) < games) {
+            Game2048 game = new Game2048(seed + id);
+            game.setMetrics(metrics);
+            game.resizeBoard(rows, cols, winningValue);
+            game.setUndoLimit(1); // nothing is undone here
+            game.reset();
+
+            int moves;
+            try {
+                if(journalDir == null)
+                    moves = playGame(game, policy, null);
+                else {
+                    Path path = journalDir.resolve("game-" + id +
+                            MoveJournal.EXTENSION);
+                    try(MoveJournalWriter journal = new MoveJournalWriter(path,
+                            seed + id, rows, cols, winningValue)) {
+                        moves = playGame(game, policy, journal);
+                        journal.setOutcome(game);
+                    }
+                }
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            // take the finished game out of the gauges
+            game.setMetrics(null);
+
+            int maxTile = game.getMaxTile();
+            int maxCode = maxTile == 0 ? 0 :
+                    Math.min(Integer.numberOfTrailingZeros(maxTile) + 1, MAX_CODE);
+            boolean won = game.getStatus() == GameStatus.USER_WON;
+            finished.increment();
+            totalMoves.add(moves);
+            totalScore.add(game.getScore());
+            maxTiles.incrementAndGet(maxCode);
+            if(won)
+                wins.increment();
+            if(eachGame) {
+                synchronized(out) {
+                    out.printf("game %d %s moves %d score %d max tile %d%n",
+                            id, won ? "won" : "lost", moves, game.getScore(),
+                            maxTile);
+                }
+            }
+        }
+    }
+
+    /*******************************************************************
+     * Play one game to its end or the move limit.
+     *
+     * @param game the game, just reset
+     * @param policy chooses the moves
+     * @param journal records every slide, null for none
+     * @return the number of moves that changed the board
+     * @throws IOException when the journal cannot be written
+     ******************************************************************/
+    private int playGame(Game2048 game, MovePolicy policy,
+                         MoveJournalWriter journal) throws IOException {
+        SlideDirection[] dirs = SlideDirection.values();
+        int moves = 0;
+        while(game.getStatus() == GameStatus.IN_PROGRESS &&
+                (maxMoves == 0 || moves < maxMoves)) {
+            SlideDirection dir = policy.chooseMove(game);
+            if(dir == null)
+                break;
+            boolean moved = slide(game, dir, journal);
+            for(int d = 0; !moved && d < dirs.length; d++)
+                moved = slide(game, dirs[d], journal);
+            if(!moved)
+                break;
+            moves++;
+        }
+        return moves;
+    }
+
+    /*******************************************************************
+     * Slide a game's board and record the move.
+     *
+     * @param game the game
+     * @param dir the direction
+     * @param journal records the move, null for none
+     * @return true when the board changed
+     * @throws IOException when the journal cannot be written
+     ******************************************************************/
+    private static boolean slide(Game2048 game, SlideDirection dir,
+                                 MoveJournalWriter journal) throws IOException {
+        if(journal != null)
+            journal.append(dir);
+        return game.slide(dir);
+    }
+
+    /*******************************************************************
+     * Print the running totals.
+     *
+     * @param label first word of the line
+     * @param start System.nanoTime() at the start of the run
+     * @return none
+     ******************************************************************/
+    private void report(String label, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long n = finished.sum();
+        long m = totalMoves.sum();
+        StringBuilder tiles = new StringBuilder();
+        for(int c = 1; c <= MAX_CODE; c++) {
+            long count = maxTiles.get(c);
+            if(count > 0)
+                tiles.append(' ').append(1L << (c - 1)).append(':').append(count);
+        }
+        synchronized(out) {
+            out.printf("%s games %d/%d win %.2f%% avg moves %.1f " +
+                            "avg score %.0f %.1f games/s %.0f moves/s " +
+                            "max tiles%s%n",
+                    label, n, games, n == 0 ? 0 : 100.0 * wins.sum() / n,
+                    n == 0 ? 0 : (double)m / n,
+                    n == 0 ? 0 : (double)totalScore.sum() / n, n / seconds,
+                    m / seconds, tiles);
+        }
+    }
+
+    /*******************************************************************
+     * Create a policy factory from its command line name.
+     *
+     * @param spec random, expectimax:DEPTH or montecarlo:MILLIS
+     * @param seed seed of the policies' random streams
+     * @return a factory giving each caller its own policy
+     * @throws IllegalArgumentException when the name is not known
+     ******************************************************************/
+    public static Supplier<MovePolicy> policy(String spec, long seed) {
+        String[] parts = spec.split(":");
+        SplittableRandom seeds = new SplittableRandom(seed);
+        switch(parts[0]) {
+            case "random":
+                return () -> {
+                    SplittableRandom random = split(seeds);
+                    SlideDirection[] dirs = SlideDirection.values();
+                    return game -> dirs[random.nextInt(dirs.length)];
+                };
+            case "expectimax": {
+                int depth = parts.length > 1 ? Integer.parseInt(parts[1]) : 2;
+                return () -> {
+                    ExpectimaxSearcher searcher = new ExpectimaxSearcher(depth);
+                    return searcher::bestMove;
+                };
+            }
+            case "montecarlo": {
+                int millis = parts.length > 1 ? Integer.parseInt(parts[1]) : 10;
+                return () -> {
+                    MonteCarloAdvisor advisor =
+                            new MonteCarloAdvisor(1, split(seeds).nextLong());
+                    advisor.setBudgetMillis(millis);
+                    return new MovePolicy() {
+                        @Override
+                        public SlideDirection chooseMove(Game2048 game) {
+                            return advisor.advise(game);
+                        }
+
+                        @Override
+                        public void close() {
+                            advisor.shutdown();
+                        }
+                    };
+                };
+            }
+            default:
+                throw new IllegalArgumentException("unknown policy " + spec);
+        }
+    }
+
+    /*******************************************************************
+     * Split a random stream shared by several threads.
+     *
+     * @param seeds the shared stream
+     * @return a new independent stream
+     ******************************************************************/
+    private static SplittableRandom split(SplittableRandom seeds) {
+        synchronized(seeds) {
+            return seeds.split();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException,
+            JMException {
+        long games = 1000;
+        int rows = 4, cols = 4, win = 2048;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String policy = "random";
+        long seed = System.nanoTime();
+        int maxMoves = 0;
+        long reportMillis = 1000;
+        boolean each = false;
+        Path journalDir = null;
+        boolean jmx = false;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--games": games = Long.parseLong(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--cols": cols = Integer.parseInt(args[++i]); break;
+                case "--win": win = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--policy": policy = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--max-moves": maxMoves = Integer.parseInt(args[++i]); break;
+                case "--report-ms": reportMillis = Long.parseLong(args[++i]); break;
+                case "--each": each = true; break;
+                case "--journal": journalDir = Paths.get(args[++i]); break;
+                case "--jmx": jmx = true; break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        BatchRunner runner = new BatchRunner(games, rows, cols, win, threads,
+                policy(policy, seed), System.out);
+        runner.setMaxMoves(maxMoves);
+        runner.setReportMillis(reportMillis);
+        runner.setEachGame(each);
+        runner.setSeed(seed);
+        runner.setJournalDir(journalDir);
+        GameMetrics metrics = null;
+        if(jmx) {
+            metrics = new GameMetrics();
+            metrics.register("BatchRunner");
+            runner.setMetrics(metrics);
+        }
+        int exitCode = 0;
+        try {
+            runner.run();
+        }
+        catch(ExecutionException ex) {
+            System.err.println("a worker failed: " + ex.getCause());
+            exitCode = 1;
+        }
+        if(metrics != null) {
+            System.out.println("slide " + metrics.getSlide());
+            System.out.println("placeRandomValue " + metrics.getPlaceRandomValue());
+            System.out.println("undo " + metrics.getUndo());
+            System.out.println("updateStatus " + metrics.getUpdateStatus());
+            metrics.unregister();
+        }
+        if(exitCode != 0)
+            System.exit(exitCode);
+    }
+}
@@ -0,0 +1,29 @@
+package game2048.sim;
+
+import game2048.Game2048;
+import game2048.SlideDirection;
+
+/**
+ * Chooses the next move of a headless game. A policy is used by one
+ * thread at a time; the batch runner creates one per worker thread and
+ * closes it when the worker's games are done.
+ */
+public interface MovePolicy extends AutoCloseable {
+    /**
+     * Choose the next move.
+     *
+     * @param game the game in progress; the policy must not change it
+     * @return the direction to slide, or null to give up. A direction
+     *  that does not change the board is replaced by the first one
+     *  that does.
+     */
+    SlideDirection chooseMove(Game2048 game);
+
+    /**
+     * Release what the policy holds, such as threads. Does nothing
+     * unless overridden.
+     */
+    @Override
+    default void close() {
+    }
+}
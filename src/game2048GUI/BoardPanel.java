@@ -0,0 +1,276 @@
+package game2048GUI;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.*;
+import game2048.*; // game logic package
+
+/*********************************************************************
+ * BoardPanel class: Paints the board of a Game2048 itself instead of
+ * through a grid of labels. Each tile value is drawn once per tile
+ * size into a cached image and then copied to the screen, and after
+ * a move only the tiles whose value changed are repainted. Tile
+ * positions are worked out again only when the panel or the board
+ * changes size.
+ *
+ * @author Owen Dunn
+ * @version 1.0
+ ********************************************************************/
+public class BoardPanel extends JComponent {
+    private final static long serialVersionUID = 1L;
+    /** gap between tiles and around the board, in pixels */
+    private final static int GAP = 4;
+    /** preferred tile size, and the smallest the board asks for */
+    private final static int PREFERRED_TILE = 100, MIN_TILE = 12;
+    /** largest preferred board width or height */
+    private final static int PREFERRED_BOARD = 560;
+    /** colors of the gaps, the empty cells and the tile text */
+    private final static Color BOARD_COLOR = new Color(187, 173, 160),
+            EMPTY_COLOR = new Color(205, 193, 180),
+            DARK_TEXT = new Color(119, 110, 101);
+    /** tile colors by cell code; larger codes use the last one */
+    private final static Color[] TILE_COLORS = {
+            EMPTY_COLOR,
+            new Color(238, 228, 218), new Color(238, 228, 218),
+            new Color(237, 224, 200), new Color(242, 177, 121),
+            new Color(245, 149, 99), new Color(246, 124, 95),
+            new Color(246, 94, 59), new Color(237, 207, 114),
+            new Color(237, 204, 97), new Color(237, 200, 80),
+            new Color(237, 197, 63), new Color(237, 194, 46),
+            new Color(60, 58, 50)};
+
+    /** the game shown */
+    private final Game2048 game;
+    /** cell codes currently painted, and the game's codes */
+    private byte[] shown, latest;
+    /** board size of shown */
+    private int rows, cols;
+    /** panel size the layout was worked out for, -1 for none yet */
+    private int layoutWidth = -1, layoutHeight = -1;
+    /** tile size and the position of the top left tile */
+    private int tileSize, left, top;
+    /** tile image by cell code, for tiles of size tileSize */
+    private Image[] tileImages = new Image[32];
+
+    /*****************************************************************
+     * Constructor for a panel showing a game.
+     *
+     * @param game the game shown
+     ****************************************************************/
+    public BoardPanel(Game2048 game) {
+        this.game = game;
+        setOpaque(true);
+        readBoard();
+    }
+
+    /*****************************************************************
+     * Copy the board size and cells from the game.
+     *
+     * @return none
+     ****************************************************************/
+    private void readBoard() {
+        rows = game.getRows();
+        cols = game.getCols();
+        shown = new byte[rows * cols];
+        latest = new byte[rows * cols];
+        game.copyCellCodes(shown);
+        layoutWidth = -1; // positions depend on rows and columns
+    }
+
+    /*****************************************************************
+     * Show the game's current board, repainting only the tiles that
+     * changed since the last call. When the board changed size the
+     * whole panel is laid out and painted again.
+     *
+     * @return none
+     ****************************************************************/
+    public void update() {
+        if(game.getRows() != rows || game.getCols() != cols) {
+            readBoard();
+            revalidate();
+            repaint();
+            return;
+        }
+        game.copyCellCodes(latest);
+        boolean laidOut = layoutWidth == getWidth()
+                && layoutHeight == getHeight();
+        for(int k = 0; k < latest.length; k++) {
+            byte code = latest[k];
+            if(code != shown[k]) {
+                shown[k] = code;
+                if(laidOut)
+                    repaint(left + (k % cols) * (tileSize + GAP),
+                            top + (k / cols) * (tileSize + GAP),
+                            tileSize, tileSize);
+            }
+        }
+        if(!laidOut)
+            repaint();
+    }
+
+    /*****************************************************************
+     * Show the board after a slide, looking only at the cells the
+     * slide reports instead of the whole board.
+     *
+     * @param move what the last slide of the game did
+     * @return none
+     ****************************************************************/
+    public void update(MoveResult move) {
+        if(game.getRows() != rows || game.getCols() != cols
+                || layoutWidth != getWidth() || layoutHeight != getHeight()) {
+            update();
+            return;
+        }
+        for(int i = 0; i < move.getMoveCount(); i++) {
+            updateCell(move.getFrom(i));
+            updateCell(move.getTo(i));
+        }
+        if(move.getSpawnCell() >= 0)
+            updateCell(move.getSpawnCell());
+    }
+
+    /*****************************************************************
+     * Repaint one tile if its value changed. The panel must be laid
+     * out for the current board.
+     *
+     * @param k board index of the cell
+     * @return none
+     ****************************************************************/
+    private void updateCell(int k) {
+        byte code = game.getCellCode(k);
+        if(code == shown[k])
+            return;
+        shown[k] = code;
+        repaint(left + (k % cols) * (tileSize + GAP),
+                top + (k / cols) * (tileSize + GAP), tileSize, tileSize);
+    }
+
+    /*****************************************************************
+     * A method used to get the preferred size: large tiles on small
+     * boards, shrinking so large boards still fit on the screen.
+     *
+     * @return the preferred size
+     * @Override
+     ****************************************************************/
+    public Dimension getPreferredSize() {
+        if(isPreferredSizeSet())
+            return super.getPreferredSize();
+        int tile = Math.max(MIN_TILE, Math.min(PREFERRED_TILE,
+                PREFERRED_BOARD / Math.max(rows, cols)));
+        return new Dimension(cols * (tile + GAP) + GAP,
+                rows * (tile + GAP) + GAP);
+    }
+
+    /*****************************************************************
+     * Work out the tile size and position for the current panel size,
+     * dropping the tile images when the tile size changes.
+     *
+     * @return none
+     ****************************************************************/
+    private void layoutTiles() {
+        layoutWidth = getWidth();
+        layoutHeight = getHeight();
+        int size = Math.max(1, Math.min((layoutWidth - GAP) / cols,
+                (layoutHeight - GAP) / rows) - GAP);
+        if(size != tileSize) {
+            tileSize = size;
+            tileImages = new Image[tileImages.length];
+        }
+        // center the board in the panel
+        left = (layoutWidth - cols * (tileSize + GAP) + GAP) / 2;
+        top = (layoutHeight - rows * (tileSize + GAP) + GAP) / 2;
+    }
+
+    /*****************************************************************
+     * Paint the tiles inside the clip from their cached images.
+     *
+     * @param g the graphics to paint with
+     * @return none
+     * @Override
+     ****************************************************************/
+    protected void paintComponent(Graphics g) {
+        if(layoutWidth != getWidth() || layoutHeight != getHeight())
+            layoutTiles();
+        Rectangle clip = g.getClipBounds();
+        if(clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g.setColor(BOARD_COLOR);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        // only the rows and columns the clip touches
+        int step = tileSize + GAP;
+        int firstRow = Math.max(0, (clip.y - top) / step);
+        int lastRow = Math.min(rows - 1,
+                (clip.y + clip.height - top) / step);
+        int firstCol = Math.max(0, (clip.x - left) / step);
+        int lastCol = Math.min(cols - 1,
+                (clip.x + clip.width - left) / step);
+        for(int r = firstRow; r <= lastRow; r++)
+            for(int c = firstCol; c <= lastCol; c++)
+                g.drawImage(tileImage(shown[r * cols + c]),
+                        left + c * step, top + r * step, null);
+    }
+
+    /*****************************************************************
+     * Get the image of a tile, drawing it the first time it is needed
+     * at the current tile size.
+     *
+     * @param code the cell code
+     * @return the image, tileSize pixels square
+     ****************************************************************/
+    private Image tileImage(int code) {
+        Image image = tileImages[code];
+        if(image == null) {
+            image = drawTile(code);
+            tileImages[code] = image;
+        }
+        return image;
+    }
+
+    /*****************************************************************
+     * Draw a tile: a rounded square in the tile's color with its value
+     * in the largest font that fits.
+     *
+     * @param code the cell code
+     * @return the image
+     ****************************************************************/
+    private Image drawTile(int code) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage image = gc != null ?
+                gc.createCompatibleImage(tileSize, tileSize) :
+                new BufferedImage(tileSize, tileSize,
+                        BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        // corners show the gap color behind the tile
+        g.setColor(BOARD_COLOR);
+        g.fillRect(0, 0, tileSize, tileSize);
+        g.setColor(TILE_COLORS[Math.min(code, TILE_COLORS.length - 1)]);
+        int arc = Math.max(2, tileSize / 8);
+        g.fillRoundRect(0, 0, tileSize, tileSize, arc, arc);
+
+        if(code > 0) {
+            String text = Integer.toString(1 << (code - 1));
+            Font font = getFont() != null ? getFont() :
+                    new Font(Font.SANS_SERIF, Font.BOLD, 12);
+            font = font.deriveFont(Font.BOLD, tileSize * 0.5f);
+            FontMetrics fm = g.getFontMetrics(font);
+            // shrink long values to fit the tile
+            int room = tileSize * 85 / 100;
+            if(fm.stringWidth(text) > room) {
+                font = font.deriveFont(font.getSize2D() * room
+                        / fm.stringWidth(text));
+                fm = g.getFontMetrics(font);
+            }
+            g.setFont(font);
+            g.setColor(code <= 3 ? DARK_TEXT : Color.white);
+            g.drawString(text, (tileSize - fm.stringWidth(text)) / 2,
+                    (tileSize - fm.getHeight()) / 2 + fm.getAscent());
+        }
+        g.dispose();
+        return image;
+    }
+}
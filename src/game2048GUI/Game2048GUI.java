@@ -2,8 +2,11 @@ package game2048GUI;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.concurrent.*;
 import javax.swing.*;
+import javax.swing.event.*;
 import game2048.*; // game logic package
+import game2048.ai.ExpectimaxSearcher; // move hints
 
 /*********************************************************************
  * Game2048GUI class: This class creates a GUI for the GAME2048 class
@@ -17,12 +20,10 @@ public class Game2048GUI extends JPanel {
     private game2048.Game2048 game;
     /** top-level frame object */
     private JFrame frame;
-    /** panel for board */
-    private JPanel boardPanel;
-    /** Grid of JLabels for game board */
-    private JLabel[][] gridLabel;
-    /** Grid of values for game board */
-    private int[][] gridValue;
+    /** panel that paints the board */
+    private BoardPanel boardPanel;
+    /** what the last move did, reused for every move */
+    private MoveResult lastMove = new MoveResult();
     /** number of rows, columns for JFrames and values */
     private int rows, cols;
     /** standard size for rows and columns, standard winning value */
@@ -32,16 +33,35 @@ public class Game2048GUI extends JPanel {
     /** stores statistics of current game */
     private int moves;
     /** stores statistics for all games played */
-    private int allMoves, highScore, numGames;
+    private int allMoves, numGames;
+    /** best score of all games played */
+    private long highScore;
     /** panel for statistics */
     private JPanel statsPanel, movesPanel;
     /** statistics display labels for statistics panel */
     private JLabel movesLabel, allMovesLabel, highScoreLabel,
-            numGamesLabel;
+            numGamesLabel, scoreLabel, maxTileLabel;
     /** panel for buttons */
     private JPanel buttonPanel;
     /** JButtons for some game actions: exit, reset, resize board */
     private JButton exitButton, resetButton, resizeButton, undoButton;
+    /** JButton for a move hint, toggle for auto-play */
+    private JButton hintButton;
+    private JToggleButton autoButton;
+    /** auto-play speed in moves per second */
+    private JSpinner rateSpinner;
+    /** shows the last hint */
+    private JLabel hintLabel;
+    /** search depth of hints, default auto-play speed */
+    private final static int HINT_DEPTH = 3, DEFAULT_RATE = 5;
+    /** runs hint searches one at a time, off the event thread */
+    private ExecutorService hintThread;
+    /** finds hints; only used on hintThread */
+    private ExpectimaxSearcher searcher;
+    /** hint search in progress, null when none */
+    private HintWorker hintWorker;
+    /** asks for the next auto-play move */
+    private Timer autoTimer;
     /** listener for keyboard and JButton events */
     private Listener listener;
 
@@ -54,6 +74,14 @@ public class Game2048GUI extends JPanel {
 
         // create listener for keyboard and button events
         listener = new Listener();
+        // hints are searched on their own thread so keys never wait
+        hintThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "hint search");
+            t.setDaemon(true);
+            return t;
+        });
+        searcher = new ExpectimaxSearcher(HINT_DEPTH);
+        autoTimer = new Timer(1000 / DEFAULT_RATE, listener);
 
         renderFrame();
         // add game board to center frame
@@ -78,7 +106,6 @@ public class Game2048GUI extends JPanel {
     private void setBoard(int row, int col, int winValue) {
         try {
             game.resizeBoard(row, col, winValue);
-            gridValue = new int[row][col];
             rows = game.getRows();
             cols = game.getCols();
             game.placeRandomValue();
@@ -109,82 +136,53 @@ public class Game2048GUI extends JPanel {
     }
 
     /*****************************************************************
-     * Use game logic to generate the board with a 2D grid of JFrame
-     * objects. These JFrame objects will be updated as the game logic
-     * decides.
+     * Show the game board in the center of the frame. The board
+     * panel is created and laid out the first time; after that only
+     * the tiles that changed are repainted, and the frame is laid out
+     * again only when the board changes size.
      *
      * @return none
      ****************************************************************/
     private void renderBoard() {
-        // reset all grid elements to zero
-        for(int k = 0; k < gridValue.length; k++)
-            for(int m = 0; m < gridValue[k].length; m++)
-                gridValue[k][m] = 0;
+        renderBoard(null);
+    }
+
+    /*****************************************************************
+     * Show the game board after a move, repainting only the tiles the
+     * move changed.
+     *
+     * @param move what the move did, null to compare the whole board
+     * @return none
+     ****************************************************************/
+    private void renderBoard(MoveResult move) {
         // update rows and columns from game logic
         rows = game.getRows();
         cols = game.getCols();
 
         // Create the board panel if not done so yet
         if(boardPanel == null) {
-            //frame.remove(boardPanel);
-            // set to grid layout before adding all JLabels
-            boardPanel = new JPanel();
-            // setting opaque
-            boardPanel.setOpaque(true);
-            boardPanel.setLayout(new GridLayout(rows, cols));
-            // create 2D matrix of JLabels for board
-            gridLabel = new JLabel[rows][cols];
-
-            // initialize all JLabels (update values later)
-            for(int i = 0; i < rows; i++)
-                for(int j = 0; j < cols; j++) {
-                    // Set JLabel text and alignment
-                    gridLabel[i][j] =
-                            new JLabel(" ", SwingConstants.CENTER);
-                    gridLabel[i][j].setFont
-                            (gridLabel[i][j].getFont().deriveFont
-                                    (Font.BOLD, 40));
-                    // must set JFrame to opaque to set color
-                    gridLabel[i][j].setOpaque(true);
-                    // based on the number in the space, set the color
-                    // Color method produces darker colors closer to 0
-                    gridLabel[i][j].setBackground
-                            (new Color(255,255,255));
-                    // set the border for each JLabel
-                    gridLabel[i][j].setBorder
-                            (BorderFactory.createRaisedBevelBorder());
-                    boardPanel.add(gridLabel[i][j]);
-                }
+            boardPanel = new BoardPanel(game);
             // add board to center panel of BorderLayout
             frame.add(boardPanel, BorderLayout.CENTER);
+            frame.pack();
         }
-        else { // update existing grid of cells in GUI
-            // update all non-empty tiles from board
-            for(Cell c : game.getNonEmptyTiles()) {
-                gridValue[c.row][c.column] = c.value;
-            }
-
-            // update all JLabels
-            for(int i = 0; i < rows; i++)
-                for(int j = 0; j < cols; j++) {
-                    // Set JLabel text
-                    if(gridValue[i][j] > 0) {
-                        gridLabel[i][j].setText("" + gridValue[i][j]);
-
-                        // update high score if made
-                        if(gridValue[i][j] > highScore) {
-                            highScore = gridValue[i][j];
-                            highScoreLabel.setText
-                                    ("High Score: " + highScore);
-                        }
-                    }
-                    else {
-                        gridLabel[i][j].setText(" ");
-                    }
-                }
+        else if(move != null) { // repaint the tiles the move changed
+            boardPanel.update(move);
+        }
+        else { // repaint the tiles that changed
+            boardPanel.update();
         }
 
-        frame.pack(); // display doesn't update well without
+        // the game keeps its score and largest tile as it goes
+        if(scoreLabel != null) {
+            scoreLabel.setText("Score: " + game.getScore());
+            maxTileLabel.setText("Largest Tile: " + game.getMaxTile());
+        }
+        // update high score if made
+        if(highScoreLabel != null && game.getScore() > highScore) {
+            highScore = game.getScore();
+            highScoreLabel.setText("High Score: " + highScore);
+        }
     }
 
     /*****************************************************************
@@ -204,9 +202,13 @@ public class Game2048GUI extends JPanel {
         // create moves frames for current and all games
         movesLabel = new JLabel("Moves: " + moves);
         allMovesLabel = new JLabel("All Moves: " + allMoves);
+        scoreLabel = new JLabel("Score: " + game.getScore());
+        maxTileLabel = new JLabel("Largest Tile: " + game.getMaxTile());
         // add moves labels to moves panel
         movesPanel.add(movesLabel);
         movesPanel.add(allMovesLabel);
+        movesPanel.add(scoreLabel);
+        movesPanel.add(maxTileLabel);
         movesPanel.setBorder(BorderFactory.createLoweredBevelBorder());
         movesPanel.setBackground(Color.lightGray);
         // add moves panel to stats panel west
@@ -264,6 +266,27 @@ public class Game2048GUI extends JPanel {
         resizeButton.addActionListener(listener);
         buttonPanel.add(resizeButton);
 
+        //hintButton
+        hintButton = new JButton("Hint");
+        hintButton.addActionListener(listener);
+        buttonPanel.add(hintButton);
+
+        //autoButton and its speed
+        autoButton = new JToggleButton("Auto");
+        autoButton.addActionListener(listener);
+        buttonPanel.add(autoButton);
+        rateSpinner = new JSpinner
+                (new SpinnerNumberModel(DEFAULT_RATE, 1, 60, 1));
+        rateSpinner.addChangeListener(listener);
+        // keep the arrow keys for the board
+        ((JSpinner.DefaultEditor)rateSpinner.getEditor())
+                .getTextField().setFocusable(false);
+        buttonPanel.add(rateSpinner);
+        buttonPanel.add(new JLabel("moves/s"));
+
+        hintLabel = new JLabel("Hint: -");
+        buttonPanel.add(hintLabel);
+
         // button to exit program
         exitButton = new JButton("Exit");
         exitButton.addActionListener(listener);
@@ -302,6 +325,168 @@ public class Game2048GUI extends JPanel {
         renderBoard();
     }
 
+    /*****************************************************************
+     * Start searching for the best move on a copy of the board,
+     * unless a search is already running.
+     *
+     * @param move true to make the move when found (auto-play),
+     * false to only show it
+     * @return none
+     ****************************************************************/
+    private void startHint(boolean move) {
+        if(hintWorker != null)
+            return;
+        hintWorker = new HintWorker(move);
+        hintThread.execute(hintWorker);
+    }
+
+    /*****************************************************************
+     * Cancel the hint search in progress, if any. The search thread
+     * is interrupted and its result is dropped.
+     *
+     * @return none
+     ****************************************************************/
+    private void cancelHint() {
+        if(hintWorker != null) {
+            hintWorker.cancel(true);
+            hintWorker = null;
+        }
+        hintLabel.setText("Hint: -");
+    }
+
+    /*****************************************************************
+     * Turn auto-play off.
+     *
+     * @return none
+     ****************************************************************/
+    private void stopAuto() {
+        autoTimer.stop();
+        autoButton.setSelected(false);
+    }
+
+    /*****************************************************************
+     * This represents one hint search. It runs on the hint thread
+     * with its own copy of the board, so the game can change while it
+     * runs, and reports back on the event dispatch thread.
+     ****************************************************************/
+    private class HintWorker extends SwingWorker<SlideDirection, Void> {
+        /** copy of the board searched */
+        private final byte[] cells;
+        private final int rows, cols;
+        /** true to make the move found */
+        private final boolean move;
+
+        HintWorker(boolean move) {
+            this.cells = game.getCellCodes();
+            this.rows = game.getRows();
+            this.cols = game.getCols();
+            this.move = move;
+        }
+
+        /*************************************************************
+         * Search for the best move, off the event dispatch thread.
+         *
+         * @return the best move, or null when none changes the board
+         * @Override
+         ************************************************************/
+        protected SlideDirection doInBackground() {
+            return searcher.bestMove(cells, rows, cols);
+        }
+
+        /*************************************************************
+         * Show or make the move found, unless this search was
+         * cancelled or replaced in the meantime. A failed search is
+         * shown in the hint label and stops auto-play.
+         *
+         * @return none
+         * @Override
+         ************************************************************/
+        protected void done() {
+            if(hintWorker != this || isCancelled())
+                return;
+            hintWorker = null;
+            SlideDirection dir;
+            try {
+                dir = get();
+            }
+            catch(InterruptedException ex) {
+                return;
+            }
+            catch(ExecutionException ex) {
+                // the next search would fail the same way
+                hintLabel.setText("Hint failed: " + ex.getCause());
+                stopAuto();
+                return;
+            }
+            if(dir == null) {
+                hintLabel.setText("Hint: none");
+                stopAuto();
+            }
+            else if(move)
+                makeMove(dir);
+            else
+                hintLabel.setText("Hint: " + dir);
+        }
+    }
+
+    /*****************************************************************
+     * Slide the board one way, from a key press or from auto-play,
+     * and update the GUI. Any hint search still running is cancelled,
+     * since it was for the board before the move. When the game ends
+     * auto-play stops and the user is asked to play again.
+     *
+     * @param dir the direction, or null to only update the GUI
+     * @return none
+     ****************************************************************/
+    private void makeMove(SlideDirection dir) {
+        if(dir != null) {
+            cancelHint();
+            game.slide(dir, lastMove);
+            moves++;
+            allMoves++;
+        }
+        // update number of moves GUI labels
+        movesLabel.setText("Game Moves: " + moves);
+        allMovesLabel.setText("Total Moves: " + allMoves);
+        // update GUI
+        renderBoard(dir != null ? lastMove : null);
+
+        // slide keeps the game status current
+        //check game status: display dialog box and update
+        // statistics
+        if (game.getStatus() != GameStatus.IN_PROGRESS) {
+            // the dialog is modal: no auto-play moves behind it
+            stopAuto();
+            if(game.getStatus() == GameStatus.USER_LOST) {
+                playAgain = JOptionPane.showConfirmDialog
+                        (frame, "You lost. :( Try again?");
+            }
+            else if(game.getStatus() == GameStatus.USER_WON) {
+                playAgain = JOptionPane.showConfirmDialog
+                        (frame, "You won! :) Play again?");
+            }
+
+            // based on user choice, reset for new game,
+            // update stats,...
+            if(playAgain == JOptionPane.NO_OPTION) {
+                // update statistics only
+                //updateStats();
+                // exit frame?
+                frame.dispatchEvent
+                        (new WindowEvent
+                                (frame, WindowEvent.WINDOW_CLOSING));
+            }
+            else if(playAgain == JOptionPane.YES_OPTION) {
+                // update stats and start a new game with same
+                // dimensions
+                resetGame();
+            }
+            numGames++;
+            numGamesLabel.setText
+                    ("Number of Games Played: " + numGames);
+        }
+    }
+
     /*****************************************************************
      * This represents a listener for all keyboard pressing events and
      * on screen GUI button pressing events. Arrow key presses
@@ -311,7 +496,8 @@ public class Game2048GUI extends JPanel {
      * resize, and undo actions are performed when the respective
      * buttons are pressed.
      ****************************************************************/
-    private class Listener implements KeyListener, ActionListener {
+    private class Listener implements KeyListener, ActionListener,
+            ChangeListener {
         /*************************************************************
          * This method activates whenever a key is pressed down. The
          * arrow keys from a keyboard are used to control the slide
@@ -320,73 +506,38 @@ public class Game2048GUI extends JPanel {
          * @Override
          ************************************************************/
         public void keyPressed(KeyEvent e) {
+            SlideDirection dir = null;
             switch(e.getKeyCode()) {
                 //non-numpad up, down, left, right arrow key pressed cases
                 case KeyEvent.VK_UP:
-                    game.slide(game2048.SlideDirection.UP);
-                    moves++;
-                    allMoves++;
+                    dir = SlideDirection.UP;
                     break;
                 case KeyEvent.VK_DOWN:
-                    game.slide(game2048.SlideDirection.DOWN);
-                    moves++;
-                    allMoves++;
+                    dir = SlideDirection.DOWN;
                     break;
                 case KeyEvent.VK_LEFT:
-                    game.slide(game2048.SlideDirection.LEFT);
-                    moves++;
-                    allMoves++;
+                    dir = SlideDirection.LEFT;
                     break;
                 case KeyEvent.VK_RIGHT:
-                    game.slide(game2048.SlideDirection.RIGHT);
-                    moves++;
-                    allMoves++;
+                    dir = SlideDirection.RIGHT;
                     break;
             }
-            // update number of moves GUI labels
-            movesLabel.setText("Game Moves: " + moves);
-            allMovesLabel.setText("Total Moves: " + allMoves);
-            // update GUI
-            renderBoard();
-            // find if status has changed: will check if win, lose,
-            // or in progress
-            game.updateStatus();
-
-            //check game status: display dialog box and update
-            // statistics
-            if (game.getStatus() != GameStatus.IN_PROGRESS) {
-                if(game.getStatus() == GameStatus.USER_LOST) {
-                    playAgain = JOptionPane.showConfirmDialog
-                            (frame, "You lost. :( Try again?");
-                }
-                else if(game.getStatus() == GameStatus.USER_WON) {
-                    playAgain = JOptionPane.showConfirmDialog
-                            (frame, "You won! :) Play again?");
-                }
-
-                // based on user choice, reset for new game,
-                // update stats,...
-                if(playAgain == JOptionPane.NO_OPTION) {
-                    // update statistics only
-                    //updateStats();
-                    // exit frame?
-                    frame.dispatchEvent
-                            (new WindowEvent
-                                    (frame, WindowEvent.WINDOW_CLOSING));
-                }
-                else if(playAgain == JOptionPane.YES_OPTION) {
-                    // update stats and start a new game with same
-                    // dimensions
-                    resetGame();
-                }
-                numGames++;
-                numGamesLabel.setText
-                        ("Number of Games Played: " + numGames);
-            }
+            makeMove(dir);
         }
         public void keyReleased(KeyEvent e2) {}
         public void keyTyped(KeyEvent e3) {}
 
+        /*************************************************************
+         * This method activates whenever the auto-play speed is
+         * changed, and sets the time between auto-play moves.
+         * @Override
+         ************************************************************/
+        public void stateChanged(ChangeEvent e) {
+            int rate = (Integer)rateSpinner.getValue();
+            autoTimer.setDelay(1000 / rate);
+            frame.requestFocus();
+        }
+
         /*************************************************************
          * This method activates whenever a key is pressed down. The
          * arrow keys from a keyboard are used to control the slide
@@ -399,6 +550,31 @@ public class Game2048GUI extends JPanel {
             // before confirming or denying them
             int tempRow, tempCol;
 
+            if(e.getSource() == autoTimer) {
+                // ask for the next move; skipped while one is searched
+                if(game.getStatus() == GameStatus.IN_PROGRESS)
+                    startHint(true);
+                return;
+            }
+
+            if(e.getSource() == hintButton) {
+                hintLabel.setText("Hint: ...");
+                startHint(false);
+            }
+
+            if(e.getSource() == autoButton) {
+                if(autoButton.isSelected())
+                    autoTimer.start();
+                else
+                    stopAuto();
+            }
+
+            if(e.getSource() == undoButton || e.getSource() == resetButton
+                    || e.getSource() == resizeButton) {
+                // a hint for the old board is no use any more
+                cancelHint();
+            }
+
             if(e.getSource() == undoButton) {
                 // undo a move
                 try {
@@ -433,12 +609,7 @@ public class Game2048GUI extends JPanel {
                         (JOptionPane.showInputDialog
                                 (frame, "Enter columns:"));
                 setBoard(tempRow, tempCol, DEFAULT_WIN);
-                // delete old board and create new
-                frame.remove(boardPanel);
-                boardPanel.removeAll();
-                boardPanel = null;
-                // create rows and cols JFrames
-                renderBoard();
+                // the board panel lays itself out for the new size
                 renderBoard();
                 moves = 0;
                 movesLabel.setText("Game Moves: " + moves);